@@ -0,0 +1,131 @@
+import java.util.HashSet;
+import java.util.Set;
+import java.time.LocalDate;
+import java.time.DayOfWeek;
+import java.util.concurrent.*;
+
+// Saves the schedule in the background after it changes. Every change is journaled (and so
+// durable) at once; this folds the journal into the snapshot file, which keeps the journal
+// short and startup fast. Bursts of changes are coalesced: a save starts once no change has
+// come in for the quiet period, but no later than maxDelay after the first unsaved change. The
+// save is the engine's checkpoint, which writes a new snapshot to a temp file and renames it
+// over the old one, re-encoding only the weeks that changed.
+//
+// The time from the first unsaved change until it is in the snapshot is recorded as
+// Metrics.AUTOSAVE_LAG; bytes written are counted by ScheduleFile and WeekStore.
+public class AutosaveService implements SchedulerEngine.Listener, AutoCloseable {
+    private final SchedulerEngine engine;
+    private final long quietNanos;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "autosave");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<LocalDate> changedWeeks = new HashSet<>(); // Guarded by this
+    private long firstChangeNanos; // Of the oldest unsaved change, guarded by this
+    private long lastChangeNanos; // Guarded by this
+    private ScheduledFuture<?> pending; // Guarded by this
+
+    public AutosaveService(SchedulerEngine engine, long quietPeriod, long maxDelay, TimeUnit unit) {
+        this.engine = engine;
+        this.quietNanos = unit.toNanos(quietPeriod);
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        engine.addListener(this);
+    }
+
+    // Called by the engine with day locks held, so this only takes note and (re)arms the timer
+    @Override
+    public synchronized void eventChanged(WeeklySchedulerApp.Event removed, WeeklySchedulerApp.Event added) {
+        long now = System.nanoTime();
+        if (changedWeeks.isEmpty()) {
+            firstChangeNanos = now;
+        }
+        lastChangeNanos = now;
+        if (removed != null) {
+            changedWeeks.add(removed.startTime.toLocalDate().with(DayOfWeek.MONDAY));
+        }
+        if (added != null) {
+            changedWeeks.add(added.startTime.toLocalDate().with(DayOfWeek.MONDAY));
+        }
+        if (pending == null) {
+            pending = scheduler.schedule(this::saveIfQuiet, quietNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Saves now instead of waiting for the quiet period (e.g. for "Save Schedule"). Completes
+    // with the snapshot size in bytes.
+    public CompletableFuture<Long> saveNow() {
+        CompletableFuture<Long> done = new CompletableFuture<>();
+        scheduler.execute(() -> {
+            try {
+                done.complete(save());
+            } catch (Exception e) {
+                done.completeExceptionally(e);
+            }
+        });
+        return done;
+    }
+
+    @Override
+    public void close() {
+        engine.removeListener(this);
+        scheduler.shutdownNow();
+    }
+
+    // Runs on the autosave thread. Waits longer while changes keep coming, up to maxDelay.
+    private void saveIfQuiet() {
+        long wait;
+        synchronized (this) {
+            pending = null;
+            if (changedWeeks.isEmpty()) {
+                return;
+            }
+            long now = System.nanoTime();
+            wait = Math.min(lastChangeNanos + quietNanos, firstChangeNanos + maxDelayNanos) - now;
+            if (wait > 0) {
+                pending = scheduler.schedule(this::saveIfQuiet, wait, TimeUnit.NANOSECONDS);
+                return;
+            }
+        }
+        try {
+            save();
+        } catch (Exception e) {
+            System.err.println("Autosave failed: " + e.getMessage());
+            synchronized (this) {
+                if (pending == null) {
+                    pending = scheduler.schedule(this::saveIfQuiet, quietNanos, TimeUnit.NANOSECONDS); // Retry
+                }
+            }
+        }
+    }
+
+    // Runs on the autosave thread. Changes made while the save runs are left for the next one.
+    private long save() throws Exception {
+        Set<LocalDate> saving;
+        long firstChange;
+        synchronized (this) {
+            saving = new HashSet<>(changedWeeks);
+            changedWeeks.clear();
+            firstChange = firstChangeNanos;
+        }
+        try {
+            long size = (Long) engine.checkpoint().get();
+            if (!saving.isEmpty()) {
+                Metrics.AUTOSAVE_LAG.record(System.nanoTime() - firstChange, true);
+                Metrics.AUTOSAVE_WEEKS.add(saving.size());
+            }
+            return size;
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                if (!saving.isEmpty()) {
+                    if (changedWeeks.isEmpty() || firstChange - firstChangeNanos < 0) {
+                        firstChangeNanos = firstChange;
+                    }
+                    changedWeeks.addAll(saving);
+                }
+            }
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+}
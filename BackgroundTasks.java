@@ -0,0 +1,99 @@
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs slow work (file I/O, imports, re-indexing) on a dedicated pool of worker threads so the
+// Event Dispatch Thread never waits for it. Tracked tasks are SwingWorkers: they publish
+// results in batches and report progress through setProgress, both delivered on the EDT, and
+// their progress is shown in a status bar with a Cancel button.
+public class BackgroundTasks {
+    private final ExecutorService executor;
+    private final List<Task> running = new ArrayList<>(); // Only touched on the EDT
+    private final JPanel statusBar = new JPanel(new BorderLayout(8, 0));
+    private final JLabel statusLabel = new JLabel(" ");
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+    private final JButton cancelButton = new JButton("Cancel");
+
+    private static final class Task {
+        final String description;
+        final SwingWorker<?, ?> worker;
+        final boolean cancellable;
+
+        Task(String description, SwingWorker<?, ?> worker, boolean cancellable) {
+            this.description = description;
+            this.worker = worker;
+            this.cancellable = cancellable;
+        }
+    }
+
+    public BackgroundTasks(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "scheduler-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        statusBar.setBorder(BorderFactory.createEmptyBorder(2, 8, 2, 8));
+        statusBar.add(statusLabel, BorderLayout.CENTER);
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.RIGHT, 4, 0));
+        controls.add(progressBar);
+        controls.add(cancelButton);
+        statusBar.add(controls, BorderLayout.EAST);
+        cancelButton.addActionListener(e -> {
+            if (!running.isEmpty()) {
+                running.get(running.size() - 1).worker.cancel(true);
+            }
+        });
+        refresh();
+    }
+
+    public JComponent getStatusBar() {
+        return statusBar;
+    }
+
+    // Runs untracked background work such as prefetching; results must come back via invokeLater
+    public void execute(Runnable work) {
+        executor.execute(work);
+    }
+
+    // Runs a worker on the pool and shows it in the status bar until it finishes. Must be
+    // called on the EDT.
+    public void run(String description, SwingWorker<?, ?> worker, boolean cancellable) {
+        Task task = new Task(description, worker, cancellable);
+        running.add(task);
+        worker.addPropertyChangeListener(e -> {
+            if ("state".equals(e.getPropertyName()) && e.getNewValue() == SwingWorker.StateValue.DONE) {
+                running.remove(task);
+            }
+            refresh();
+        });
+        refresh();
+        executor.execute(worker);
+    }
+
+    public boolean isBusy() {
+        return !running.isEmpty();
+    }
+
+    // Shows the most recently started task that is still running
+    private void refresh() {
+        if (running.isEmpty()) {
+            statusLabel.setText(" ");
+            progressBar.setVisible(false);
+            cancelButton.setVisible(false);
+            return;
+        }
+        Task task = running.get(running.size() - 1);
+        int progress = task.worker.getProgress();
+        statusLabel.setText(task.description + "..." + (running.size() > 1 ? " (+" + (running.size() - 1) + " more)" : ""));
+        progressBar.setVisible(true);
+        progressBar.setIndeterminate(progress == 0);
+        progressBar.setValue(progress);
+        cancelButton.setVisible(task.cancellable);
+        cancelButton.setEnabled(!task.worker.isCancelled());
+    }
+}
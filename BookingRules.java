@@ -0,0 +1,341 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.TextStyle;
+import java.util.*;
+
+// When events may be booked: working hours per weekday, holidays, blackout periods, the
+// shortest and longest event and the gap kept free between events. Read from a properties file
+// (booking-rules.properties next to schedule.dat); keys left out keep the defaults, which are
+// the app's old fixed rules: 8 AM to 8 PM on weekdays, 8 AM to 3 PM on Saturday, never on
+// Sunday.
+//
+// The rules are compiled once into a table per weekday plus one per date that has a holiday or
+// a blackout. A table holds the day's closed minutes and, for every minute, how many minutes
+// are open from there on, so checking an event is a map lookup and an array read however many
+// rules there are. Immutable and safe to share between threads.
+public final class BookingRules {
+    private static final LocalTime DEFAULT_OPEN = LocalTime.of(8, 0);
+    private static final LocalTime DEFAULT_CLOSE_SATURDAY = LocalTime.of(15, 0);
+    private static final LocalTime DEFAULT_CLOSE = LocalTime.of(20, 0);
+    private static final Set<String> KEYS = new HashSet<>(Arrays.asList(
+            "holidays", "blackouts", "minDurationMinutes", "maxDurationMinutes", "bufferMinutes"));
+    static {
+        for (DayOfWeek day : DayOfWeek.values()) {
+            KEYS.add(hoursKey(day));
+        }
+    }
+
+    private final Table[] weekly = new Table[7]; // Monday first
+    private final Map<LocalDate, Table> dated = new HashMap<>(); // Dates with a holiday or blackout
+    private final int minDuration;
+    private final int maxDuration;
+    private final int buffer;
+
+    // One day's compiled rules
+    private static final class Table {
+        final MinuteBitmap closed;
+        final short[] openRun = new short[MinuteBitmap.MINUTES + 1]; // Open minutes from each minute on
+        final String message; // Why an event does not fit, e.g. "Cannot schedule events on Sunday!"
+
+        Table(MinuteBitmap closed, String label) {
+            this.closed = closed;
+            for (int minute = MinuteBitmap.MINUTES - 1; minute >= 0; minute--) {
+                openRun[minute] = closed.isSet(minute) ? 0 : (short) (openRun[minute + 1] + 1);
+            }
+            String hours = describeOpenHours();
+            this.message = hours.isEmpty() ? "Cannot schedule events on " + label + "!"
+                    : "Events on " + label + " can only be scheduled " + hours + ".";
+        }
+
+        // Whether [from, to) is open; the range is never empty
+        boolean fits(int from, int to) {
+            return openRun[from] >= to - from;
+        }
+
+        private String describeOpenHours() {
+            StringBuilder out = new StringBuilder();
+            int minute = 0;
+            while (minute < MinuteBitmap.MINUTES) {
+                if (openRun[minute] == 0) {
+                    minute++;
+                    continue;
+                }
+                int end = minute + openRun[minute];
+                out.append(out.length() == 0 ? "between " : " or between ").append(timeText(minute)).append(" and ").append(timeText(end));
+                minute = end;
+            }
+            return out.toString();
+        }
+    }
+
+    private BookingRules(Properties properties) throws IOException {
+        for (Object key : properties.keySet()) {
+            if (!KEYS.contains(key)) {
+                throw new IOException("Unknown booking rule \"" + key + "\"");
+            }
+        }
+        minDuration = minutes(properties, "minDurationMinutes", 0);
+        maxDuration = minutes(properties, "maxDurationMinutes", MinuteBitmap.MINUTES);
+        buffer = minutes(properties, "bufferMinutes", 0);
+        if (minDuration > maxDuration) {
+            throw new IOException("minDurationMinutes is greater than maxDurationMinutes");
+        }
+
+        MinuteBitmap[] weeklyClosed = new MinuteBitmap[7];
+        for (DayOfWeek day : DayOfWeek.values()) {
+            weeklyClosed[day.ordinal()] = parseHours(properties, day);
+        }
+        boolean sameWeekdays = true; // Monday to Friday alike, so messages can say "weekdays"
+        for (int day = 1; day < 5; day++) {
+            sameWeekdays &= weeklyClosed[day].equals(weeklyClosed[0]);
+        }
+        for (DayOfWeek day : DayOfWeek.values()) {
+            String label = sameWeekdays && day.getValue() <= 5 ? "weekdays" : day.getDisplayName(TextStyle.FULL, Locale.ENGLISH);
+            weekly[day.ordinal()] = new Table(weeklyClosed[day.ordinal()], label);
+        }
+
+        Map<LocalDate, MinuteBitmap> datedClosed = new TreeMap<>();
+        for (String holiday : list(properties, "holidays")) {
+            try {
+                datedClosed.put(LocalDate.parse(holiday), MinuteBitmap.closedOutside(0, 0));
+            } catch (DateTimeException e) {
+                throw new IOException("Invalid holiday \"" + holiday + "\", expected a date like 2025-12-25", e);
+            }
+        }
+        for (String blackout : list(properties, "blackouts")) {
+            LocalDateTime from;
+            LocalDateTime to;
+            try {
+                String[] range = blackout.split("/", -1);
+                if (range.length != 2) {
+                    throw new DateTimeException(blackout);
+                }
+                from = LocalDateTime.parse(range[0].trim());
+                to = LocalDateTime.parse(range[1].trim());
+            } catch (DateTimeException e) {
+                throw new IOException("Invalid blackout \"" + blackout + "\", expected a range like 2025-12-24T12:00/2025-12-27T00:00", e);
+            }
+            for (LocalDate date = from.toLocalDate(); date.atStartOfDay().isBefore(to); date = date.plusDays(1)) {
+                MinuteBitmap closed = datedClosed.computeIfAbsent(date, d -> weeklyClosed[d.getDayOfWeek().ordinal()].copy());
+                int start = date.equals(from.toLocalDate()) ? minuteOf(from.toLocalTime()) : 0;
+                int end = date.equals(to.toLocalDate()) ? minuteOf(to.toLocalTime()) : MinuteBitmap.MINUTES;
+                closed.set(start, end);
+            }
+        }
+        for (Map.Entry<LocalDate, MinuteBitmap> entry : datedClosed.entrySet()) {
+            dated.put(entry.getKey(), new Table(entry.getValue(), entry.getKey().toString()));
+        }
+    }
+
+    // The old fixed rules
+    public static BookingRules defaults() {
+        try {
+            return new BookingRules(new Properties());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Reads the rules, or returns the defaults if the file does not exist
+    public static BookingRules load(Path file) throws IOException {
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(in);
+            }
+        }
+        try {
+            return new BookingRules(properties);
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    public static Path fileFor(Path snapshotFile) {
+        return snapshotFile.resolveSibling("booking-rules.properties");
+    }
+
+    // Throws if an event from start to end breaks the rules. Events never span midnight.
+    public void check(LocalDateTime start, LocalDateTime end) throws SchedulerEngine.SchedulingException {
+        if (!start.toLocalDate().equals(end.toLocalDate())) {
+            throw new SchedulerEngine.SchedulingException("Events must start and end on the same day.");
+        }
+        check(table(start.toLocalDate()), start.toLocalTime(), end.toLocalTime());
+    }
+
+    // Throws if the times break the usual rules of the weekday, leaving out holidays and
+    // blackouts; used for series, whose occurrences on such dates are skipped instead
+    public void checkWeekly(DayOfWeek day, LocalTime start, LocalTime end) throws SchedulerEngine.SchedulingException {
+        check(weekly[day.ordinal()], start, end);
+    }
+
+    // Whether an event may be booked at this minute of the day (0 = midnight)
+    public boolean isOpen(LocalDate date, int minute) {
+        return table(date).openRun[minute] > 0;
+    }
+
+    // The working hours of the date, e.g. "Events on Saturday can only be scheduled between 8 AM and 3 PM."
+    public String hoursMessage(LocalDate date) {
+        return table(date).message;
+    }
+
+    // Minutes of the date in which no event may be booked; shared, so callers must copy it to change it
+    public MinuteBitmap closedMinutes(LocalDate date) {
+        return table(date).closed;
+    }
+
+    // Dates whose hours differ from their weekday's because of a holiday or blackout
+    public Set<LocalDate> specialDates() {
+        return Collections.unmodifiableSet(dated.keySet());
+    }
+
+    // First minute of the day at which any weekday is open, or -1 if none ever is. Holidays
+    // and blackouts only close time, so no date opens earlier.
+    public int earliestOpenMinute() {
+        int earliest = -1;
+        for (Table table : weekly) {
+            for (int minute = 0; minute < MinuteBitmap.MINUTES && (earliest < 0 || minute < earliest); minute++) {
+                if (table.openRun[minute] > 0) {
+                    earliest = minute;
+                    break;
+                }
+            }
+        }
+        return earliest;
+    }
+
+    // Minute of the day at which the weekday closing last closes, or -1 if none is ever open
+    public int latestCloseMinute() {
+        int latest = -1;
+        for (Table table : weekly) {
+            for (int minute = MinuteBitmap.MINUTES - 1; minute >= Math.max(latest, 0); minute--) {
+                if (table.openRun[minute] > 0) {
+                    latest = minute + 1;
+                    break;
+                }
+            }
+        }
+        return latest;
+    }
+
+    // Minutes to keep free between two events
+    public int bufferMinutes() {
+        return buffer;
+    }
+
+    private Table table(LocalDate date) {
+        Table table = dated.get(date);
+        return table != null ? table : weekly[date.getDayOfWeek().ordinal()];
+    }
+
+    // Events that end when they start are rejected: they overlap nothing, so any number of them
+    // could share a start time, which is what identifies an event (e.g. in the booking API)
+    private void check(Table table, LocalTime start, LocalTime end) throws SchedulerEngine.SchedulingException {
+        if (!end.isAfter(start)) {
+            throw new SchedulerEngine.SchedulingException("End time must be after start time.");
+        }
+        int from = minuteOf(start);
+        int to = (end.toSecondOfDay() + 59) / 60; // A started minute counts as taken
+        if (!table.fits(from, to)) {
+            throw new SchedulerEngine.SchedulingException(table.message);
+        }
+        checkDuration(to - from);
+    }
+
+    // Throws if events of this many minutes are too short or too long
+    public void checkDuration(int minutes) throws SchedulerEngine.SchedulingException {
+        if (minutes < minDuration) {
+            throw new SchedulerEngine.SchedulingException("Events must last at least " + minDuration + " minutes.");
+        }
+        if (minutes > maxDuration) {
+            throw new SchedulerEngine.SchedulingException("Events can last at most " + maxDuration + " minutes.");
+        }
+    }
+
+    private static MinuteBitmap parseHours(Properties properties, DayOfWeek day) throws IOException {
+        String key = hoursKey(day);
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return day == DayOfWeek.SUNDAY ? MinuteBitmap.closedOutside(0, 0)
+                    : MinuteBitmap.closedOutside(minuteOf(DEFAULT_OPEN), minuteOf(day == DayOfWeek.SATURDAY ? DEFAULT_CLOSE_SATURDAY : DEFAULT_CLOSE));
+        }
+        MinuteBitmap closed = MinuteBitmap.closedOutside(0, 0);
+        for (String range : list(properties, key)) {
+            String[] times = range.split("-", -1);
+            int from;
+            int to;
+            try {
+                if (times.length != 2) {
+                    throw new DateTimeException(range);
+                }
+                from = minuteOf(LocalTime.parse(times[0].trim()));
+                to = times[1].trim().equals("24:00") ? MinuteBitmap.MINUTES : minuteOf(LocalTime.parse(times[1].trim()));
+            } catch (DateTimeException e) {
+                throw new IOException("Invalid hours \"" + range + "\" for " + key + ", expected a range like 08:00-20:00", e);
+            }
+            if (to <= from) {
+                throw new IOException("Hours \"" + range + "\" for " + key + " end before they start");
+            }
+            for (int minute = from; minute < to; minute++) {
+                if (!closed.isSet(minute)) {
+                    throw new IOException("Hours \"" + range + "\" for " + key + " overlap other hours of the day");
+                }
+            }
+            closed.clear(from, to);
+        }
+        return closed;
+    }
+
+    private static int minutes(Properties properties, String key, int defaultValue) throws IOException {
+        String value = properties.getProperty(key, "").trim();
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int minutes = Integer.parseInt(value);
+            if (minutes < 0 || minutes > MinuteBitmap.MINUTES) {
+                throw new IOException(key + " must be between 0 and " + MinuteBitmap.MINUTES);
+            }
+            return minutes;
+        } catch (NumberFormatException e) {
+            throw new IOException(key + " must be a number of minutes", e);
+        }
+    }
+
+    // Comma separated values of the key, without blanks
+    private static List<String> list(Properties properties, String key) {
+        List<String> values = new ArrayList<>();
+        for (String value : properties.getProperty(key, "").split(",")) {
+            if (!value.trim().isEmpty()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    private static String hoursKey(DayOfWeek day) {
+        return "hours." + day.getDisplayName(TextStyle.FULL, Locale.ENGLISH).toLowerCase(Locale.ROOT);
+    }
+
+    private static int minuteOf(LocalTime time) {
+        return time.getHour() * 60 + time.getMinute();
+    }
+
+    // "8 AM", "12:30 PM", "midnight"
+    private static String timeText(int minute) {
+        if (minute % MinuteBitmap.MINUTES == 0) {
+            return "midnight";
+        }
+        int hour = minute / 60 % 12 == 0 ? 12 : minute / 60 % 12;
+        String text = minute % 60 == 0 ? String.valueOf(hour) : String.format("%d:%02d", hour, minute % 60);
+        return text + (minute < 12 * 60 ? " AM" : " PM");
+    }
+}
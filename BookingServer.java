@@ -0,0 +1,456 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// HTTP/JSON booking API over the engine, for other tools on the same machine. It listens on
+// the loopback address only and needs no display. Bookings go through the same engine calls as
+// the window, so the opening hours and the overlap rule apply in full.
+//
+//   GET    /api/weeks/{date}         events of the week containing the date, occurrences included
+//   GET    /api/events/{id}          one event
+//   POST   /api/events               create; body {name, location, start, end, color}
+//   PUT    /api/events/{id}          change any of those fields; honours If-Match
+//   DELETE /api/events/{id}          delete; honours If-Match
+//   POST   /api/events/batch         create many; body [{...}, ...], one result per event
+//   GET    /api/free-slots?after=&minutes=&count=&align=&days=
+//
+// An event's id is its start time (events never overlap and never end when they start, so no
+// two share one) and its version a checksum of all its fields, sent as the ETag. A PUT or
+// DELETE with If-Match fails with 412 if the event has changed since; without If-Match it
+// applies to whatever the event is now. Requests run on virtual threads where the JVM has
+// them (Java 21 and later) and on a fixed pool otherwise.
+public class BookingServer {
+    private static final DateTimeFormatter MINUTES = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm");
+    private static final int BACKLOG = 4096; // Connections waiting to be accepted
+    private static final int PLATFORM_THREADS = 64; // Without virtual threads
+    private static final int MAX_BATCH = 10000;
+    private static final int MAX_BODY_BYTES = 8 << 20;
+
+    private final SchedulerEngine engine;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // A request that cannot be served, answered with the status and the message
+    private static final class ApiException extends Exception {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    public BookingServer(SchedulerEngine engine, int port) throws IOException {
+        this.engine = engine;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    // Stops accepting requests and gives running ones up to the delay to finish
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() is looked up at run time so the application
+    // still builds for and runs on older JVMs
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(PLATFORM_THREADS, r -> {
+                Thread thread = new Thread(r, "booking-api");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (Metrics.Sample sample = Metrics.API_REQUEST.start()) {
+            int status;
+            Object body;
+            Map<String, String> headers = new HashMap<>();
+            try {
+                body = route(exchange, headers);
+                status = headers.containsKey("Location") ? 201 : body == null ? 204 : 200;
+            } catch (ApiException e) {
+                status = e.status;
+                body = Collections.singletonMap("error", e.getMessage());
+            } catch (SchedulerEngine.SchedulingException e) {
+                status = 409;
+                body = Collections.singletonMap("error", e.getMessage());
+            } catch (IOException | RuntimeException e) {
+                status = 500;
+                body = Collections.singletonMap("error", String.valueOf(e.getMessage()));
+            }
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+            }
+            if (body == null) {
+                exchange.sendResponseHeaders(status, -1);
+            } else {
+                byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(status, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+            if (status < 500) {
+                sample.succeeded();
+            }
+        } finally {
+            exchange.close();
+            engine.trimWeeks(); // No day is locked here; a no-op unless the engine has a resident week limit
+        }
+    }
+
+    // Returns the response body (null for none) and fills in response headers; a Location
+    // header means something was created
+    private Object route(HttpExchange exchange, Map<String, String> headers)
+            throws ApiException, SchedulerEngine.SchedulingException, IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+        String resource = path[0];
+        String id = path.length > 1 ? path[1] : null;
+        if (path.length > 2) {
+            throw new ApiException(404, "No such resource");
+        }
+        if (resource.equals("weeks") && id != null) {
+            requireMethod(method, "GET");
+            return week(parseDate(id));
+        } else if (resource.equals("free-slots") && id == null) {
+            requireMethod(method, "GET");
+            return freeSlots(query(exchange.getRequestURI()));
+        } else if (resource.equals("events") && "batch".equals(id)) {
+            requireMethod(method, "POST");
+            return batch(readBody(exchange));
+        } else if (resource.equals("events") && id == null) {
+            requireMethod(method, "POST");
+            WeeklySchedulerApp.Event created = create(object(readBody(exchange)));
+            headers.put("ETag", etag(created));
+            headers.put("Location", "/api/events/" + id(created));
+            return toJson(created);
+        } else if (resource.equals("events")) {
+            LocalDateTime start = parseDateTime(id);
+            String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+            switch (method) {
+                case "GET": {
+                    WeeklySchedulerApp.Event event = find(start);
+                    headers.put("ETag", etag(event));
+                    return toJson(event);
+                }
+                case "PUT": {
+                    Map<String, Object> changes = object(readBody(exchange));
+                    WeeklySchedulerApp.Event updated = update(checkVersion(find(start), ifMatch), changes);
+                    headers.put("ETag", etag(updated));
+                    return toJson(updated);
+                }
+                case "DELETE":
+                    engine.delete(checkVersion(find(start), ifMatch));
+                    return null;
+                default:
+                    throw new ApiException(405, "Method not allowed");
+            }
+        }
+        throw new ApiException(404, "No such resource");
+    }
+
+    private Map<String, Object> week(LocalDate date) throws IOException {
+        LocalDate monday = date.with(DayOfWeek.MONDAY);
+        List<Object> events = new ArrayList<>();
+        for (WeeklySchedulerApp.Event event : engine.week(monday)) {
+            events.add(toJson(event));
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("monday", monday.toString());
+        result.put("events", events);
+        return result;
+    }
+
+    private Map<String, Object> freeSlots(Map<String, String> query) throws ApiException, IOException {
+        LocalDateTime after = parseDateTime(required(query, "after"));
+        int minutes = intParameter(query, "minutes", 60, 1, 24 * 60);
+        int count = intParameter(query, "count", 5, 1, 1000);
+        int align = intParameter(query, "align", 15, 1, 24 * 60);
+        int days = intParameter(query, "days", 90, 0, 3660);
+        List<Object> slots = new ArrayList<>();
+        for (LocalDateTime slot : engine.findFreeSlots(after, minutes, count, align, days)) {
+            slots.add(slot.format(MINUTES));
+        }
+        return Collections.singletonMap("slots", slots);
+    }
+
+    private WeeklySchedulerApp.Event create(Map<String, Object> fields) throws ApiException, SchedulerEngine.SchedulingException, IOException {
+        return engine.create(optionalString(fields, "name"), optionalString(fields, "location"),
+                parseDateTime(requiredString(fields, "start")), parseDateTime(requiredString(fields, "end")), optionalString(fields, "color"));
+    }
+
+    // Bookings in the batch are checked and booked independently, as with an import
+    private Map<String, Object> batch(String body) throws ApiException, IOException {
+        Object parsed = parse(body);
+        if (!(parsed instanceof List)) {
+            throw new ApiException(400, "Expected an array of events");
+        }
+        List<?> items = (List<?>) parsed;
+        if (items.size() > MAX_BATCH) {
+            throw new ApiException(413, "At most " + MAX_BATCH + " events per batch");
+        }
+        List<WeeklySchedulerApp.Event> candidates = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        Object[] results = new Object[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            try {
+                if (!(items.get(i) instanceof Map)) {
+                    throw new ApiException(400, "Expected an object");
+                }
+                @SuppressWarnings("unchecked")
+                Map<String, Object> fields = (Map<String, Object>) items.get(i);
+                candidates.add(new WeeklySchedulerApp.Event(optionalString(fields, "name"), optionalString(fields, "location"),
+                        parseDateTime(requiredString(fields, "start")), parseDateTime(requiredString(fields, "end")),
+                        optionalString(fields, "color")));
+                positions.add(i);
+            } catch (ApiException e) {
+                results[i] = rejection(e.getMessage());
+            }
+        }
+        String[] rejections = engine.createAll(candidates);
+        for (int c = 0; c < candidates.size(); c++) {
+            WeeklySchedulerApp.Event event = candidates.get(c);
+            if (rejections[c] != null) {
+                results[positions.get(c)] = rejection(rejections[c]);
+            } else {
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("status", "created");
+                result.put("id", id(event));
+                result.put("version", version(event));
+                results[positions.get(c)] = result;
+            }
+        }
+        return Collections.singletonMap("results", Arrays.asList(results));
+    }
+
+    // A change to the times, the details or both is made as a single engine operation, so
+    // it is checked against the event as requested and undone in one step
+    private WeeklySchedulerApp.Event update(WeeklySchedulerApp.Event event, Map<String, Object> changes)
+            throws ApiException, SchedulerEngine.SchedulingException, IOException {
+        LocalDateTime start = changes.containsKey("start") ? parseDateTime(requiredString(changes, "start")) : event.startTime;
+        LocalDateTime end = changes.containsKey("end") ? parseDateTime(requiredString(changes, "end")) : event.endTime;
+        String name = changes.containsKey("name") ? optionalString(changes, "name") : event.name;
+        String location = changes.containsKey("location") ? optionalString(changes, "location") : event.location;
+        String color = changes.containsKey("color") ? optionalString(changes, "color") : event.color;
+        boolean moved = !start.equals(event.startTime) || !end.equals(event.endTime);
+        boolean edited = !Objects.equals(name, event.name) || !Objects.equals(location, event.location)
+                || !Objects.equals(color, event.color);
+        if (moved && edited) {
+            return engine.update(event, start, end, name, location, color);
+        } else if (moved) {
+            return engine.move(event, start, end);
+        } else if (edited) {
+            return engine.edit(event, name, location, color);
+        }
+        return event;
+    }
+
+    // The single event starting at the given minute; occurrences of series are not addressable.
+    // Empty events booked before they were rejected may share a start; those are refused rather
+    // than changing whichever comes first.
+    private WeeklySchedulerApp.Event find(LocalDateTime start) throws ApiException, IOException {
+        WeeklySchedulerApp.Event found = null;
+        for (WeeklySchedulerApp.Event event : engine.eventsOn(start.toLocalDate())) {
+            if (event.startTime.equals(start) && !(event instanceof Recurrence.Occurrence)) {
+                if (found != null) {
+                    throw new ApiException(409, "More than one event starts at " + start.format(MINUTES) + "; change them in the window");
+                }
+                found = event;
+            }
+        }
+        if (found == null) {
+            throw new ApiException(404, "No event starts at " + start.format(MINUTES));
+        }
+        return found;
+    }
+
+    private static WeeklySchedulerApp.Event checkVersion(WeeklySchedulerApp.Event event, String ifMatch) throws ApiException {
+        if (ifMatch != null && !ifMatch.trim().equals("*") && !ifMatch.trim().equals(etag(event))) {
+            throw new ApiException(412, "The event has changed; its version is now " + version(event));
+        }
+        return event;
+    }
+
+    private static Map<String, Object> toJson(WeeklySchedulerApp.Event event) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", id(event));
+        json.put("version", version(event));
+        json.put("name", event.name);
+        json.put("location", event.location);
+        json.put("start", event.startTime.format(MINUTES));
+        json.put("end", event.endTime.format(MINUTES));
+        json.put("color", event.color);
+        if (event instanceof Recurrence.Occurrence) {
+            json.put("seriesId", ((Recurrence.Occurrence) event).series.id);
+        }
+        return json;
+    }
+
+    private static String id(WeeklySchedulerApp.Event event) {
+        return event.startTime.format(MINUTES);
+    }
+
+    private static String version(WeeklySchedulerApp.Event event) {
+        CRC32 crc = new CRC32();
+        String fields = event.name + '\u0000' + event.location + '\u0000' + event.startTime + '\u0000' + event.endTime + '\u0000' + event.color;
+        crc.update(fields.getBytes(StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue());
+    }
+
+    private static String etag(WeeklySchedulerApp.Event event) {
+        return '"' + version(event) + '"';
+    }
+
+    private static Map<String, Object> rejection(String reason) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("status", "rejected");
+        result.put("error", reason);
+        return result;
+    }
+
+    private static void requireMethod(String method, String allowed) throws ApiException {
+        if (!method.equals(allowed)) {
+            throw new ApiException(405, "Method not allowed");
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException, ApiException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new ApiException(413, "Request body is too large");
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Object parse(String body) throws ApiException {
+        try {
+            return Json.parse(body);
+        } catch (Json.ParseException e) {
+            throw new ApiException(400, "Invalid JSON: " + e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> object(String body) throws ApiException {
+        Object parsed = parse(body);
+        if (!(parsed instanceof Map)) {
+            throw new ApiException(400, "Expected a JSON object");
+        }
+        return (Map<String, Object>) parsed;
+    }
+
+    private static String requiredString(Map<String, Object> fields, String name) throws ApiException {
+        String value = optionalString(fields, name);
+        if (value == null) {
+            throw new ApiException(400, "Missing " + name);
+        }
+        return value;
+    }
+
+    private static String optionalString(Map<String, Object> fields, String name) throws ApiException {
+        Object value = fields.get(name);
+        if (value != null && !(value instanceof String)) {
+            throw new ApiException(400, name + " must be a string");
+        }
+        return (String) value;
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = uri.getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static String required(Map<String, String> query, String name) throws ApiException {
+        String value = query.get(name);
+        if (value == null) {
+            throw new ApiException(400, "Missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static int intParameter(Map<String, String> query, String name, int defaultValue, int min, int max) throws ApiException {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < min || parsed > max) {
+                throw new ApiException(400, name + " must be from " + min + " to " + max);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, name + " must be a whole number");
+        }
+    }
+
+    private static LocalDate parseDate(String value) throws ApiException {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeException e) {
+            throw new ApiException(400, "Invalid date " + value + ", expected YYYY-MM-DD");
+        }
+    }
+
+    private static LocalDateTime parseDateTime(String value) throws ApiException {
+        try {
+            return LocalDateTime.parse(value).withSecond(0).withNano(0);
+        } catch (DateTimeException e) {
+            throw new ApiException(400, "Invalid time " + value + ", expected YYYY-MM-DDTHH:MM");
+        }
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// Named calendars, e.g. one per member of the executive team. Each is its own shard: a snapshot
+// file with its journal and series file, and its own SchedulerEngine with its own locks, so
+// bookings in different calendars never wait for each other. The main calendar is the original
+// schedule file; the others live in a directory next to it as <name>.dat. A calendar is opened
+// (its journal recovered) on first use and stays open; all of them share the booking rules.
+// Names are case-insensitive: a calendar keeps the spelling it was first created with.
+public class CalendarSet implements AutoCloseable {
+    public static final String MAIN = "Main";
+    private static final String SUFFIX = ".dat";
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9 _-]{0,39}");
+    private static final int BATCH_DAYS = 28; // Days of busy minutes read at once by the common free time search
+
+    private final Path mainFile;
+    private final Path directory;
+    private final BookingRules rules;
+    private final int undoLimit;
+    private final long autosaveQuietMs;
+    private final long autosaveMaxDelayMs;
+    private final ConcurrentHashMap<String, Slot> calendars = new ConcurrentHashMap<>(); // By lower-case name
+
+    // One open calendar
+    public static final class Calendar {
+        public final String name;
+        public final ScheduleJournal journal;
+        public final SchedulerEngine engine;
+        public final AutosaveService autosave;
+
+        Calendar(String name, ScheduleJournal journal, SchedulerEngine engine, AutosaveService autosave) {
+            this.name = name;
+            this.journal = journal;
+            this.engine = engine;
+            this.autosave = autosave;
+        }
+    }
+
+    private static final class Slot {
+        Calendar calendar; // Null until opened, guarded by the slot's monitor
+    }
+
+    public CalendarSet(Path mainFile, BookingRules rules, int undoLimit, long autosaveQuietMs, long autosaveMaxDelayMs) {
+        this.mainFile = mainFile;
+        this.directory = mainFile.resolveSibling("calendars");
+        this.rules = rules;
+        this.undoLimit = undoLimit;
+        this.autosaveQuietMs = autosaveQuietMs;
+        this.autosaveMaxDelayMs = autosaveMaxDelayMs;
+    }
+
+    // The main calendar first, then the others by name: those on disk and those opened since
+    public List<String> names() throws IOException {
+        TreeSet<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        names.addAll(namesOnDisk());
+        for (Slot slot : calendars.values()) {
+            synchronized (slot) {
+                if (slot.calendar != null) {
+                    names.add(slot.calendar.name);
+                }
+            }
+        }
+        names.remove(MAIN);
+        List<String> result = new ArrayList<>(names.size() + 1);
+        result.add(MAIN);
+        result.addAll(names);
+        return result;
+    }
+
+    // The calendar with the given name in any case, opened (and created, if new) on first use.
+    // Only one thread opens a given calendar; others asking for it meanwhile wait for it.
+    public Calendar open(String name) throws IOException {
+        if (name.equalsIgnoreCase(MAIN)) {
+            name = MAIN;
+        } else if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Calendar names are letters, digits, spaces, '-' and '_', at most 40 characters.");
+        }
+        Slot slot = calendars.computeIfAbsent(name.toLowerCase(Locale.ROOT), key -> new Slot());
+        synchronized (slot) {
+            if (slot.calendar == null) {
+                slot.calendar = openShard(canonicalName(name));
+            }
+            return slot.calendar;
+        }
+    }
+
+    // The spelling of the calendar's file if there is one, so "alice" opens Alice.dat
+    private String canonicalName(String name) throws IOException {
+        if (name.equals(MAIN)) {
+            return name;
+        }
+        for (String existing : namesOnDisk()) {
+            if (existing.equalsIgnoreCase(name)) {
+                return existing;
+            }
+        }
+        return name;
+    }
+
+    private List<String> namesOnDisk() throws IOException {
+        List<String> names = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX + "*")) {
+                for (Path file : files) {
+                    String fileName = file.getFileName().toString();
+                    String name = fileName.substring(0, fileName.indexOf(SUFFIX));
+                    if (NAME.matcher(name).matches()) {
+                        names.add(name);
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    private Calendar openShard(String name) throws IOException {
+        Path file = mainFile;
+        if (!name.equals(MAIN)) {
+            Files.createDirectories(directory);
+            file = directory.resolve(name + SUFFIX);
+        }
+        ScheduleJournal journal = new ScheduleJournal(file);
+        journal.open();
+        SchedulerEngine engine = new SchedulerEngine(journal, SeriesStore.fileFor(file), rules);
+        engine.setUndoLimit(undoLimit);
+        AutosaveService autosave = new AutosaveService(engine, autosaveQuietMs, autosaveMaxDelayMs, TimeUnit.MILLISECONDS);
+        return new Calendar(name, journal, engine, autosave);
+    }
+
+    // Start times of the first count slots of the given length at or after the given time in
+    // which every one of the calendars is free, looking at most maxDays days ahead. Slots
+    // follow the same rules as SchedulerEngine.findFreeSlots. The days are taken a batch at a
+    // time; for each batch the calendars' busy minutes are read in parallel and or-ed together.
+    public List<LocalDateTime> commonFreeSlots(List<String> names, LocalDateTime after, int minutes, int count, int alignMinutes,
+            int maxDays) throws IOException {
+        try (Metrics.Sample sample = Metrics.COMMON_FREE_SLOTS.start()) {
+            List<LocalDateTime> slots = commonFreeSlotsTimed(names, after, minutes, count, alignMinutes, maxDays);
+            sample.succeeded();
+            return slots;
+        }
+    }
+
+    private List<LocalDateTime> commonFreeSlotsTimed(List<String> names, LocalDateTime after, int minutes, int count,
+            int alignMinutes, int maxDays) throws IOException {
+        List<LocalDateTime> slots = new ArrayList<>(count);
+        long[] alignMask = MinuteBitmap.alignMask(alignMinutes);
+        LocalDate first = after.toLocalDate();
+        LocalDate last = first.plusDays(maxDays);
+        int minute = after.getHour() * 60 + after.getMinute() + (after.getSecond() > 0 || after.getNano() > 0 ? 1 : 0);
+        for (LocalDate from = first; slots.size() < count && !from.isAfter(last); from = from.plusDays(BATCH_DAYS)) {
+            LocalDate to = from.plusDays(BATCH_DAYS - 1).isAfter(last) ? last : from.plusDays(BATCH_DAYS - 1);
+            MinuteBitmap[] busy = busyMinutes(names, from, to);
+            for (int i = 0; i < busy.length && slots.size() < count; i++) {
+                long[] starts = busy[i].freeRunStarts(minutes, alignMask);
+                LocalDate date = from.plusDays(i);
+                while (slots.size() < count && (minute = MinuteBitmap.nextSetBit(starts, minute)) >= 0 && minute < MinuteBitmap.MINUTES) {
+                    slots.add(date.atStartOfDay().plusMinutes(minute));
+                    minute += Math.max(minutes, 1);
+                }
+                minute = 0;
+            }
+        }
+        return slots;
+    }
+
+    // Minutes of every date from first to last (inclusive) in which at least one of the
+    // calendars is busy (see SchedulerEngine.busyMinutes). Each calendar is opened and read on
+    // its own thread, so calendars on disk are read at the same time.
+    public MinuteBitmap[] busyMinutes(List<String> names, LocalDate first, LocalDate last) throws IOException {
+        List<CompletableFuture<MinuteBitmap[]>> parts = new ArrayList<>(names.size());
+        for (String name : names) {
+            parts.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return open(name).engine.busyMinutes(first, last);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, ForkJoinPool.commonPool()));
+        }
+        MinuteBitmap[] busy = null;
+        try {
+            for (CompletableFuture<MinuteBitmap[]> part : parts) {
+                MinuteBitmap[] days = part.join();
+                if (busy == null) {
+                    busy = days; // Copies, so the first calendar's can take the others'
+                } else {
+                    for (int i = 0; i < days.length; i++) {
+                        busy[i].or(days[i]);
+                    }
+                }
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+        if (busy == null) { // No calendars: only the closed hours
+            busy = new MinuteBitmap[(int) (last.toEpochDay() - first.toEpochDay() + 1)];
+            for (int i = 0; i < busy.length; i++) {
+                busy[i] = rules.closedMinutes(first.plusDays(i)).copy();
+            }
+        }
+        return busy;
+    }
+
+    // Saves every open calendar one last time and flushes its journal. Autosave is stopped
+    // first, so no save is started against a closed journal.
+    @Override
+    public void close() {
+        for (Slot slot : calendars.values()) {
+            synchronized (slot) {
+                if (slot.calendar != null) {
+                    try {
+                        slot.calendar.autosave.saveNow().join(); // Changes still waiting for the quiet period
+                    } catch (CompletionException e) {
+                        System.err.println("Could not save calendar " + slot.calendar.name + " on exit: " + e.getCause().getMessage());
+                    }
+                    slot.calendar.autosave.close();
+                    slot.calendar.journal.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.awt.*;
+import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+// Measures how long the Event Dispatch Thread spends on each event by sitting in front of the
+// system event queue. An event that opens a modal dialog pumps other events while the dialog
+// is up; only the time it spends outside that nested loop counts as its own. Events taking
+// longer than the stall threshold are counted, logged, kept in a short list of recent stalls
+// and emitted as FlightRecorderEvents.EdtStall.
+public class EdtMonitor extends EventQueue {
+    static final long[] BUCKET_LIMITS_MS = {1, 2, 5, 10, 20, 50, 100, 250, 1000};
+    private static final int RECENT_STALLS = 20;
+
+    private static EdtMonitor installed;
+
+    private final long stallThresholdNanos;
+    private final long[] buckets = new long[BUCKET_LIMITS_MS.length + 1];
+    private long events;
+    private long stalls;
+    private long maxNanos;
+    private String maxEvent = "-";
+    private final Deque<String> recentStalls = new ArrayDeque<>(); // Newest first
+    private int depth;
+    // Per nesting level: start time, start of the first nested dispatch, end of the last one
+    private long[] starts = new long[8];
+    private long[] firstNested = new long[8];
+    private long[] lastNested = new long[8];
+
+    private EdtMonitor(long stallThresholdMillis) {
+        this.stallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(stallThresholdMillis);
+    }
+
+    // Installs the monitor once; later calls return the installed instance
+    public static synchronized EdtMonitor install(long stallThresholdMillis) {
+        if (installed == null) {
+            installed = new EdtMonitor(stallThresholdMillis);
+            Toolkit.getDefaultToolkit().getSystemEventQueue().push(installed);
+        }
+        return installed;
+    }
+
+    public static synchronized EdtMonitor get() {
+        return installed;
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        if (depth == starts.length) {
+            starts = Arrays.copyOf(starts, depth * 2);
+            firstNested = Arrays.copyOf(firstNested, depth * 2);
+            lastNested = Arrays.copyOf(lastNested, depth * 2);
+        }
+        int level = depth++;
+        long start = System.nanoTime();
+        if (level > 0 && firstNested[level - 1] == 0) {
+            firstNested[level - 1] = start;
+        }
+        starts[level] = start;
+        firstNested[level] = 0;
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long end = System.nanoTime();
+            depth--;
+            long own = firstNested[level] == 0 ? end - start : (firstNested[level] - start) + (end - lastNested[level]);
+            if (level > 0) {
+                lastNested[level - 1] = end;
+            }
+            record(own, event);
+        }
+    }
+
+    private synchronized void record(long nanos, AWTEvent event) {
+        events++;
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS_MS.length && millis >= BUCKET_LIMITS_MS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket]++;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+            maxEvent = describe(event);
+        }
+        if (nanos >= stallThresholdNanos) {
+            stalls++;
+            String description = describe(event);
+            System.err.printf("EDT stall: %.1f ms in %s%n", nanos / 1e6, description);
+            recentStalls.addFirst(String.format("%s  %.1f ms in %s", LocalTime.now().withNano(0), nanos / 1e6, description));
+            if (recentStalls.size() > RECENT_STALLS) {
+                recentStalls.removeLast();
+            }
+            FlightRecorderEvents.EdtStall stall = new FlightRecorderEvents.EdtStall();
+            if (stall.shouldCommit()) {
+                stall.dispatchTime = nanos;
+                stall.awtEvent = description;
+                stall.commit();
+            }
+        }
+    }
+
+    private static String describe(AWTEvent event) {
+        String source = event.getSource() == null ? "" : " from " + event.getSource().getClass().getSimpleName();
+        return event.getClass().getSimpleName() + source;
+    }
+
+    public synchronized long getEventCount() {
+        return events;
+    }
+
+    public synchronized long getStallCount() {
+        return stalls;
+    }
+
+    public synchronized double getMaxMillis() {
+        return maxNanos / 1e6;
+    }
+
+    public synchronized void reset() {
+        events = 0;
+        stalls = 0;
+        maxNanos = 0;
+        maxEvent = "-";
+        recentStalls.clear();
+        Arrays.fill(buckets, 0);
+    }
+
+    // Human-readable summary of dispatch times, one histogram bucket per line
+    public synchronized String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Events dispatched: %d%n", events));
+        report.append(String.format("Stalls (>= %d ms): %d%n", TimeUnit.NANOSECONDS.toMillis(stallThresholdNanos), stalls));
+        report.append(String.format("Longest: %.2f ms (%s)%n%n", maxNanos / 1e6, maxEvent));
+        long lower = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            String range = i < BUCKET_LIMITS_MS.length ? lower + "-" + BUCKET_LIMITS_MS[i] + " ms" : ">= " + lower + " ms";
+            report.append(String.format("%-14s %d%n", range, buckets[i]));
+            if (i < BUCKET_LIMITS_MS.length) {
+                lower = BUCKET_LIMITS_MS[i];
+            }
+        }
+        if (!recentStalls.isEmpty()) {
+            report.append(String.format("%nRecent stalls:%n"));
+            for (String stall : recentStalls) {
+                report.append(stall).append(System.lineSeparator());
+            }
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,552 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.*;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+// Bulk import of events from CSV or iCalendar (.ics) files.
+//
+// Records are parsed one at a time and collected into batches of BATCH_SIZE. Each batch is
+// booked with SchedulerEngine.createAll, which applies the same rules as creating an event by
+// hand, and the weeks it had to load are unloaded again afterwards, so memory use does not
+// depend on the size of the file or the range of its dates. Every rejected record is written to a
+// report (CSV: line, reason, record) together with the reason.
+//
+// CSV files have the columns name, location, date, start, end and color, in that order unless
+// the first row is a header naming them. Dates are yyyy-MM-dd and times HH:mm; without a date
+// column, start and end may be full date-times. Fields may be quoted as in RFC 4180.
+public class EventImporter {
+    static final int BATCH_SIZE = 50_000;
+
+    private final SchedulerEngine engine;
+
+    public static final class Result {
+        public final int imported;
+        public final int rejected;
+
+        Result(int imported, int rejected) {
+            this.imported = imported;
+            this.rejected = rejected;
+        }
+    }
+
+    // A parsed record waiting in the current batch; event is null if parsing already failed
+    private static final class Row {
+        final int line;
+        final String record;
+        final WeeklySchedulerApp.Event event;
+        final String rejection;
+
+        Row(int line, String record, WeeklySchedulerApp.Event event, String rejection) {
+            this.line = line;
+            this.record = record;
+            this.event = event;
+            this.rejection = rejection;
+        }
+    }
+
+    public EventImporter(SchedulerEngine engine) {
+        this.engine = engine;
+    }
+
+    // Imports a .ics or CSV file (chosen by extension) and writes the rejection report. Progress
+    // is reported in percent of the file read. Stops between batches when the thread is
+    // interrupted; the batches booked until then stay booked.
+    public Result importFile(Path file, Path report, IntConsumer progress) throws IOException {
+        long size = Math.max(Files.size(file), 1);
+        try (CountingInputStream counted = new CountingInputStream(Files.newInputStream(file));
+             Reader in = new InputStreamReader(counted, StandardCharsets.UTF_8);
+             Writer out = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+            Batch batch = new Batch(out, () -> progress.accept((int) (100 * counted.count / size)));
+            if (file.getFileName().toString().toLowerCase().endsWith(".ics")) {
+                readIcs(in, batch);
+            } else {
+                readCsv(in, batch);
+            }
+            batch.flush();
+            return new Result(batch.imported, batch.rejected);
+        }
+    }
+
+    public static Path reportFileFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".rejected.csv");
+    }
+
+    // Collects rows and books them BATCH_SIZE at a time
+    private final class Batch {
+        final Writer report;
+        final Runnable progress;
+        final List<Row> rows = new ArrayList<>(BATCH_SIZE);
+        int imported;
+        int rejected;
+
+        Batch(Writer report, Runnable progress) throws IOException {
+            this.report = report;
+            this.progress = progress;
+            report.write("line,reason,record\n");
+        }
+
+        void add(Row row) throws IOException {
+            rows.add(row);
+            if (rows.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Import cancelled after " + imported + " events");
+            }
+            List<WeeklySchedulerApp.Event> candidates = new ArrayList<>(rows.size());
+            Set<LocalDate> notLoaded = new HashSet<>(); // Weeks this batch brings into memory
+            for (Row row : rows) {
+                if (row.event != null) {
+                    candidates.add(row.event);
+                    LocalDate monday = row.event.startTime.toLocalDate().with(DayOfWeek.MONDAY);
+                    if (!notLoaded.contains(monday) && !engine.isWeekLoaded(monday)) {
+                        notLoaded.add(monday);
+                    }
+                }
+            }
+            String[] rejections;
+            try {
+                rejections = engine.createAll(candidates);
+            } finally {
+                for (LocalDate monday : notLoaded) {
+                    engine.unloadWeek(monday); // Everything is journaled; only the weeks in use before stay in memory
+                }
+            }
+            int candidate = 0;
+            for (Row row : rows) {
+                String reason = row.event == null ? row.rejection : rejections[candidate++];
+                if (reason == null) {
+                    imported++;
+                } else {
+                    rejected++;
+                    report.write(row.line + "," + csvField(reason) + "," + csvField(row.record) + "\n");
+                }
+            }
+            rows.clear();
+            progress.run();
+        }
+    }
+
+    private static void readCsv(Reader in, Batch batch) throws IOException {
+        CsvReader csv = new CsvReader(in);
+        int[] columns = {0, 1, 2, 3, 4, 5}; // name, location, date, start, end, color
+        List<String> fields = new ArrayList<>();
+        boolean first = true;
+        while (csv.next(fields) != null) {
+            if (fields.size() == 1 && fields.get(0).trim().isEmpty()) {
+                continue; // Blank line
+            }
+            if (first) {
+                first = false;
+                if (isHeader(fields, columns)) {
+                    continue;
+                }
+            }
+            batch.add(csvRow(csv.recordLine, csv.raw.toString(), fields, columns));
+        }
+    }
+
+    // Maps the columns by name if the row is a header
+    private static boolean isHeader(List<String> fields, int[] columns) {
+        String[] names = {"name", "location", "date", "start", "end", "color"};
+        boolean header = false;
+        int[] found = {-1, -1, -1, -1, -1, -1};
+        for (int i = 0; i < fields.size(); i++) {
+            for (int column = 0; column < names.length; column++) {
+                if (fields.get(i).trim().equalsIgnoreCase(names[column])) {
+                    found[column] = i;
+                    header = true;
+                }
+            }
+        }
+        if (header) {
+            System.arraycopy(found, 0, columns, 0, columns.length);
+        }
+        return header;
+    }
+
+    private static Row csvRow(int line, String record, List<String> fields, int[] columns) {
+        String name = field(fields, columns[0]);
+        String location = field(fields, columns[1]);
+        String date = field(fields, columns[2]);
+        String start = field(fields, columns[3]);
+        String end = field(fields, columns[4]);
+        if (start == null || end == null) {
+            return new Row(line, record, null, "Missing start or end time.");
+        }
+        try {
+            LocalDateTime startTime;
+            LocalDateTime endTime;
+            if (date == null) {
+                startTime = parseDateTime(start);
+                endTime = parseDateTime(end);
+            } else {
+                LocalDate day = parseDate(date);
+                startTime = LocalDateTime.of(day, parseTime(start));
+                endTime = LocalDateTime.of(day, parseTime(end));
+            }
+            return new Row(line, record, new WeeklySchedulerApp.Event(name, location, startTime, endTime, color(field(fields, columns[5]))), null);
+        } catch (DateTimeException e) {
+            return new Row(line, record, null, "Invalid date or time.");
+        }
+    }
+
+    private static String field(List<String> fields, int column) {
+        if (column < 0 || column >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(column).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    // Reads VEVENTs; TZID and UTC times are converted to local time, nested components are skipped
+    private static void readIcs(Reader in, Batch batch) throws IOException {
+        IcsReader ics = new IcsReader(in);
+        String line;
+        int eventLine = 0;
+        int depth = 0; // Components nested inside the current VEVENT, such as VALARM
+        boolean inEvent = false;
+        String summary = null;
+        String location = null;
+        String color = null;
+        String start = null;
+        String end = null;
+        String duration = null;
+        String rejection = null;
+        while ((line = ics.next()) != null) {
+            int colon = valueStart(line);
+            if (colon < 0) {
+                continue;
+            }
+            String property = line.substring(0, colon);
+            String value = line.substring(colon + 1);
+            String name = property.split(";", 2)[0].toUpperCase();
+            if (name.equals("BEGIN")) {
+                if (inEvent) {
+                    depth++;
+                } else if (value.equalsIgnoreCase("VEVENT")) {
+                    inEvent = true;
+                    eventLine = ics.lineNumber;
+                    summary = location = color = start = end = duration = rejection = null;
+                }
+            } else if (name.equals("END") && inEvent) {
+                if (depth > 0) {
+                    depth--;
+                } else {
+                    inEvent = false;
+                    batch.add(icsRow(eventLine, summary, location, color, start, end, duration, rejection));
+                }
+            } else if (inEvent && depth == 0) {
+                switch (name) {
+                    case "SUMMARY":
+                        summary = unescape(value);
+                        break;
+                    case "LOCATION":
+                        location = unescape(value);
+                        break;
+                    case "COLOR":
+                        color = value;
+                        break;
+                    case "DTSTART":
+                        start = line;
+                        break;
+                    case "DTEND":
+                        end = line;
+                        break;
+                    case "DURATION":
+                        duration = value;
+                        break;
+                    case "RRULE":
+                    case "RDATE":
+                        rejection = "Recurring events are not supported.";
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    private static Row icsRow(int line, String summary, String location, String color, String start, String end, String duration, String rejection) {
+        String record = summary == null ? "" : summary;
+        if (rejection != null) {
+            return new Row(line, record, null, rejection);
+        }
+        if (start == null || (end == null && duration == null)) {
+            return new Row(line, record, null, "Missing DTSTART, or both DTEND and DURATION.");
+        }
+        try {
+            LocalDateTime startTime = icsTime(start);
+            LocalDateTime endTime = end != null ? icsTime(end) : startTime.plus(Duration.parse(duration));
+            if (startTime == null || endTime == null) {
+                return new Row(line, record, null, "All-day events are not supported.");
+            }
+            return new Row(line, record, new WeeklySchedulerApp.Event(summary, location, startTime, endTime, color(color)), null);
+        } catch (DateTimeException e) {
+            return new Row(line, record, null, "Invalid date, time or time zone.");
+        }
+    }
+
+    // Local time of a DTSTART/DTEND property line, or null for a date without a time
+    private static LocalDateTime icsTime(String line) {
+        int colon = valueStart(line);
+        String value = line.substring(colon + 1).trim();
+        if (value.length() == 8) {
+            return null;
+        }
+        if (value.length() < 15 || value.charAt(8) != 'T') {
+            throw new DateTimeException("Bad date-time " + value);
+        }
+        LocalDateTime time = LocalDateTime.of(digits(value, 0, 4), digits(value, 4, 2), digits(value, 6, 2),
+                digits(value, 9, 2), digits(value, 11, 2), digits(value, 13, 2)).truncatedTo(ChronoUnit.MINUTES);
+        ZoneId zone = null;
+        if (value.endsWith("Z")) {
+            zone = ZoneOffset.UTC;
+        } else {
+            for (String parameter : line.substring(0, colon).split(";")) {
+                if (parameter.regionMatches(true, 0, "TZID=", 0, 5)) {
+                    zone = ZoneId.of(parameter.substring(5).replace("\"", ""));
+                }
+            }
+        }
+        return zone == null ? time : time.atZone(zone).withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+    }
+
+    // Index of the colon separating property and value, skipping colons in quoted parameters
+    private static int valueStart(String line) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ':' && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                result.append(next == 'n' || next == 'N' ? '\n' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    // One of the application's color names regardless of case; unknown colors are kept as given
+    private static String color(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        for (String color : WeeklySchedulerApp.COLORS) {
+            if (color.equalsIgnoreCase(value.trim())) {
+                return color;
+            }
+        }
+        return value.trim();
+    }
+
+    // The common formats are parsed by hand; java.time's parsers dominate the import otherwise
+    private static LocalDate parseDate(String value) {
+        if (value.length() == 10 && value.charAt(4) == '-' && value.charAt(7) == '-') {
+            return LocalDate.of(digits(value, 0, 4), digits(value, 5, 2), digits(value, 8, 2));
+        }
+        return LocalDate.parse(value);
+    }
+
+    private static LocalTime parseTime(String value) {
+        int colon = value.indexOf(':');
+        if ((colon == 1 || colon == 2) && value.length() == colon + 3) {
+            return LocalTime.of(digits(value, 0, colon), digits(value, colon + 1, 2));
+        }
+        return LocalTime.parse(value);
+    }
+
+    private static LocalDateTime parseDateTime(String value) {
+        if (value.length() > 11 && (value.charAt(10) == ' ' || value.charAt(10) == 'T')) {
+            return LocalDateTime.of(parseDate(value.substring(0, 10)), parseTime(value.substring(11)));
+        }
+        return LocalDateTime.parse(value);
+    }
+
+    private static int digits(String value, int from, int count) {
+        int result = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new DateTimeParseException("Not a number", value, i);
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    // Splits CSV records as in RFC 4180: quoted fields may contain commas, quotes and line breaks
+    private static final class CsvReader {
+        private final Reader in;
+        private final char[] buffer = new char[1 << 16];
+        private int position;
+        private int limit;
+        private int line = 1;
+        int recordLine;
+        final StringBuilder raw = new StringBuilder(); // Text of the last record, for the report
+
+        CsvReader(Reader in) {
+            this.in = in;
+        }
+
+        List<String> next(List<String> fields) throws IOException {
+            fields.clear();
+            raw.setLength(0);
+            recordLine = line;
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            boolean inQuotes = false;
+            while (true) {
+                if (inQuotes) {
+                    if (c == -1) {
+                        fields.add(field.toString()); // Unterminated quote at the end of the file
+                        return fields;
+                    } else if (c == '"') {
+                        c = read();
+                        if (c != '"') {
+                            inQuotes = false;
+                            continue;
+                        }
+                        field.append('"');
+                    } else {
+                        if (c == '\n') {
+                            line++;
+                        }
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0 && !quoted) {
+                    inQuotes = true;
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    quoted = false;
+                } else if (c == '\n' || c == -1) {
+                    line++;
+                    fields.add(field.toString());
+                    int length = raw.length();
+                    while (length > 0 && (raw.charAt(length - 1) == '\n' || raw.charAt(length - 1) == '\r')) {
+                        length--;
+                    }
+                    raw.setLength(length);
+                    return fields;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        // Buffered here rather than through BufferedReader.read(), which locks for every char
+        private int read() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            char c = buffer[position++];
+            raw.append(c);
+            return c;
+        }
+    }
+
+    // Returns unfolded content lines: a line starting with a space or tab continues the previous one
+    private static final class IcsReader {
+        private final BufferedReader in;
+        private String pending;
+        private int pendingLine;
+        private int line;
+        int lineNumber; // Line the last returned content line started on
+
+        IcsReader(Reader in) {
+            this.in = new BufferedReader(in);
+        }
+
+        String next() throws IOException {
+            if (pending == null) {
+                pending = in.readLine();
+                pendingLine = ++line;
+                if (pending == null) {
+                    return null;
+                }
+            }
+            StringBuilder unfolded = new StringBuilder(pending);
+            lineNumber = pendingLine;
+            while (true) {
+                pending = in.readLine();
+                pendingLine = ++line;
+                if (pending == null || pending.isEmpty() || (pending.charAt(0) != ' ' && pending.charAt(0) != '\t')) {
+                    return unfolded.toString();
+                }
+                unfolded.append(pending, 1, pending.length());
+            }
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Time index over scheduled events: a treap ordered by start minute where every node
+// also tracks the latest end time in its subtree (a classic augmented interval tree).
+// Overlap checks, "event at this instant" lookups and week range queries are O(log n).
+// An event's start/end must not be changed while it is in the index - remove it first.
+public class EventIndex {
+    private Node root;
+    private long nextSeq;
+    private final Map<WeeklySchedulerApp.Event, Node> nodes = new IdentityHashMap<>();
+
+    private static final class Node {
+        final WeeklySchedulerApp.Event event;
+        final long start;
+        final long end;
+        final long seq; // Tie breaker for events that start at the same minute
+        final int priority;
+        long maxEnd;
+        Node left;
+        Node right;
+
+        Node(WeeklySchedulerApp.Event event, long seq) {
+            this.event = event;
+            this.start = minuteOf(event.startTime);
+            this.end = minuteOf(event.endTime);
+            this.seq = seq;
+            this.priority = ThreadLocalRandom.current().nextInt();
+            this.maxEnd = end;
+        }
+
+        int compareTo(Node other) {
+            if (start != other.start) {
+                return Long.compare(start, other.start);
+            }
+            return Long.compare(seq, other.seq);
+        }
+    }
+
+    // Minutes since 1970-01-01T00:00, ignoring time zones like the rest of the app does
+    static long minuteOf(LocalDateTime dateTime) {
+        return Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    public boolean contains(WeeklySchedulerApp.Event event) {
+        return nodes.containsKey(event);
+    }
+
+    public void add(WeeklySchedulerApp.Event event) {
+        if (nodes.containsKey(event)) {
+            return;
+        }
+        Node node = new Node(event, nextSeq++);
+        nodes.put(event, node);
+        root = insert(root, node);
+    }
+
+    public void addAll(Collection<WeeklySchedulerApp.Event> events) {
+        for (WeeklySchedulerApp.Event event : events) {
+            add(event);
+        }
+    }
+
+    public boolean remove(WeeklySchedulerApp.Event event) {
+        Node node = nodes.remove(event);
+        if (node == null) {
+            return false;
+        }
+        root = delete(root, node);
+        return true;
+    }
+
+    public void clear() {
+        root = null;
+        nodes.clear();
+    }
+
+    // Earliest-starting event that overlaps [start, end), or null if the range is free
+    public WeeklySchedulerApp.Event findOverlap(LocalDateTime start, LocalDateTime end) {
+        Node node = firstOverlap(root, minuteOf(start), minuteOf(end));
+        return node == null ? null : node.event;
+    }
+
+    // Same as findOverlap but ignores one event (used when re-validating an event being changed)
+    public WeeklySchedulerApp.Event findOverlap(LocalDateTime start, LocalDateTime end, WeeklySchedulerApp.Event ignored) {
+        List<WeeklySchedulerApp.Event> hits = new ArrayList<>(2);
+        collect(root, minuteOf(start), minuteOf(end), hits, 2);
+        for (WeeklySchedulerApp.Event hit : hits) {
+            if (hit != ignored) {
+                return hit;
+            }
+        }
+        return null;
+    }
+
+    // Event running at the given instant (start <= instant < end), or null
+    public WeeklySchedulerApp.Event findAt(LocalDateTime instant) {
+        long minute = minuteOf(instant);
+        Node node = firstOverlap(root, minute, minute + 1);
+        return node == null ? null : node.event;
+    }
+
+    // All events overlapping [from, to) in start-time order
+    public List<WeeklySchedulerApp.Event> query(LocalDateTime from, LocalDateTime to) {
+        List<WeeklySchedulerApp.Event> result = new ArrayList<>();
+        collect(root, minuteOf(from), minuteOf(to), result, Integer.MAX_VALUE);
+        return result;
+    }
+
+    // Every indexed event in start-time order
+    public List<WeeklySchedulerApp.Event> toList() {
+        List<WeeklySchedulerApp.Event> result = new ArrayList<>(nodes.size());
+        inOrder(root, result);
+        return result;
+    }
+
+    private static Node firstOverlap(Node node, long start, long end) {
+        while (node != null && node.maxEnd > start) {
+            if (node.left != null && node.left.maxEnd > start) {
+                // Every start on the left is <= node.start, so if node.start < end the
+                // left subtree is guaranteed to contain an overlap
+                Node found = firstOverlap(node.left, start, end);
+                if (found != null) {
+                    return found;
+                }
+            }
+            if (node.start >= end) {
+                return null;
+            }
+            if (node.end > start) {
+                return node;
+            }
+            node = node.right;
+        }
+        return null;
+    }
+
+    private static void collect(Node node, long start, long end, List<WeeklySchedulerApp.Event> out, int limit) {
+        if (node == null || node.maxEnd <= start || out.size() >= limit) {
+            return;
+        }
+        collect(node.left, start, end, out, limit);
+        if (node.start >= end || out.size() >= limit) {
+            return;
+        }
+        if (node.end > start) {
+            out.add(node.event);
+        }
+        collect(node.right, start, end, out, limit);
+    }
+
+    private static void inOrder(Node node, List<WeeklySchedulerApp.Event> out) {
+        while (node != null) {
+            inOrder(node.left, out);
+            out.add(node.event);
+            node = node.right;
+        }
+    }
+
+    private static void update(Node node) {
+        long max = node.end;
+        if (node.left != null && node.left.maxEnd > max) {
+            max = node.left.maxEnd;
+        }
+        if (node.right != null && node.right.maxEnd > max) {
+            max = node.right.maxEnd;
+        }
+        node.maxEnd = max;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        if (added.compareTo(node) < 0) {
+            node.left = insert(node.left, added);
+            if (node.left.priority > node.priority) {
+                return rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, added);
+            if (node.right.priority > node.priority) {
+                return rotateLeft(node);
+            }
+        }
+        update(node);
+        return node;
+    }
+
+    private static Node delete(Node node, Node removed) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = removed.compareTo(node);
+        if (cmp < 0) {
+            node.left = delete(node.left, removed);
+        } else if (cmp > 0) {
+            node.right = delete(node.right, removed);
+        } else {
+            return merge(node.left, node.right);
+        }
+        update(node);
+        return node;
+    }
+
+    // Joins two treaps where every key in left is smaller than every key in right
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+}
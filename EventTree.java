@@ -0,0 +1,218 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Immutable version of EventIndex: the same treap of events by start minute, each node also
+// holding the latest end in its subtree, but never changed once built. with and without return
+// a new tree that shares every node off the path to the change, so a change costs O(log n) new
+// nodes and any number of threads can read an old tree while a newer one is built. The engine
+// keeps one per day (see SchedulerEngine); old trees double as the versions undo goes back to.
+public final class EventTree {
+    public static final EventTree EMPTY = new EventTree(null, 0, 0);
+
+    private final Node root;
+    private final int size;
+    private final long nextSeq;
+
+    private static final class Node {
+        final WeeklySchedulerApp.Event event;
+        final long start;
+        final long end;
+        final long seq; // Tie breaker for events that start at the same minute
+        final int priority;
+        final long maxEnd;
+        final Node left;
+        final Node right;
+
+        Node(WeeklySchedulerApp.Event event, long start, long end, long seq, int priority, Node left, Node right) {
+            this.event = event;
+            this.start = start;
+            this.end = end;
+            this.seq = seq;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            long max = end;
+            if (left != null && left.maxEnd > max) {
+                max = left.maxEnd;
+            }
+            if (right != null && right.maxEnd > max) {
+                max = right.maxEnd;
+            }
+            this.maxEnd = max;
+        }
+
+        Node with(Node left, Node right) {
+            return new Node(event, start, end, seq, priority, left, right);
+        }
+
+        int compareTo(long otherStart, long otherSeq) {
+            return start != otherStart ? Long.compare(start, otherStart) : Long.compare(seq, otherSeq);
+        }
+    }
+
+    private EventTree(Node root, int size, long nextSeq) {
+        this.root = root;
+        this.size = size;
+        this.nextSeq = nextSeq;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(WeeklySchedulerApp.Event event) {
+        return find(event) != null;
+    }
+
+    // This tree with the event added; the same tree if it is already in it
+    public EventTree with(WeeklySchedulerApp.Event event) {
+        if (contains(event)) {
+            return this;
+        }
+        Node added = new Node(event, EventIndex.minuteOf(event.startTime), EventIndex.minuteOf(event.endTime), nextSeq,
+                ThreadLocalRandom.current().nextInt(), null, null);
+        return new EventTree(insert(root, added), size + 1, nextSeq + 1);
+    }
+
+    // This tree without the event; the same tree if it is not in it
+    public EventTree without(WeeklySchedulerApp.Event event) {
+        Node node = find(event);
+        if (node == null) {
+            return this;
+        }
+        return new EventTree(delete(root, node.start, node.seq), size - 1, nextSeq);
+    }
+
+    // Earliest-starting event that overlaps [start, end) other than the ignored one, or null
+    public WeeklySchedulerApp.Event findOverlap(LocalDateTime start, LocalDateTime end, WeeklySchedulerApp.Event ignored) {
+        List<WeeklySchedulerApp.Event> hits = new ArrayList<>(2);
+        collect(root, EventIndex.minuteOf(start), EventIndex.minuteOf(end), hits, 2);
+        for (WeeklySchedulerApp.Event hit : hits) {
+            if (hit != ignored) {
+                return hit;
+            }
+        }
+        return null;
+    }
+
+    public WeeklySchedulerApp.Event findOverlap(LocalDateTime start, LocalDateTime end) {
+        return findOverlap(start, end, null);
+    }
+
+    // All events overlapping [from, to) in start-time order
+    public List<WeeklySchedulerApp.Event> query(LocalDateTime from, LocalDateTime to) {
+        List<WeeklySchedulerApp.Event> result = new ArrayList<>();
+        collect(root, EventIndex.minuteOf(from), EventIndex.minuteOf(to), result, Integer.MAX_VALUE);
+        return result;
+    }
+
+    // Every event in start-time order
+    public List<WeeklySchedulerApp.Event> toList() {
+        List<WeeklySchedulerApp.Event> result = new ArrayList<>(size);
+        inOrder(root, result);
+        return result;
+    }
+
+    // The node holding this very event: only the few nodes with its start minute are compared
+    private Node find(WeeklySchedulerApp.Event event) {
+        return find(root, EventIndex.minuteOf(event.startTime), event);
+    }
+
+    private static Node find(Node node, long start, WeeklySchedulerApp.Event event) {
+        while (node != null) {
+            if (start < node.start) {
+                node = node.left;
+            } else if (start > node.start) {
+                node = node.right;
+            } else {
+                if (node.event == event) {
+                    return node;
+                }
+                Node found = find(node.left, start, event); // Equal starts may sit on both sides
+                return found != null ? found : find(node.right, start, event);
+            }
+        }
+        return null;
+    }
+
+    private static void collect(Node node, long start, long end, List<WeeklySchedulerApp.Event> out, int limit) {
+        if (node == null || node.maxEnd <= start || out.size() >= limit) {
+            return;
+        }
+        collect(node.left, start, end, out, limit);
+        if (node.start >= end || out.size() >= limit) {
+            return;
+        }
+        if (node.end > start) {
+            out.add(node.event);
+        }
+        collect(node.right, start, end, out, limit);
+    }
+
+    private static void inOrder(Node node, List<WeeklySchedulerApp.Event> out) {
+        while (node != null) {
+            inOrder(node.left, out);
+            out.add(node.event);
+            node = node.right;
+        }
+    }
+
+    // Copies the path down to where the node belongs; a node of higher priority splits the
+    // subtree there and takes its place
+    private static Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        if (added.priority > node.priority) {
+            Node[] parts = split(node, added.start, added.seq);
+            return added.with(parts[0], parts[1]);
+        }
+        if (node.compareTo(added.start, added.seq) > 0) {
+            return node.with(insert(node.left, added), node.right);
+        }
+        return node.with(node.left, insert(node.right, added));
+    }
+
+    // Nodes before the key and nodes after it, copying only the nodes on the split path
+    private static Node[] split(Node node, long start, long seq) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (node.compareTo(start, seq) < 0) {
+            Node[] parts = split(node.right, start, seq);
+            parts[0] = node.with(node.left, parts[0]);
+            return parts;
+        }
+        Node[] parts = split(node.left, start, seq);
+        parts[1] = node.with(parts[1], node.right);
+        return parts;
+    }
+
+    private static Node delete(Node node, long start, long seq) {
+        int cmp = node.compareTo(start, seq);
+        if (cmp == 0) {
+            return merge(node.left, node.right);
+        }
+        return cmp > 0 ? node.with(delete(node.left, start, seq), node.right) : node.with(node.left, delete(node.right, start, seq));
+    }
+
+    // Joins two treaps where every key in left is smaller than every key in right
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            return left.with(left.left, merge(left.right, right));
+        }
+        return right.with(merge(left, right.left), right.right);
+    }
+}
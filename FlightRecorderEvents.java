@@ -0,0 +1,36 @@
+import jdk.jfr.*;
+
+// Custom JDK Flight Recorder events, shown under "Weekly Scheduler" in JDK Mission Control.
+// They cost next to nothing unless a recording is running, e.g. one started with
+// -XX:StartFlightRecording or jcmd <pid> JFR.start.
+final class FlightRecorderEvents {
+    private FlightRecorderEvents() {
+    }
+
+    // An operation timed by Metrics; the event's duration is the operation's
+    @Name("weeklyscheduler.Operation")
+    @Label("Scheduler Operation")
+    @Category("Weekly Scheduler")
+    @StackTrace(false)
+    public static final class Operation extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Succeeded")
+        boolean succeeded;
+    }
+
+    // One event on the Event Dispatch Thread that kept the UI busy past the stall threshold
+    @Name("weeklyscheduler.EdtStall")
+    @Label("EDT Stall")
+    @Category("Weekly Scheduler")
+    @StackTrace(false)
+    public static final class EdtStall extends Event {
+        @Label("Dispatch Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long dispatchTime;
+
+        @Label("AWT Event")
+        String awtEvent;
+    }
+}
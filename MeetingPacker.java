@@ -0,0 +1,393 @@
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+// Places a batch of requested meetings into free time, for "Auto-Schedule Meetings".
+//
+// The busy minutes of the dates asked for are taken from the engine once (closed hours,
+// events, occurrences and the rules' buffer), and the plan is made against that snapshot; it
+// is only booked, through createAll, once the secretary has seen it. A placed meeting scores
+// PRIORITY_WEIGHT per point of priority, plus PREFERRED_BONUS inside its preferred hours, minus
+// LATE_PENALTY per day after its earliest date, and the plan with the highest total wins.
+//
+// A greedy pass (most important and longest meeting first, each at its best free start) gives a
+// first plan. A branch-and-bound search then tries, per meeting, up to CANDIDATES starts and
+// leaving it out. The starts are taken from the free time left by the meetings placed before
+// it: either end of each free stretch and the ends of any meeting's preferred hours. Branches
+// that cannot beat the best plan so far, even if every remaining meeting got its best start,
+// are cut. The first FORK_DEPTH levels of the tree are split into fork/join tasks that share
+// the best score. The search stops at the time budget and returns the best plan found by then.
+public class MeetingPacker {
+    static final int ALIGN_MINUTES = 15;
+    static final int MAX_DAYS = 366; // Longest span of dates one batch may cover
+    private static final int PRIORITY_WEIGHT = 1000;
+    private static final int PREFERRED_BONUS = 100;
+    private static final int LATE_PENALTY = 5;
+    private static final int MAX_LATE_PENALTY = 90; // Keeps a placed meeting worth more than none
+    private static final int CANDIDATES = 24; // Starts tried per meeting and branch by the search
+    private static final int FORK_DEPTH = 2;
+
+    private final SchedulerEngine engine;
+
+    // One meeting to place: its length, how much it matters (1 or more), the dates it may fall
+    // on and optionally the hours it should preferably fall in
+    public static final class Request {
+        public final String name;
+        public final String location;
+        public final String color;
+        public final int minutes;
+        public final int priority;
+        public final LocalDate earliest;
+        public final LocalDate latest;
+        public final LocalTime preferredFrom; // Null if any time will do
+        public final LocalTime preferredTo;
+
+        public Request(String name, String location, String color, int minutes, int priority, LocalDate earliest, LocalDate latest,
+                       LocalTime preferredFrom, LocalTime preferredTo) {
+            if (minutes <= 0 || minutes > 24 * 60) {
+                throw new IllegalArgumentException("The length of \"" + name + "\" must be between 1 and 1440 minutes.");
+            }
+            if (priority < 1) {
+                throw new IllegalArgumentException("The priority of \"" + name + "\" must be 1 or more.");
+            }
+            if (latest.isBefore(earliest)) {
+                throw new IllegalArgumentException("The latest date of \"" + name + "\" is before its earliest date.");
+            }
+            if ((preferredFrom == null) != (preferredTo == null) || preferredFrom != null && !preferredFrom.isBefore(preferredTo)) {
+                throw new IllegalArgumentException("The preferred hours of \"" + name + "\" need a start before their end.");
+            }
+            this.name = name;
+            this.location = location;
+            this.color = color;
+            this.minutes = minutes;
+            this.priority = priority;
+            this.earliest = earliest;
+            this.latest = latest;
+            this.preferredFrom = preferredFrom;
+            this.preferredTo = preferredTo;
+        }
+    }
+
+    public static final class Plan {
+        public final List<WeeklySchedulerApp.Event> events; // Placed meetings, by start
+        public final Map<Request, String> unplaced; // Meetings that were left out, with the reason
+        public final boolean complete; // False if the time budget ran out before the search ended
+
+        Plan(List<WeeklySchedulerApp.Event> events, Map<Request, String> unplaced, boolean complete) {
+            this.events = events;
+            this.unplaced = unplaced;
+            this.complete = complete;
+        }
+    }
+
+    // A start a meeting may take: day index into the snapshot, minute of the day and its score
+    private static final class Candidate {
+        final int day;
+        final int minute;
+        final int value;
+
+        Candidate(int day, int minute, int value) {
+            this.day = day;
+            this.minute = minute;
+            this.value = value;
+        }
+    }
+
+    public MeetingPacker(SchedulerEngine engine) {
+        this.engine = engine;
+    }
+
+    // Makes the best plan found within the budget; nothing is booked
+    public Plan plan(List<Request> requests, long budget, TimeUnit unit) throws IOException {
+        try (Metrics.Sample sample = Metrics.PACK_MEETINGS.start()) {
+            Plan plan = requests.isEmpty() ? new Plan(new ArrayList<>(), new LinkedHashMap<>(), true)
+                    : new Search(requests, System.nanoTime() + unit.toNanos(budget)).run();
+            sample.succeeded();
+            return plan;
+        }
+    }
+
+    // Books the plan's meetings and returns why each one that no longer fits was rejected,
+    // e.g. because someone booked the time since the plan was made
+    public List<String> book(Plan plan) throws IOException {
+        String[] rejections = engine.createAll(plan.events);
+        List<String> failed = new ArrayList<>();
+        for (int i = 0; i < rejections.length; i++) {
+            if (rejections[i] != null) {
+                failed.add(plan.events.get(i).name + ": " + rejections[i]);
+            }
+        }
+        return failed;
+    }
+
+    // One planning run. The shared state is the snapshot and the best plan; each task has its
+    // own copy of the day array and replaces a bitmap instead of changing it.
+    private final class Search {
+        final Request[] order; // Most important and then longest meeting first
+        final LocalDate first;
+        final MinuteBitmap[] snapshot;
+        final int buffer;
+        final long deadline;
+        final long[] alignMask = MinuteBitmap.alignMask(ALIGN_MINUTES);
+        final int[] boundaries; // Ends of every meeting's preferred hours, in minutes
+        final String[] rejections; // Why a meeting can never be placed, e.g. too long for the rules
+        final int[] bound; // Best score the meetings from each position on could still add
+        volatile int bestScore = -1;
+        int[] bestStarts; // Per position: day * MINUTES + minute, or -1; guarded by this
+        volatile boolean timedOut;
+
+        Search(List<Request> requests, long deadline) throws IOException {
+            LocalDate from = requests.get(0).earliest;
+            LocalDate to = requests.get(0).latest;
+            for (Request request : requests) {
+                from = request.earliest.isBefore(from) ? request.earliest : from;
+                to = request.latest.isAfter(to) ? request.latest : to;
+            }
+            if (to.toEpochDay() - from.toEpochDay() >= MAX_DAYS) {
+                throw new IllegalArgumentException("The meetings must fall within " + MAX_DAYS + " days of each other.");
+            }
+            this.first = from;
+            this.snapshot = engine.busyMinutes(from, to);
+            markPast(LocalDateTime.now());
+            this.buffer = engine.rules().bufferMinutes();
+            this.deadline = deadline;
+
+            order = requests.toArray(new Request[0]);
+            Arrays.sort(order, Comparator.comparingInt((Request request) -> -request.priority).thenComparingInt(request -> -request.minutes));
+            TreeSet<Integer> ends = new TreeSet<>();
+            rejections = new String[order.length];
+            bound = new int[order.length + 1];
+            for (int i = order.length - 1; i >= 0; i--) {
+                Request request = order[i];
+                if (request.preferredFrom != null) {
+                    ends.add(request.preferredFrom.toSecondOfDay() / 60);
+                    ends.add(request.preferredTo.toSecondOfDay() / 60);
+                }
+                try {
+                    engine.rules().checkDuration(request.minutes);
+                    Candidate best = bestStart(request, snapshot); // Free time only shrinks, so no start can score more
+                    bound[i] = bound[i + 1] + (best == null ? 0 : best.value);
+                } catch (SchedulerEngine.SchedulingException e) {
+                    rejections[i] = e.getMessage();
+                    bound[i] = bound[i + 1];
+                }
+            }
+            boundaries = ends.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // Time already gone cannot be booked: the dates before today and today's minutes up to
+        // now (a started minute counts as gone) are marked busy in the snapshot
+        private void markPast(LocalDateTime now) {
+            int minute = now.getHour() * 60 + now.getMinute() + (now.getSecond() > 0 || now.getNano() > 0 ? 1 : 0);
+            for (int day = 0; day < snapshot.length && !first.plusDays(day).isAfter(now.toLocalDate()); day++) {
+                snapshot[day].set(0, first.plusDays(day).isBefore(now.toLocalDate()) ? MinuteBitmap.MINUTES : minute);
+            }
+        }
+
+        Plan run() {
+            greedy();
+            ForkJoinPool.commonPool().invoke(new Branch(0, 0, snapshot.clone(), new int[order.length]));
+            List<WeeklySchedulerApp.Event> events = new ArrayList<>();
+            Map<Request, String> unplaced = new LinkedHashMap<>();
+            int[] starts;
+            synchronized (this) {
+                starts = bestStarts;
+            }
+            for (int i = 0; i < order.length; i++) {
+                Request request = order[i];
+                if (starts[i] < 0) {
+                    unplaced.put(request, rejections[i] != null ? rejections[i]
+                            : "No free time of " + request.minutes + " minutes left from " + request.earliest + " to " + request.latest + ".");
+                } else {
+                    LocalDate date = first.plusDays(starts[i] / MinuteBitmap.MINUTES);
+                    LocalTime start = LocalTime.ofSecondOfDay(starts[i] % MinuteBitmap.MINUTES * 60L);
+                    events.add(new WeeklySchedulerApp.Event(request.name, request.location, date.atTime(start),
+                            date.atTime(start).plusMinutes(request.minutes), request.color));
+                }
+            }
+            events.sort(Comparator.comparing(event -> event.startTime));
+            return new Plan(events, unplaced, !timedOut);
+        }
+
+        // Each meeting in turn at its best start still free
+        private void greedy() {
+            MinuteBitmap[] days = snapshot.clone();
+            int[] starts = new int[order.length];
+            int score = 0;
+            for (int i = 0; i < order.length; i++) {
+                Candidate best = rejections[i] == null ? bestStart(order[i], days) : null;
+                starts[i] = best == null ? -1 : best.day * MinuteBitmap.MINUTES + best.minute;
+                if (best != null) {
+                    days[best.day] = place(days[best.day], order[i], best.minute);
+                    score += best.value;
+                }
+            }
+            offer(score, starts);
+        }
+
+        // The highest scoring free start of the meeting, the earliest of equals, or null
+        private Candidate bestStart(Request request, MinuteBitmap[] days) {
+            Candidate best = null;
+            for (int day = dayIndex(request.earliest); day <= dayIndex(request.latest); day++) {
+                long[] free = days[day].freeRunStarts(request.minutes, alignMask);
+                for (int minute = MinuteBitmap.nextSetBit(free, 0); minute >= 0 && minute < MinuteBitmap.MINUTES;
+                     minute = MinuteBitmap.nextSetBit(free, minute + 1)) {
+                    int value = value(request, day, minute);
+                    if (best == null || value > best.value) {
+                        best = new Candidate(day, minute, value);
+                    }
+                }
+            }
+            return best;
+        }
+
+        // Starts worth trying for the meeting as the days are now: both ends of each free stretch
+        // it fits in (packing meetings against what is booked) and the free starts that line up
+        // with any meeting's preferred hours (leaving those hours to it), best score first
+        private List<Candidate> candidates(int position, MinuteBitmap[] days) {
+            Request request = order[position];
+            List<Candidate> found = new ArrayList<>();
+            if (rejections[position] != null) {
+                return found;
+            }
+            for (int day = dayIndex(request.earliest); day <= dayIndex(request.latest); day++) {
+                long[] free = days[day].freeRunStarts(request.minutes, alignMask);
+                int minute = MinuteBitmap.nextSetBit(free, 0);
+                while (minute >= 0 && minute < MinuteBitmap.MINUTES) {
+                    int last = minute;
+                    int next;
+                    while ((next = MinuteBitmap.nextSetBit(free, last + 1)) == last + ALIGN_MINUTES) {
+                        last = next;
+                    }
+                    found.add(new Candidate(day, minute, value(request, day, minute)));
+                    if (last != minute) {
+                        found.add(new Candidate(day, last, value(request, day, last)));
+                    }
+                    minute = next;
+                }
+                for (int boundary : boundaries) {
+                    for (int start : new int[] {boundary, boundary - request.minutes}) {
+                        if (start >= 0 && start < MinuteBitmap.MINUTES && (free[start >>> 6] & 1L << start) != 0) {
+                            found.add(new Candidate(day, start, value(request, day, start)));
+                        }
+                    }
+                }
+            }
+            found.sort(Comparator.comparingInt((Candidate candidate) -> -candidate.value)
+                    .thenComparingInt(candidate -> candidate.day).thenComparingInt(candidate -> candidate.minute));
+            List<Candidate> distinct = new ArrayList<>();
+            for (Candidate candidate : found) {
+                Candidate previous = distinct.isEmpty() ? null : distinct.get(distinct.size() - 1);
+                if (previous == null || previous.day != candidate.day || previous.minute != candidate.minute) {
+                    distinct.add(candidate);
+                    if (distinct.size() == CANDIDATES) {
+                        break;
+                    }
+                }
+            }
+            return distinct;
+        }
+
+        private int value(Request request, int day, int minute) {
+            int late = (int) Math.min((long) LATE_PENALTY * (day - dayIndex(request.earliest)), MAX_LATE_PENALTY);
+            return request.priority * PRIORITY_WEIGHT + (isPreferred(request, minute) ? PREFERRED_BONUS : 0) - late;
+        }
+
+        private boolean isPreferred(Request request, int minute) {
+            return request.preferredFrom != null && minute >= request.preferredFrom.toSecondOfDay() / 60
+                    && minute + request.minutes <= request.preferredTo.toSecondOfDay() / 60;
+        }
+
+        // The day with the meeting booked; a new bitmap, as others may share the old one
+        private MinuteBitmap place(MinuteBitmap day, Request request, int minute) {
+            MinuteBitmap placed = day.copy();
+            placed.set(Math.max(minute - buffer, 0), Math.min(minute + request.minutes + buffer, MinuteBitmap.MINUTES));
+            return placed;
+        }
+
+        private int dayIndex(LocalDate date) {
+            return (int) (date.toEpochDay() - first.toEpochDay());
+        }
+
+        private synchronized void offer(int score, int[] starts) {
+            if (score > bestScore) {
+                bestScore = score;
+                bestStarts = starts.clone();
+            }
+        }
+
+        private boolean outOfTime() {
+            if (!timedOut && System.nanoTime() - deadline > 0) {
+                timedOut = true;
+            }
+            return timedOut;
+        }
+
+        // The subtree from one position on: each candidate start of that meeting, then leaving
+        // the meeting out
+        private final class Branch extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            private final int index;
+            private final int score;
+            private final MinuteBitmap[] days;
+            private final int[] starts;
+
+            Branch(int index, int score, MinuteBitmap[] days, int[] starts) {
+                this.index = index;
+                this.score = score;
+                this.days = days;
+                this.starts = starts;
+            }
+
+            @Override
+            protected void compute() {
+                if (index >= FORK_DEPTH || index == order.length) {
+                    search(index, score);
+                    return;
+                }
+                if (score + bound[index] <= bestScore || outOfTime()) {
+                    return;
+                }
+                Request request = order[index];
+                List<Branch> branches = new ArrayList<>();
+                for (Candidate candidate : candidates(index, days)) {
+                    MinuteBitmap[] next = days.clone();
+                    next[candidate.day] = place(days[candidate.day], request, candidate.minute);
+                    int[] nextStarts = starts.clone();
+                    nextStarts[index] = candidate.day * MinuteBitmap.MINUTES + candidate.minute;
+                    branches.add(new Branch(index + 1, score + candidate.value, next, nextStarts));
+                }
+                int[] skipped = starts.clone();
+                skipped[index] = -1;
+                branches.add(new Branch(index + 1, score, days.clone(), skipped));
+                invokeAll(branches);
+            }
+
+            // Depth-first below the forked levels, on this task's own arrays
+            private void search(int position, int total) {
+                if (total + bound[position] <= bestScore || outOfTime()) {
+                    return;
+                }
+                if (position == order.length) {
+                    offer(total, starts);
+                    return;
+                }
+                Request request = order[position];
+                for (Candidate candidate : candidates(position, days)) {
+                    MinuteBitmap before = days[candidate.day];
+                    days[candidate.day] = place(before, request, candidate.minute);
+                    starts[position] = candidate.day * MinuteBitmap.MINUTES + candidate.minute;
+                    search(position + 1, total + candidate.value);
+                    days[candidate.day] = before;
+                }
+                starts[position] = -1;
+                search(position + 1, total);
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Counters and latency histograms of the scheduler's operations, cheap enough to stay on all
+// the time. Every operation has a Timer holding its count, failures (rejected bookings and
+// errors), total and longest time and a histogram of power-of-two buckets starting at 1 us.
+// Recording is lock-free. Timers of whole operations also emit a FlightRecorderEvents.Operation
+// when a JFR recording is running; the overlap check, which runs for every booking, does not.
+public final class Metrics {
+    private static final int BUCKETS = 28; // Below 1 us, then up to 2^k us for k = 1..26, then the rest
+    private static final List<Timer> TIMERS = new CopyOnWriteArrayList<>();
+    private static final List<Counter> COUNTERS = new CopyOnWriteArrayList<>();
+
+    // Engine operations, from any client
+    public static final Timer CREATE = timer("Create event", true);
+    public static final Timer CREATE_ALL = timer("Create events (batch)", true);
+    public static final Timer EDIT = timer("Edit event", true);
+    public static final Timer MOVE = timer("Move event", true);
+    public static final Timer UPDATE = timer("Move and edit event", true);
+    public static final Timer DELETE = timer("Delete event", true);
+    public static final Timer CREATE_SERIES = timer("Create series", true);
+    public static final Timer UNDO = timer("Undo or redo", true);
+    public static final Timer OVERLAP_CHECK = timer("Overlap check", false);
+    public static final Timer LOAD_WEEKS = timer("Load weeks from disk", true);
+    public static final Timer FREE_SLOTS = timer("Free slot search", true);
+    public static final Timer COMMON_FREE_SLOTS = timer("Common free time search", true);
+    public static final Timer PACK_MEETINGS = timer("Plan meetings", true);
+    public static final Timer CHECKPOINT = timer("Checkpoint", true);
+    public static final Timer RELOAD = timer("Reload", true);
+    public static final Timer SEARCH = timer("Search", false);
+    public static final Timer SEARCH_INDEX_BUILD = timer("Build search index", true);
+    public static final Timer API_REQUEST = timer("API request", true);
+
+    // Window operations, from the user's action until the outcome is shown
+    public static final Timer UI_CREATE = timer("Window: create event", true);
+    public static final Timer UI_EDIT = timer("Window: edit event", true);
+    public static final Timer UI_DELETE = timer("Window: delete event", true);
+    public static final Timer UI_UNDO = timer("Window: undo or redo", true);
+    public static final Timer UI_SAVE = timer("Window: save schedule", true);
+    public static final Timer UI_LOAD = timer("Window: load schedule", true);
+    public static final Timer UI_SHOW_WEEK = timer("Window: show week", true);
+    public static final Timer UI_STARTUP = timer("Window: launch to first frame", true);
+    public static final Timer UI_BUILD_WEEK = timer("Window: build week model", false);
+
+    // Background saving; the lag runs from the first unsaved change until it is in the snapshot
+    public static final Timer AUTOSAVE_LAG = timer("Autosave lag", false);
+    public static final Counter AUTOSAVE_WEEKS = counter("Autosave: weeks saved");
+    public static final Counter SNAPSHOT_BYTES = counter("Snapshot bytes written");
+    public static final Counter SNAPSHOT_BYTES_ENCODED = counter("Snapshot bytes re-encoded");
+
+    private static ScheduledExecutorService dumper;
+
+    private Metrics() {
+    }
+
+    private static Timer timer(String name, boolean traced) {
+        Timer timer = new Timer(name, traced);
+        TIMERS.add(timer);
+        return timer;
+    }
+
+    private static Counter counter(String name) {
+        Counter counter = new Counter(name);
+        COUNTERS.add(counter);
+        return counter;
+    }
+
+    public static final class Timer {
+        final String name;
+        private final boolean traced;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private Timer(String name, boolean traced) {
+            this.name = name;
+            this.traced = traced;
+        }
+
+        // Starts timing one operation; close the sample when it ends
+        public Sample start() {
+            return new Sample(this);
+        }
+
+        public void record(long nanos, boolean succeeded) {
+            count.increment();
+            if (!succeeded) {
+                failures.increment();
+            }
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            long micros = nanos / 1000;
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        // Upper bound of the bucket holding the given fraction of the recorded times, at most the
+        // longest time
+        public double percentileMillis(double fraction) {
+            long total = 0;
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS - 1; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min((1L << i) / 1000.0, maxNanos.get() / 1e6);
+                }
+            }
+            return maxNanos.get() / 1e6;
+        }
+
+        void reset() {
+            count.reset();
+            failures.reset();
+            totalNanos.reset();
+            maxNanos.set(0);
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+        }
+    }
+
+    // A running total, e.g. of bytes written
+    public static final class Counter {
+        final String name;
+        private final LongAdder total = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void add(long amount) {
+            total.add(amount);
+        }
+
+        public long get() {
+            return total.sum();
+        }
+    }
+
+    // One timed operation. Counted as failed unless succeeded() is called before close().
+    public static final class Sample implements AutoCloseable {
+        private final Timer timer;
+        private final long start = System.nanoTime();
+        private final FlightRecorderEvents.Operation event;
+        private boolean succeeded;
+        private boolean closed;
+
+        private Sample(Timer timer) {
+            this.timer = timer;
+            this.event = timer.traced ? new FlightRecorderEvents.Operation() : null;
+            if (event != null) {
+                event.begin();
+            }
+        }
+
+        public void succeeded() {
+            succeeded = true;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            timer.record(System.nanoTime() - start, succeeded);
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.operation = timer.name;
+                    event.succeeded = succeeded;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    public static void reset() {
+        for (Timer timer : TIMERS) {
+            timer.reset();
+        }
+        for (Counter counter : COUNTERS) {
+            counter.total.reset();
+        }
+    }
+
+    // Table of all timers that recorded anything, times in milliseconds, then the counters
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-28s %9s %7s %10s %10s %10s %10s%n", "Operation", "Count", "Failed", "Mean ms", "p50 ms", "p99 ms", "Max ms"));
+        for (Timer timer : TIMERS) {
+            long count = timer.getCount();
+            if (count == 0) {
+                continue;
+            }
+            report.append(String.format("%-28s %9d %7d %10.3f %10.3f %10.3f %10.3f%n", timer.name, count, timer.getFailures(),
+                    timer.totalNanos.sum() / 1e6 / count, timer.percentileMillis(0.5), timer.percentileMillis(0.99), timer.maxNanos.get() / 1e6));
+        }
+        for (Counter counter : COUNTERS) {
+            long total = counter.get();
+            if (total != 0) {
+                report.append(String.format("%-28s %9d%n", counter.name, total));
+            }
+        }
+        return report.toString();
+    }
+
+    // Appends report() and the extra text to the file every period, skipping periods in which
+    // nothing was recorded. Runs on a daemon thread; a failed write is reported once per period.
+    public static synchronized void startLogDump(Path file, long period, TimeUnit unit, Supplier<String> extra) {
+        if (dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long[] lastTotal = {-1};
+        dumper.scheduleAtFixedRate(() -> {
+            long total = 0;
+            for (Timer timer : TIMERS) {
+                total += timer.getCount();
+            }
+            for (Counter counter : COUNTERS) {
+                total += counter.get();
+            }
+            if (total == lastTotal[0]) {
+                return;
+            }
+            lastTotal[0] = total;
+            try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                out.write("=== " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + " ===" + System.lineSeparator());
+                out.write(report());
+                out.write(System.lineSeparator());
+                out.write(extra.get());
+                out.write(System.lineSeparator());
+            } catch (IOException e) {
+                System.err.println("Could not write metrics to " + file + ": " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+}
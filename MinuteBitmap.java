@@ -0,0 +1,158 @@
+import java.util.Arrays;
+
+// One bit per minute of a day (bit 0 = 00:00), set where the minute is unavailable. The bits
+// past the last minute of the day are always set. Searches for free runs work on whole 64-bit
+// words: starts of runs of at least n free minutes are found by and-ing the free bits with
+// copies of themselves shifted by doubling distances, about log2(n) passes over 23 words.
+public class MinuteBitmap {
+    static final int MINUTES = 24 * 60;
+    private static final int WORDS = (MINUTES + 63) / 64;
+
+    private final long[] words;
+
+    private MinuteBitmap(long[] words) {
+        this.words = words;
+    }
+
+    // Every minute outside [openFrom, openTo) is unavailable
+    public static MinuteBitmap closedOutside(int openFrom, int openTo) {
+        MinuteBitmap bitmap = new MinuteBitmap(new long[WORDS]);
+        bitmap.set(0, openFrom);
+        bitmap.set(openTo, WORDS * 64);
+        return bitmap;
+    }
+
+    public MinuteBitmap copy() {
+        return new MinuteBitmap(words.clone());
+    }
+
+    // Marks [from, to) unavailable
+    public void set(int from, int to) {
+        for (int word = from >>> 6; from < to; word++) {
+            int end = Math.min(to, (word + 1) << 6);
+            words[word] |= mask(from, end);
+            from = end;
+        }
+    }
+
+    // Marks [from, to) available
+    public void clear(int from, int to) {
+        for (int word = from >>> 6; from < to; word++) {
+            int end = Math.min(to, (word + 1) << 6);
+            words[word] &= ~mask(from, end);
+            from = end;
+        }
+    }
+
+    public boolean isSet(int minute) {
+        return (words[minute >>> 6] & 1L << minute) != 0;
+    }
+
+    // Whether every minute of [from, to) is available
+    public boolean isClear(int from, int to) {
+        for (int word = from >>> 6; from < to; word++) {
+            int end = Math.min(to, (word + 1) << 6);
+            if ((words[word] & mask(from, end)) != 0) {
+                return false;
+            }
+            from = end;
+        }
+        return true;
+    }
+
+    // Marks every minute unavailable in the other bitmap unavailable here too, e.g. to find
+    // the time free in several calendars
+    public void or(MinuteBitmap other) {
+        for (int i = 0; i < WORDS; i++) {
+            words[i] |= other.words[i];
+        }
+    }
+
+    // Copies [from, to) from another bitmap, e.g. to reset a range to the opening hours
+    public void copyRange(MinuteBitmap source, int from, int to) {
+        for (int word = from >>> 6; from < to; word++) {
+            int end = Math.min(to, (word + 1) << 6);
+            long mask = mask(from, end);
+            words[word] = words[word] & ~mask | source.words[word] & mask;
+            from = end;
+        }
+    }
+
+    // Bits set at every minute m where [m, m + length) is free and m is a multiple of align
+    public long[] freeRunStarts(int length, long[] alignMask) {
+        long[] starts = new long[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            starts[i] = ~words[i] & alignMask[i];
+        }
+        if (length <= 0) {
+            return starts;
+        }
+        long[] run = new long[WORDS]; // Bit m set where [m, m + covered) is free
+        for (int i = 0; i < WORDS; i++) {
+            run[i] = ~words[i];
+        }
+        int covered = 1;
+        while (covered < length) {
+            int shift = Math.min(covered, length - covered);
+            andShifted(run, shift);
+            covered += shift;
+        }
+        for (int i = 0; i < WORDS; i++) {
+            starts[i] &= run[i];
+        }
+        return starts;
+    }
+
+    // Bits set at every multiple of align (in minutes)
+    public static long[] alignMask(int align) {
+        long[] mask = new long[WORDS];
+        for (int minute = 0; minute < MINUTES; minute += Math.max(align, 1)) {
+            mask[minute >>> 6] |= 1L << minute;
+        }
+        return mask;
+    }
+
+    // First set bit at or after from, or -1
+    public static int nextSetBit(long[] bits, int from) {
+        int word = from >>> 6;
+        if (word >= bits.length) {
+            return -1;
+        }
+        long current = bits[word] & -1L << from;
+        while (current == 0) {
+            if (++word == bits.length) {
+                return -1;
+            }
+            current = bits[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(current);
+    }
+
+    // run[m] &= run[m + shift] for every bit m; bits shifted in from past the end count as busy
+    private static void andShifted(long[] run, int shift) {
+        int wordShift = shift >>> 6;
+        int bitShift = shift & 63;
+        for (int i = 0; i < run.length; i++) {
+            int source = i + wordShift;
+            long low = source < run.length ? run[source] : 0;
+            long high = source + 1 < run.length ? run[source + 1] : 0;
+            long shifted = bitShift == 0 ? low : low >>> bitShift | high << (64 - bitShift);
+            run[i] &= shifted;
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof MinuteBitmap && Arrays.equals(words, ((MinuteBitmap) other).words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    private static long mask(int from, int to) {
+        long upper = (to & 63) == 0 ? -1L : (1L << to) - 1;
+        return upper & -1L << from;
+    }
+}
@@ -0,0 +1,164 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Events packed into parallel primitive arrays, for holding a schedule's whole history (the
+// search index) rather than the few weeks on screen. A slot takes 17 bytes: start and end as
+// minutes since 1970 (as in schedule.dat), name and location as ids of interned strings and
+// the color as a byte. An Event object with its two LocalDateTimes takes over 200 bytes and
+// three pointers to follow. Deleted slots are reused by later adds.
+//
+// Strings are interned for the life of the table, as names and locations repeat. Colors are
+// numbered in a table of at most 255 names starting with WeeklySchedulerApp.COLORS; any
+// further color reads back as null, which paints like any unknown color. Not thread-safe.
+public class PackedEvents {
+    private static final int NO_STRING = -1;
+    private static final byte NO_COLOR = 0;
+    private static final int MAX_COLORS = 255;
+
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int[] names = new int[16];
+    private int[] locations = new int[16];
+    private byte[] colors = new byte[16];
+    private int slots; // Slots ever used; the free ones are listed in freeSlots
+    private int[] freeSlots = new int[0];
+    private int freeCount;
+
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Byte> colorIds = new HashMap<>();
+    private final List<String> colorNames = new ArrayList<>();
+
+    public PackedEvents() {
+        colorNames.add(null); // NO_COLOR
+        for (String color : WeeklySchedulerApp.COLORS) {
+            colorId(color);
+        }
+    }
+
+    // Stores the event and returns its slot
+    public int add(WeeklySchedulerApp.Event event) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slots == starts.length) {
+                int capacity = slots + (slots >> 1);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                names = Arrays.copyOf(names, capacity);
+                locations = Arrays.copyOf(locations, capacity);
+                colors = Arrays.copyOf(colors, capacity);
+            }
+            slot = slots++;
+        }
+        starts[slot] = ScheduleFile.toMinute(event.startTime);
+        ends[slot] = ScheduleFile.toMinute(event.endTime);
+        names[slot] = stringId(event.name);
+        locations[slot] = stringId(event.location);
+        colors[slot] = colorId(event.color);
+        return slot;
+    }
+
+    // Frees the slot for reuse; it must not be read afterwards
+    public void remove(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(16, freeCount * 2));
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    // Events stored
+    public int size() {
+        return slots - freeCount;
+    }
+
+    public int start(int slot) {
+        return starts[slot];
+    }
+
+    public int end(int slot) {
+        return ends[slot];
+    }
+
+    // Id of the slot's name in the string table, or -1 for null
+    public int nameId(int slot) {
+        return names[slot];
+    }
+
+    public int locationId(int slot) {
+        return locations[slot];
+    }
+
+    // Id of the string if it has been interned, -1 for null or a string never stored
+    public int findString(String value) {
+        Integer id = value == null ? null : stringIds.get(value);
+        return id == null ? NO_STRING : id;
+    }
+
+    public String string(int id) {
+        return id == NO_STRING ? null : strings.get(id);
+    }
+
+    // Strings interned so far; ids run from 0 to this
+    public int stringCount() {
+        return strings.size();
+    }
+
+    // Whether the slot holds exactly this event
+    public boolean matches(int slot, WeeklySchedulerApp.Event event) {
+        return starts[slot] == ScheduleFile.toMinute(event.startTime) && ends[slot] == ScheduleFile.toMinute(event.endTime)
+                && isString(names[slot], event.name) && isString(locations[slot], event.location);
+    }
+
+    private boolean isString(int id, String value) {
+        return id == NO_STRING ? value == null : strings.get(id).equals(value);
+    }
+
+    // A new Event with the slot's contents; only made for the few events that are shown
+    public WeeklySchedulerApp.Event toEvent(int slot) {
+        return new WeeklySchedulerApp.Event(string(names[slot]), string(locations[slot]), ScheduleFile.fromMinute(starts[slot]),
+                ScheduleFile.fromMinute(ends[slot]), colorNames.get(colors[slot] & 0xFF));
+    }
+
+    // Approximate heap taken by the arrays and the string table, in bytes
+    public long footprint() {
+        long bytes = (long) starts.length * 17 + freeSlots.length * 4L;
+        for (String string : strings) {
+            bytes += 64 + 2L * string.length(); // String, its array and the map entry
+        }
+        return bytes;
+    }
+
+    private int stringId(String value) {
+        if (value == null) {
+            return NO_STRING;
+        }
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            stringIds.put(value, id);
+            strings.add(value);
+        }
+        return id;
+    }
+
+    private byte colorId(String color) {
+        if (color == null) {
+            return NO_COLOR;
+        }
+        Byte id = colorIds.get(color);
+        if (id == null) {
+            if (colorNames.size() > MAX_COLORS) {
+                return NO_COLOR;
+            }
+            id = (byte) colorNames.size();
+            colorIds.put(color, id);
+            colorNames.add(color);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,264 @@
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+// A repeating event stored as one definition: daily, weekly on given weekdays or monthly on the
+// start date's day of the month, every interval days/weeks/months, from start until an optional
+// end date (inclusive), minus single skipped dates. Daily and monthly dates that fall on a
+// weekday not in weekdays are skipped too, e.g. a monthly meeting on the 13th that is a
+// Sunday. Occurrences are computed on demand for the dates asked about and never stored.
+// Instances are immutable; the with* methods return copies.
+public final class Recurrence {
+    public enum Frequency { DAILY, WEEKLY, MONTHLY }
+
+    // 400 Gregorian years: dates, weekdays and month lengths all repeat after this many days
+    private static final long GREGORIAN_CYCLE_DAYS = 146097;
+    private static final long GREGORIAN_CYCLE_MONTHS = 4800;
+
+    final long id; // 0 until the engine stores it
+    final String name;
+    final String location;
+    final String color;
+    final Frequency frequency;
+    final int interval;
+    final Set<DayOfWeek> weekdays; // Days it repeats on (weekly) or may fall on (daily, monthly)
+    final LocalDate start;
+    final LocalDate until; // Null if it never ends
+    final LocalTime startTime;
+    final LocalTime endTime;
+    final NavigableSet<LocalDate> exceptions;
+
+    // One expanded occurrence, handed out for display only
+    public static final class Occurrence extends WeeklySchedulerApp.Event {
+        private static final long serialVersionUID = 1L;
+
+        final transient Recurrence series;
+
+        Occurrence(Recurrence series, LocalDate date) {
+            super(series.name, series.location, date.atTime(series.startTime), date.atTime(series.endTime), series.color);
+            this.series = series;
+        }
+    }
+
+    public Recurrence(String name, String location, String color, Frequency frequency, int interval, Set<DayOfWeek> weekdays,
+                      LocalDate start, LocalDate until, LocalTime startTime, LocalTime endTime) {
+        this(0, name, location, color, frequency, interval, weekdays, start, until, startTime, endTime, Collections.emptyNavigableSet());
+    }
+
+    Recurrence(long id, String name, String location, String color, Frequency frequency, int interval, Set<DayOfWeek> weekdays,
+               LocalDate start, LocalDate until, LocalTime startTime, LocalTime endTime, NavigableSet<LocalDate> exceptions) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Interval must be at least 1");
+        }
+        this.id = id;
+        this.name = name;
+        this.location = location;
+        this.color = color;
+        this.frequency = frequency;
+        this.interval = interval;
+        EnumSet<DayOfWeek> days;
+        if (weekdays != null && !weekdays.isEmpty()) {
+            days = EnumSet.copyOf(weekdays);
+        } else {
+            days = frequency == Frequency.WEEKLY ? EnumSet.of(start.getDayOfWeek()) : EnumSet.allOf(DayOfWeek.class);
+        }
+        this.weekdays = Collections.unmodifiableSet(days);
+        this.start = start;
+        this.until = until;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.exceptions = Collections.unmodifiableNavigableSet(new TreeSet<>(exceptions));
+    }
+
+    Recurrence withId(long id) {
+        return new Recurrence(id, name, location, color, frequency, interval, weekdays, start, until, startTime, endTime, exceptions);
+    }
+
+    public Recurrence withDetails(String name, String location, String color) {
+        return new Recurrence(id, name, location, color, frequency, interval, weekdays, start, until, startTime, endTime, exceptions);
+    }
+
+    public Recurrence withException(LocalDate date) {
+        NavigableSet<LocalDate> skipped = new TreeSet<>(exceptions);
+        skipped.add(date);
+        return new Recurrence(id, name, location, color, frequency, interval, weekdays, start, until, startTime, endTime, skipped);
+    }
+
+    public boolean occursOn(LocalDate date) {
+        return matches(date) && !exceptions.contains(date);
+    }
+
+    // First occurrence on or after the date, or null if the series has ended by then
+    public LocalDate nextOccurrence(LocalDate from) {
+        LocalDate date = nextMatch(from);
+        while (date != null && exceptions.contains(date)) {
+            date = nextMatch(date.plusDays(1));
+        }
+        return date;
+    }
+
+    // Occurrences from from (inclusive) to to (exclusive)
+    public List<Occurrence> occurrences(LocalDate from, LocalDate to) {
+        List<Occurrence> result = new ArrayList<>();
+        for (LocalDate date = nextOccurrence(from); date != null && date.isBefore(to); date = nextOccurrence(date.plusDays(1))) {
+            result.add(new Occurrence(this, date));
+        }
+        return result;
+    }
+
+    public boolean timesOverlap(LocalTime otherStart, LocalTime otherEnd) {
+        return startTime.isBefore(otherEnd) && endTime.isAfter(otherStart);
+    }
+
+    // First date both series occur on, or null if there is none. Only the sparser series is
+    // stepped through, and never further than one common period of both patterns per skipped
+    // date: past that, the common dates repeat.
+    public LocalDate firstCommonDate(Recurrence other) {
+        Recurrence stepped = density() <= other.density() ? this : other;
+        Recurrence checked = stepped == this ? other : this;
+        LocalDate from = start.isAfter(other.start) ? start : other.start;
+        LocalDate last = until == null ? other.until : other.until == null || until.isBefore(other.until) ? until : other.until;
+        long period = lcm(periodDays(), other.periodDays());
+        long horizon = period * (1 + exceptions.size() + other.exceptions.size());
+        LocalDate cap = from.plusDays(Math.min(horizon, 100 * GREGORIAN_CYCLE_DAYS));
+        if (last == null || last.isAfter(cap)) {
+            last = cap;
+        }
+        for (LocalDate date = stepped.nextOccurrence(from); date != null && !date.isAfter(last); date = stepped.nextOccurrence(date.plusDays(1))) {
+            if (checked.occursOn(date)) {
+                return date;
+            }
+        }
+        return null;
+    }
+
+    // Weekdays the series can fall on (skipped dates aside), for checking the opening hours
+    public Set<DayOfWeek> possibleWeekdays() {
+        if (frequency == Frequency.WEEKLY) {
+            return weekdays;
+        }
+        EnumSet<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+        LocalDate last = start.plusDays(lcm(periodDays(), 7));
+        for (LocalDate date = nextMatch(start); date != null && !date.isAfter(last) && days.size() < 7; date = nextMatch(date.plusDays(1))) {
+            days.add(date.getDayOfWeek());
+        }
+        return days;
+    }
+
+    private boolean matches(LocalDate date) {
+        if (date.isBefore(start) || (until != null && date.isAfter(until))) {
+            return false;
+        }
+        if (!weekdays.contains(date.getDayOfWeek())) {
+            return false;
+        }
+        switch (frequency) {
+            case DAILY:
+                return ChronoUnit.DAYS.between(start, date) % interval == 0;
+            case WEEKLY:
+                return ChronoUnit.WEEKS.between(start.with(DayOfWeek.MONDAY), date.with(DayOfWeek.MONDAY)) % interval == 0;
+            default:
+                return date.getDayOfMonth() == start.getDayOfMonth() && monthsBetween(start, date) % interval == 0;
+        }
+    }
+
+    // Like nextOccurrence without the skipped dates. A date the pattern gives on a weekday it may
+    // not fall on is passed over; past one period nothing new can come, so the search stops there.
+    private LocalDate nextMatch(LocalDate from) {
+        if (from.isBefore(start)) {
+            from = start;
+        }
+        LocalDate last = from.plusDays(Math.min(periodDays(), GREGORIAN_CYCLE_DAYS));
+        LocalDate date = nextPatternDate(from);
+        while (date != null && !weekdays.contains(date.getDayOfWeek())) {
+            date = date.isAfter(last) ? null : nextPatternDate(date.plusDays(1));
+        }
+        return date;
+    }
+
+    // Next date of the daily or monthly pattern on any weekday, or the next weekly match
+    private LocalDate nextPatternDate(LocalDate from) {
+        LocalDate date;
+        switch (frequency) {
+            case DAILY: {
+                long steps = (ChronoUnit.DAYS.between(start, from) + interval - 1) / interval;
+                date = start.plusDays(steps * interval);
+                break;
+            }
+            case WEEKLY: {
+                date = from;
+                while (!matches(date)) {
+                    date = date.plusDays(1);
+                    if (until != null && date.isAfter(until)) {
+                        return null;
+                    }
+                }
+                break;
+            }
+            default: {
+                long months = (monthsBetween(start, from) + interval - 1) / interval * interval;
+                date = null;
+                // Skip months too short for the day, e.g. the 31st; one of 12 tries always fits
+                for (int tries = 0; tries < 12 && date == null; tries++, months += interval) {
+                    YearMonth month = YearMonth.from(start).plusMonths(months);
+                    if (start.getDayOfMonth() <= month.lengthOfMonth()) {
+                        LocalDate candidate = month.atDay(start.getDayOfMonth());
+                        date = candidate.isBefore(from) ? null : candidate;
+                    }
+                }
+                break;
+            }
+        }
+        return date == null || (until != null && date.isAfter(until)) ? null : date;
+    }
+
+    // Length after which the pattern repeats
+    private long periodDays() {
+        switch (frequency) {
+            case DAILY:
+                return lcm(interval, 7);
+            case WEEKLY:
+                return 7L * interval;
+            default:
+                return GREGORIAN_CYCLE_DAYS * (lcm(interval, GREGORIAN_CYCLE_MONTHS) / GREGORIAN_CYCLE_MONTHS);
+        }
+    }
+
+    // Occurrences per day on average, used to pick the series to step through
+    private double density() {
+        switch (frequency) {
+            case DAILY:
+                return weekdays.size() / (7.0 * interval);
+            case WEEKLY:
+                return weekdays.size() / (7.0 * interval);
+            default:
+                return 1.0 / (30.4 * interval);
+        }
+    }
+
+    private static long monthsBetween(LocalDate from, LocalDate to) {
+        return (to.getYear() - from.getYear()) * 12L + to.getMonthValue() - from.getMonthValue();
+    }
+
+    private static long lcm(long a, long b) {
+        long x = a;
+        long y = b;
+        while (y != 0) {
+            long t = x % y;
+            x = y;
+            y = t;
+        }
+        return a / x * b;
+    }
+
+    @Override
+    public String toString() {
+        String every = interval == 1 ? "" : " every " + interval;
+        String days = frequency == Frequency.WEEKLY ? " on " + weekdays : "";
+        return String.format("%s (%s%s%s from %s%s, %s-%s)", name, frequency.toString().toLowerCase(), every, days, start,
+                until == null ? "" : " until " + until, startTime, endTime);
+    }
+}
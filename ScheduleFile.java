@@ -0,0 +1,377 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Compact binary format for schedule.dat.
+//
+// Version 2 layout (big endian):
+//   header     magic "WSCH", u16 version, u16 reserved, i32 event count, i32 segment count,
+//              i32 CRC32 of the directory, i32 CRC32 of the preceding 20 header bytes
+//   directory  per ISO week, sorted: i32 epoch day of its Monday, i32 event count,
+//              i64 segment offset, i32 segment length, i32 CRC32 of the segment
+//   segments   i32 string count, per string an i32 byte length followed by UTF-8 bytes,
+//              then per event: i32 start minute, then varints for duration in minutes,
+//              name id, location id and color id (string id 0 means null, otherwise index + 1)
+//
+// Version 1 files are a single unsegmented payload (string table then events) checksummed in
+// the header. Start minutes are counted from 1970-01-01T00:00 (see EventIndex.minuteOf) and
+// string ids point into the segment's string table, so repeated strings are stored once.
+// Files written with Java serialization by older versions are detected and migrated once.
+// WeekStore reads single weeks out of version 2 files without decoding the rest.
+public class ScheduleFile {
+    static final int MAGIC = 0x57534348; // "WSCH"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 24;
+    static final int DIRECTORY_ENTRY_SIZE = 24;
+    private static final int NO_STRING = -1;
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+
+    // One encoded week plus what its directory entry needs. The bytes are either in memory
+    // or a range of an existing schedule file that is copied over without being decoded.
+    static final class Segment {
+        final LocalDate monday;
+        final int eventCount;
+        final int length;
+        final int crc;
+        final ByteBuffer bytes;
+        final FileChannel source;
+        final long sourceOffset;
+
+        Segment(LocalDate monday, int eventCount, ByteBuffer bytes) {
+            CRC32 checksum = new CRC32();
+            checksum.update(bytes.duplicate());
+            this.monday = monday;
+            this.eventCount = eventCount;
+            this.length = bytes.remaining();
+            this.crc = (int) checksum.getValue();
+            this.bytes = bytes;
+            this.source = null;
+            this.sourceOffset = 0;
+        }
+
+        Segment(LocalDate monday, int eventCount, FileChannel source, long sourceOffset, int length, int crc) {
+            this.monday = monday;
+            this.eventCount = eventCount;
+            this.length = length;
+            this.crc = crc;
+            this.bytes = null;
+            this.source = source;
+            this.sourceOffset = sourceOffset;
+        }
+    }
+
+    // Writes the events grouped into week segments; returns the file size
+    public static long write(Path file, List<WeeklySchedulerApp.Event> events) throws IOException {
+        SortedMap<LocalDate, List<WeeklySchedulerApp.Event>> weeks = new TreeMap<>();
+        for (WeeklySchedulerApp.Event event : events) {
+            weeks.computeIfAbsent(weekOf(event.startTime), w -> new ArrayList<>()).add(event);
+        }
+        List<Segment> segments = new ArrayList<>(weeks.size());
+        for (Map.Entry<LocalDate, List<WeeklySchedulerApp.Event>> week : weeks.entrySet()) {
+            segments.add(encodeSegment(week.getKey(), week.getValue()));
+        }
+        return writeSegments(file, segments);
+    }
+
+    // Writes already encoded segments (sorted by week) to a temp file next to the target and
+    // renames it over the target
+    static long writeSegments(Path file, List<Segment> segments) throws IOException {
+        ByteBuffer directory = ByteBuffer.allocate(segments.size() * DIRECTORY_ENTRY_SIZE);
+        long offset = HEADER_SIZE + directory.capacity();
+        int eventCount = 0;
+        for (Segment segment : segments) {
+            directory.putInt(Math.toIntExact(segment.monday.toEpochDay()))
+                    .putInt(segment.eventCount)
+                    .putLong(offset)
+                    .putInt(segment.length)
+                    .putInt(segment.crc);
+            offset += segment.length;
+            eventCount += segment.eventCount;
+        }
+        directory.flip();
+        CRC32 crc = new CRC32();
+        crc.update(directory.duplicate());
+
+        Path temp = tempFileFor(file);
+        long size;
+        long encoded = 0;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header(eventCount, segments.size(), (int) crc.getValue()));
+            writeFully(channel, directory);
+            for (Segment segment : segments) {
+                if (segment.bytes != null) {
+                    writeFully(channel, segment.bytes.duplicate());
+                    encoded += segment.length;
+                    continue;
+                }
+                long copied = 0;
+                while (copied < segment.length) {
+                    long n = segment.source.transferTo(segment.sourceOffset + copied, segment.length - copied, channel);
+                    if (n <= 0) {
+                        throw new IOException("Schedule file is truncated");
+                    }
+                    copied += n;
+                }
+            }
+            channel.force(false);
+            size = channel.size();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Metrics.SNAPSHOT_BYTES.add(size);
+        Metrics.SNAPSHOT_BYTES_ENCODED.add(encoded);
+        return size;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Reads every event in a schedule file, migrating it first if it was written with Java serialization
+    public static List<WeeklySchedulerApp.Event> read(Path file) throws IOException {
+        if (isLegacy(file)) {
+            return migrateLegacy(file);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Schedule file is truncated");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (version(buffer) == 1) {
+                return decodeVersion1(buffer);
+            }
+            int segmentCount = buffer.getInt(12);
+            List<WeeklySchedulerApp.Event> events = new ArrayList<>(buffer.getInt(8));
+            ByteBuffer directory = directory(buffer, segmentCount);
+            for (int i = 0; i < segmentCount; i++) {
+                int entry = i * DIRECTORY_ENTRY_SIZE;
+                int offset = Math.toIntExact(directory.getLong(entry + 8));
+                ByteBuffer segment = buffer.duplicate().position(offset).limit(offset + directory.getInt(entry + 16));
+                events.addAll(decodeSegment(segment, directory.getInt(entry + 20)));
+            }
+            return events;
+        }
+    }
+
+    // One-shot migration: keeps the old file as <name>.legacy and rewrites it in the binary format
+    public static List<WeeklySchedulerApp.Event> migrateLegacy(Path file) throws IOException {
+        List<WeeklySchedulerApp.Event> events = readLegacy(file);
+        Path backup = file.resolveSibling(file.getFileName() + ".legacy");
+        Files.copy(file, backup, StandardCopyOption.REPLACE_EXISTING);
+        write(file, events);
+        return events;
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<WeeklySchedulerApp.Event> readLegacy(Path file) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return new ArrayList<>((List<WeeklySchedulerApp.Event>) ois.readObject());
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Unreadable legacy schedule file: " + e.getMessage(), e);
+        }
+    }
+
+    static boolean isLegacy(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readUnsignedShort() == JAVA_SERIALIZATION_MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    // Validates magic and header checksum and returns the format version
+    static int version(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a schedule file");
+        }
+        int version = buffer.getShort(4) & 0xFFFF;
+        if (version != 1 && version != VERSION) {
+            throw new IOException("Unsupported schedule file version " + version);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(0).limit(20));
+        if ((int) crc.getValue() != buffer.getInt(20)) {
+            throw new IOException("Schedule file header is corrupt");
+        }
+        return version;
+    }
+
+    // Returns the checksum-verified directory of a version 2 file
+    static ByteBuffer directory(ByteBuffer buffer, int segmentCount) throws IOException {
+        int end = HEADER_SIZE + segmentCount * DIRECTORY_ENTRY_SIZE;
+        if (segmentCount < 0 || end > buffer.limit()) {
+            throw new IOException("Schedule file directory is truncated");
+        }
+        ByteBuffer directory = buffer.duplicate().position(HEADER_SIZE).limit(end).slice();
+        CRC32 crc = new CRC32();
+        crc.update(directory.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(16)) {
+            throw new IOException("Schedule file directory is corrupt");
+        }
+        return directory;
+    }
+
+    static Segment encodeSegment(LocalDate monday, List<WeeklySchedulerApp.Event> events) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int[] records = new int[events.size() * 5];
+        int r = 0;
+        for (WeeklySchedulerApp.Event event : events) {
+            records[r++] = toMinute(event.startTime);
+            records[r++] = Math.toIntExact(EventIndex.minuteOf(event.endTime) - EventIndex.minuteOf(event.startTime));
+            records[r++] = intern(event.name, ids, strings);
+            records[r++] = intern(event.location, ids, strings);
+            records[r++] = intern(event.color, ids, strings);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + events.size() * 12);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+        for (int i = 0; i < records.length; i += 5) {
+            out.writeInt(records[i]);
+            writeVarint(out, records[i + 1]);
+            writeVarint(out, records[i + 2] + 1);
+            writeVarint(out, records[i + 3] + 1);
+            writeVarint(out, records[i + 4] + 1);
+        }
+        return new Segment(monday, events.size(), ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    // Decodes one segment after checking it against the CRC32 from its directory entry
+    static List<WeeklySchedulerApp.Event> decodeSegment(ByteBuffer segment, int expectedCrc) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(segment.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Schedule file checksum mismatch");
+        }
+        try {
+            String[] strings = new String[segment.getInt()];
+            return decodeEvents(segment, readStrings(segment, strings), Integer.MAX_VALUE);
+        } catch (RuntimeException e) {
+            throw new IOException("Schedule file is malformed", e);
+        }
+    }
+
+    // Version 1: header fields at 8/12/16 are event count, string count and payload CRC32
+    static List<WeeklySchedulerApp.Event> decodeVersion1(ByteBuffer buffer) throws IOException {
+        int eventCount = buffer.getInt(8);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(HEADER_SIZE));
+        if ((int) crc.getValue() != buffer.getInt(16)) {
+            throw new IOException("Schedule file checksum mismatch");
+        }
+        try {
+            buffer.position(HEADER_SIZE);
+            String[] strings = readStrings(buffer, new String[buffer.getInt(12)]);
+            return decodeEvents(buffer, strings, eventCount);
+        } catch (RuntimeException e) {
+            throw new IOException("Schedule file is malformed", e);
+        }
+    }
+
+    private static String[] readStrings(ByteBuffer buffer, String[] strings) {
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    // Decodes events until the count is reached or the buffer is exhausted
+    private static List<WeeklySchedulerApp.Event> decodeEvents(ByteBuffer buffer, String[] strings, int eventCount) {
+        List<WeeklySchedulerApp.Event> events = new ArrayList<>(Math.min(eventCount, 1 << 16));
+        for (int i = 0; i < eventCount && buffer.hasRemaining(); i++) {
+            LocalDateTime start = fromMinute(buffer.getInt());
+            LocalDateTime end = start.plusMinutes(readVarint(buffer));
+            String name = lookup(strings, readVarint(buffer) - 1);
+            String location = lookup(strings, readVarint(buffer) - 1);
+            String color = lookup(strings, readVarint(buffer) - 1);
+            events.add(new WeeklySchedulerApp.Event(name, location, start, end, color));
+        }
+        return events;
+    }
+
+    static ByteBuffer header(int eventCount, int segmentCount, int directoryCrc) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0)
+                .putInt(eventCount).putInt(segmentCount).putInt(directoryCrc);
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, 20);
+        header.putInt((int) crc.getValue());
+        return header.flip();
+    }
+
+    // Monday of the ISO week the given time falls in
+    static LocalDate weekOf(LocalDateTime dateTime) {
+        return dateTime.toLocalDate().with(DayOfWeek.MONDAY);
+    }
+
+    static int toMinute(LocalDateTime dateTime) {
+        return Math.toIntExact(EventIndex.minuteOf(dateTime));
+    }
+
+    static LocalDateTime fromMinute(int minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60L, 0, ZoneOffset.UTC);
+    }
+
+    static Path tempFileFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    // Unsigned LEB128: 7 bits per byte, high bit set on every byte but the last
+    static void writeVarint(DataOutput out, int value) throws IOException {
+        if (value < 0) {
+            throw new IOException("Negative value cannot be stored: " + value);
+        }
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Varint too long");
+    }
+
+    private static int intern(String value, Map<String, Integer> ids, List<String> strings) {
+        if (value == null) {
+            return NO_STRING;
+        }
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = strings.size();
+            ids.put(value, id);
+            strings.add(value);
+        }
+        return id;
+    }
+
+    private static String lookup(String[] strings, int id) {
+        return id == NO_STRING ? null : strings[id];
+    }
+}
@@ -0,0 +1,279 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.function.BiConsumer;
+import java.util.function.IntPredicate;
+
+// Week grid painted as a single component instead of a matrix of buttons.
+// The component displays a WeekModel (the week's events bucketed per day and hour cell) and
+// draws each event as a block from its real start to its real end at minute resolution,
+// overlapping events side by side. Changes repaint only the area of the affected blocks, and
+// clicks are hit-tested here and reported with the hour cell that was clicked plus the event
+// under the pointer (if any). Time the booking rules keep closed is shaded per date, so
+// Sundays, holidays and short Saturdays show as such. An overlay can shade the open time in
+// which other calendars are busy. The rows run from the hour the earliest weekday opens to the
+// hour the latest one closes.
+public class ScheduleGrid extends JComponent {
+    private static final long serialVersionUID = 1L;
+    private static final int COLUMNS = 8; // Time column + 7 days, matching the day header above
+    private static final DateTimeFormatter BLOCK_TIME = DateTimeFormatter.ofPattern("h:mm");
+    private static final Color CLOSED = new Color(235, 235, 235);
+    private static final Color OVERLAY = new Color(150, 120, 200, 70);
+
+    private WeekModel model;
+    private BookingRules rules;
+    private int firstHour; // Hour of the top row
+    private int hours; // Rows shown
+    private LocalDate overlayMonday; // Week the overlay is for, or null for none
+    private MinuteBitmap[] overlay; // Busy minutes of the overlaid calendars, Monday first
+    private BiConsumer<LocalDateTime, WeeklySchedulerApp.Event> clickListener = (time, event) -> { };
+    private Runnable firstPaintListener; // Run once after the grid is first painted, then dropped
+
+    public ScheduleGrid(LocalDate monday) {
+        this.model = WeekModel.empty(monday);
+        setRules(BookingRules.defaults());
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        setPreferredSize(new Dimension(1300, 650));
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (SwingUtilities.isLeftMouseButton(e)) {
+                    LocalDateTime time = slotAt(e.getX(), e.getY());
+                    if (time != null) {
+                        clickListener.accept(time, eventAt(e.getX(), e.getY()));
+                    }
+                }
+            }
+        });
+        ToolTipManager.sharedInstance().registerComponent(this);
+    }
+
+    public void setClickListener(BiConsumer<LocalDateTime, WeeklySchedulerApp.Event> clickListener) {
+        this.clickListener = clickListener;
+    }
+
+    // E.g. to measure startup up to the first frame on screen
+    public void setFirstPaintListener(Runnable firstPaintListener) {
+        this.firstPaintListener = firstPaintListener;
+    }
+
+    // Also fits the rows to the opening hours; if the rules never open, the whole day is shown
+    public void setRules(BookingRules rules) {
+        this.rules = rules;
+        int open = rules.earliestOpenMinute();
+        int close = rules.latestCloseMinute();
+        firstHour = open < 0 ? 0 : open / 60;
+        hours = (open < 0 ? 24 : (close + 59) / 60) - firstHour;
+        repaint();
+    }
+
+    // Shades the busy minutes (one bitmap per day from the given Monday) while that week is
+    // shown; null busy removes the overlay
+    public void setOverlay(LocalDate monday, MinuteBitmap[] busy) {
+        this.overlayMonday = busy == null ? null : monday;
+        this.overlay = busy;
+        repaint();
+    }
+
+    public LocalDate getMonday() {
+        return model.monday;
+    }
+
+    public WeekModel getModel() {
+        return model;
+    }
+
+    // Switches to a prepared week; no per-event work happens here
+    public void setModel(WeekModel model) {
+        this.model = model;
+        repaint();
+    }
+
+    public void eventAdded(WeeklySchedulerApp.Event event) {
+        int day = model.add(event);
+        if (day >= 0) {
+            repaint(model.laneCount(event) == 1 ? blockBounds(event) : columnBounds(day));
+        }
+    }
+
+    public void eventRemoved(WeeklySchedulerApp.Event event) {
+        boolean alone = model.laneCount(event) == 1;
+        Rectangle block = blockBounds(event);
+        int day = model.remove(event);
+        if (day >= 0) {
+            repaint(alone ? block : columnBounds(day));
+        }
+    }
+
+    // Start of the hour cell under the point, or null outside the day columns
+    public LocalDateTime slotAt(int x, int y) {
+        int day = x / columnWidth() - 1;
+        int hour = firstHour + (int) (y / hourHeight());
+        if (day < 0 || day >= 7 || y < 0 || hour >= firstHour + hours) {
+            return null;
+        }
+        return LocalDateTime.of(model.monday.plusDays(day), LocalTime.of(hour, 0));
+    }
+
+    // Event whose block contains the point, or null; only the events of the hour cell are tested
+    public WeeklySchedulerApp.Event eventAt(int x, int y) {
+        int day = x / columnWidth() - 1;
+        int hour = firstHour + (int) (y / hourHeight());
+        if (day < 0 || day >= 7 || y < 0 || hour >= firstHour + hours) {
+            return null;
+        }
+        for (WeeklySchedulerApp.Event event : model.cell(day, hour)) {
+            if (blockBounds(event).contains(x, y)) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        WeeklySchedulerApp.Event event = eventAt(e.getX(), e.getY());
+        return event == null ? null : event.name + " (" + event.location + ")";
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            Rectangle clip = g2.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            g2.setColor(getBackground());
+            g2.fill(clip);
+            paintGrid(g2);
+            for (int day = 0; day < 7; day++) {
+                for (WeeklySchedulerApp.Event event : model.day(day)) {
+                    Rectangle block = blockBounds(event);
+                    if (block.intersects(clip)) {
+                        paintBlock(g2, event, block);
+                    }
+                }
+            }
+        } finally {
+            g2.dispose();
+        }
+        if (firstPaintListener != null) {
+            Runnable listener = firstPaintListener;
+            firstPaintListener = null;
+            listener.run();
+        }
+    }
+
+    private void paintGrid(Graphics2D g2) {
+        int columnWidth = columnWidth();
+        double hourHeight = hourHeight();
+        FontMetrics metrics = g2.getFontMetrics();
+        for (int day = 0; day < 7; day++) {
+            LocalDate date = model.monday.plusDays(day);
+            g2.setColor(CLOSED);
+            shadeRuns(g2, day, minute -> !rules.isOpen(date, minute));
+            if (overlay != null && model.monday.equals(overlayMonday)) {
+                MinuteBitmap busy = overlay[day];
+                g2.setColor(OVERLAY);
+                shadeRuns(g2, day, minute -> busy.isSet(minute) && rules.isOpen(date, minute));
+            }
+        }
+        g2.setColor(Color.LIGHT_GRAY);
+        for (int hour = 0; hour <= hours; hour++) {
+            int y = (int) Math.round(hour * hourHeight);
+            g2.drawLine(0, y, getWidth(), y);
+        }
+        for (int column = 1; column <= COLUMNS; column++) {
+            g2.drawLine(column * columnWidth, 0, column * columnWidth, getHeight());
+        }
+        g2.setColor(Color.BLACK);
+        for (int hour = 0; hour < hours; hour++) {
+            String label = timeLabel(firstHour + hour);
+            int y = (int) Math.round(hour * hourHeight + (hourHeight + metrics.getAscent() - metrics.getDescent()) / 2);
+            g2.drawString(label, (columnWidth - metrics.stringWidth(label)) / 2, y);
+        }
+    }
+
+    // Fills the day's column over every run of shown minutes for which shaded holds
+    private void shadeRuns(Graphics2D g2, int day, IntPredicate shaded) {
+        double pixelsPerMinute = hourHeight() / 60;
+        int columnWidth = columnWidth();
+        int minute = firstHour * 60;
+        while (minute < (firstHour + hours) * 60) {
+            int from = minute;
+            while (minute < (firstHour + hours) * 60 && shaded.test(minute)) {
+                minute++;
+            }
+            if (minute > from) {
+                int top = (int) Math.round((from - firstHour * 60) * pixelsPerMinute);
+                int bottom = (int) Math.round((minute - firstHour * 60) * pixelsPerMinute);
+                g2.fillRect((day + 1) * columnWidth, top, columnWidth, bottom - top);
+            }
+            minute++;
+        }
+    }
+
+    private void paintBlock(Graphics2D g2, WeeklySchedulerApp.Event event, Rectangle block) {
+        g2.setColor(WeeklySchedulerApp.getColor(event.color));
+        g2.fillRect(block.x, block.y, block.width, block.height);
+        g2.setColor(Color.DARK_GRAY);
+        g2.drawRect(block.x, block.y, block.width - 1, block.height - 1);
+
+        Graphics2D text = (Graphics2D) g2.create(block.x + 3, block.y, block.width - 6, block.height);
+        try {
+            FontMetrics metrics = text.getFontMetrics();
+            text.setColor(Color.BLACK);
+            int y = metrics.getAscent();
+            text.drawString(event.name == null ? "" : event.name, 0, y);
+            if (block.height >= 2 * metrics.getHeight()) {
+                text.drawString(event.startTime.format(BLOCK_TIME) + " - " + event.endTime.format(BLOCK_TIME), 0, y + metrics.getHeight());
+            }
+        } finally {
+            text.dispose();
+        }
+    }
+
+    // Pixel area of an event's block; at least a few pixels high so short events stay clickable
+    Rectangle blockBounds(WeeklySchedulerApp.Event event) {
+        int laneWidth = (columnWidth() - 3) / model.laneCount(event);
+        double pixelsPerMinute = hourHeight() / 60;
+        int x = (model.dayIndex(event) + 1) * columnWidth() + 2 + model.lane(event) * laneWidth;
+        int top = (int) Math.floor((minuteOfGrid(event.startTime)) * pixelsPerMinute);
+        int bottom = (int) Math.ceil((minuteOfGrid(event.endTime)) * pixelsPerMinute);
+        return new Rectangle(x, top, Math.max(laneWidth, 1), Math.max(bottom - top, 4));
+    }
+
+    private Rectangle columnBounds(int day) {
+        return new Rectangle((day + 1) * columnWidth(), 0, columnWidth(), getHeight());
+    }
+
+    private int minuteOfGrid(LocalDateTime time) {
+        return (time.getHour() - firstHour) * 60 + time.getMinute();
+    }
+
+    private int columnWidth() {
+        return Math.max(getWidth() / COLUMNS, 1);
+    }
+
+    private double hourHeight() {
+        return Math.max(getHeight(), 1) / (double) hours;
+    }
+
+    // Time in the first column with proper AM/PM designation
+    static String timeLabel(int hour) {
+        if (hour == 12) {
+            return "12.00 PM"; // Handle noon correctly
+        } else if (hour > 12) {
+            return (hour - 12) + ".00 PM"; // Convert to 12-hour format for PM
+        }
+        return hour + ".00 AM"; // For AM times
+    }
+}
@@ -0,0 +1,560 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+// Write-ahead journal for schedule changes.
+//
+// Every create, edit and delete is appended to <snapshot>.journal as a small framed record
+// (i32 payload length, i32 CRC32 of the payload, payload). A single writer thread drains
+// all records queued so far, appends them and then fsyncs once (group commit).
+// Weeks are loaded on demand: the week's segment is read from the snapshot (see WeekStore) and
+// the journal records touching that week are replayed over it. When the journal grows past
+// COMPACT_THRESHOLD it is rotated to <snapshot>.journal.old and a background compactor folds
+// it into a new snapshot, rewriting only the week segments it touches.
+//
+// Replay identifies events by their exact start and end minute and every record is a plain
+// assignment, so replaying a journal over a snapshot that already contains it is harmless.
+//
+// Only one journal may have a snapshot open at a time: open takes an exclusive lock on
+// <snapshot>.lock and holds it until close, so the window and the booking server (or two
+// windows) cannot append to and compact the same files at once.
+public class ScheduleJournal implements Closeable {
+    static final long COMPACT_THRESHOLD = 1 << 20;
+
+    private static final byte OP_CREATE = 1;
+    private static final byte OP_EDIT = 2;
+    private static final byte OP_DELETE = 3;
+
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private final Path oldJournalFile;
+    private final Path lockFile;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final ReentrantLock snapshotLock = new ReentrantLock(); // Held while the snapshot file is rewritten
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> daemon(r, "schedule-compactor"));
+    private Thread writer;
+    private boolean closed; // Guarded by queue; no request is queued after the one that closes
+    private FileChannel channel;
+    private FileChannel lockChannel; // Holds the lock on lockFile while open
+    private volatile IOException failure; // Set if a failed write could not be cut off; no record is appended after it
+
+    // Index that journal records for the given week should be applied to, or null to skip them
+    private interface WeekResolver {
+        EventIndex indexFor(LocalDate monday) throws IOException;
+    }
+
+    // A queued unit of work for the writer thread: either a record to append or an action
+    private static final class Request {
+        final byte[] record;
+        final Callable<?> action;
+        final CompletableFuture<Object> done = new CompletableFuture<>();
+
+        Request(byte[] record, Callable<?> action) {
+            this.record = record;
+            this.action = action;
+        }
+    }
+
+    public ScheduleJournal(Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".journal");
+        this.oldJournalFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".journal.old");
+        this.lockFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".lock");
+    }
+
+    // Drops a torn record left at the end of the journal by a crash and starts accepting records.
+    // Fails if another process (or another journal in this one) has the schedule open.
+    public void open() throws IOException {
+        if (writer != null) {
+            return;
+        }
+        lock();
+        long validLength;
+        try {
+            validLength = replay(journalFile, monday -> null);
+            channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close(); // Releases the lock
+            lockChannel = null;
+            throw e;
+        }
+        channel.truncate(validLength);
+        channel.position(validLength);
+        writer = daemon(this::writeLoop, "schedule-journal");
+        writer.start();
+    }
+
+    // Current events of the week starting on the given Monday: its snapshot segment with the
+    // journal replayed over it. Waits for records that are still queued.
+    public List<WeeklySchedulerApp.Event> loadWeek(LocalDate monday) throws IOException {
+        return loadWeeks(Collections.singleton(monday)).get(monday);
+    }
+
+    // Like loadWeek for several weeks at once, replaying the journal only once
+    public Map<LocalDate, List<WeeklySchedulerApp.Event>> loadWeeks(Collection<LocalDate> mondays) throws IOException {
+        sync();
+        snapshotLock.lock();
+        try (WeekStore store = WeekStore.open(snapshotFile)) {
+            Map<LocalDate, EventIndex> weeks = new HashMap<>();
+            for (LocalDate monday : mondays) {
+                EventIndex week = new EventIndex();
+                week.addAll(store.readWeek(monday));
+                weeks.put(monday, week);
+            }
+            replay(oldJournalFile, weeks::get);
+            replay(journalFile, weeks::get);
+            Map<LocalDate, List<WeeklySchedulerApp.Event>> result = new HashMap<>();
+            for (Map.Entry<LocalDate, EventIndex> week : weeks.entrySet()) {
+                result.put(week.getKey(), week.getValue().toList());
+            }
+            return result;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    // Every current event: the whole snapshot with the journal replayed over it
+    public EventIndex loadAll() throws IOException {
+        sync();
+        snapshotLock.lock();
+        try {
+            EventIndex events = new EventIndex();
+            if (Files.exists(snapshotFile)) {
+                events.addAll(ScheduleFile.read(snapshotFile));
+            }
+            replay(oldJournalFile, monday -> events);
+            replay(journalFile, monday -> events);
+            return events;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    // Mondays of every week that has or had events: the snapshot's segments and the weeks the
+    // journal touches, found without building any of them.
+    public Set<LocalDate> weeksWithEvents() throws IOException {
+        sync();
+        snapshotLock.lock();
+        try (WeekStore store = WeekStore.open(snapshotFile)) {
+            Set<LocalDate> mondays = new TreeSet<>(store.weeks());
+            WeekResolver touched = monday -> {
+                mondays.add(monday);
+                return null;
+            };
+            replay(oldJournalFile, touched);
+            replay(journalFile, touched);
+            return mondays;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    public CompletableFuture<Object> recordCreate(WeeklySchedulerApp.Event event) {
+        return append(encode(OP_CREATE, null, null, event));
+    }
+
+    // oldStart/oldEnd are the times the event had before the edit
+    public CompletableFuture<Object> recordEdit(LocalDateTime oldStart, LocalDateTime oldEnd, WeeklySchedulerApp.Event event) {
+        return append(encode(OP_EDIT, oldStart, oldEnd, event));
+    }
+
+    public CompletableFuture<Object> recordDelete(WeeklySchedulerApp.Event event) {
+        return append(encode(OP_DELETE, event.startTime, event.endTime, null));
+    }
+
+    // Folds everything journaled so far into the snapshot (a manual save). Only weeks changed
+    // since the last snapshot are re-encoded. Completes with the snapshot size in bytes.
+    public CompletableFuture<Object> checkpoint() {
+        return submit(null, () -> {
+            compact(); // A previous rotation may still be waiting for the compactor
+            rotate();
+            return null;
+        }).thenApplyAsync(ignored -> {
+            try {
+                compact();
+                return Files.exists(snapshotFile) ? Files.size(snapshotFile) : 0L;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, compactor);
+    }
+
+    // Flushes pending records and stops the writer; waits for a running compaction. Records
+    // and checkpoints asked for afterwards fail with IllegalStateException.
+    @Override
+    public void close() {
+        CompletableFuture<Object> stopped;
+        synchronized (queue) {
+            if (writer == null || closed) {
+                return;
+            }
+            stopped = submit(null, () -> {
+                channel.close();
+                Thread.currentThread().interrupt();
+                return null;
+            });
+            closed = true;
+        }
+        stopped.exceptionally(e -> null).join();
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            lockChannel.close(); // Releases the lock
+        } catch (IOException e) {
+            // The lock goes with the process anyway
+        }
+    }
+
+    private void lock() throws IOException {
+        lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        boolean locked;
+        try {
+            locked = lockChannel.tryLock() != null;
+        } catch (OverlappingFileLockException e) {
+            locked = false; // Held by another journal in this process
+        }
+        if (!locked) {
+            lockChannel.close();
+            lockChannel = null;
+            throw new IOException(snapshotFile + " is already open in another scheduler window or booking server (" + lockFile
+                    + " is locked). Close that one first.");
+        }
+    }
+
+    // Waits for the records queued so far; after close there are none left to wait for
+    private void sync() {
+        CompletableFuture<Object> done;
+        synchronized (queue) {
+            if (writer == null || closed) {
+                return;
+            }
+            done = submit(null, () -> null);
+        }
+        done.join();
+    }
+
+    private CompletableFuture<Object> append(byte[] record) {
+        IOException failed = failure;
+        if (failed != null) {
+            return CompletableFuture.failedFuture(failed);
+        }
+        return submit(record, null);
+    }
+
+    private CompletableFuture<Object> submit(byte[] record, Callable<?> action) {
+        synchronized (queue) {
+            if (writer == null) {
+                throw new IllegalStateException("Journal has not been opened yet");
+            }
+            if (closed) {
+                throw new IllegalStateException("Journal " + journalFile + " is closed");
+            }
+            Request request = new Request(record, action);
+            queue.add(request);
+            return request.done;
+        }
+    }
+
+    private void writeLoop() {
+        List<Request> batch = new ArrayList<>();
+        List<Request> appended = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            for (Request request : batch) {
+                if (request.record != null) {
+                    appended.add(request);
+                    continue;
+                }
+                commit(appended); // Keep actions ordered after the records queued before them
+                try {
+                    request.done.complete(request.action.call());
+                } catch (Exception e) {
+                    request.done.completeExceptionally(e);
+                }
+            }
+            commit(appended);
+            batch.clear();
+            if (channel.isOpen()) {
+                rotateIfNeeded();
+            }
+        }
+    }
+
+    // Appends the records with one write and one fsync, then completes their futures. If the
+    // write or the fsync fails, the batch is cut off again so the records appended after it
+    // do not follow torn bytes, which replay would stop at; if even that fails, the journal
+    // takes no more records.
+    private void commit(List<Request> appended) {
+        if (appended.isEmpty()) {
+            return;
+        }
+        long start = -1;
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            start = channel.position();
+            int total = 0;
+            for (Request request : appended) {
+                total += 8 + request.record.length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(total);
+            CRC32 crc = new CRC32();
+            for (Request request : appended) {
+                crc.reset();
+                crc.update(request.record);
+                buffer.putInt(request.record.length).putInt((int) crc.getValue()).put(request.record);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            for (Request request : appended) {
+                request.done.complete(null);
+            }
+        } catch (IOException e) {
+            if (e != failure) {
+                cutOff(start, e);
+            }
+            for (Request request : appended) {
+                request.done.completeExceptionally(e);
+            }
+        }
+        appended.clear();
+    }
+
+    // Drops whatever part of a failed batch reached the file
+    private void cutOff(long start, IOException cause) {
+        try {
+            if (start < 0) {
+                throw new IOException("The journal position is unknown");
+            }
+            channel.truncate(start);
+            channel.position(start);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            failure = new IOException("The journal " + journalFile + " could not be repaired after a failed write and takes no more changes", cause);
+            System.err.println(failure.getMessage() + ": " + cause);
+        }
+    }
+
+    // Hands the journal to the compactor once it is large enough and no compaction is running
+    private void rotateIfNeeded() {
+        try {
+            if (channel.size() < COMPACT_THRESHOLD || Files.exists(oldJournalFile)) {
+                return;
+            }
+            rotate();
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    System.err.println("Journal compaction failed: " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Journal rotation failed: " + e.getMessage());
+        }
+    }
+
+    // Moves the active journal aside for the compactor; runs on the writer thread only
+    private void rotate() throws IOException {
+        channel.close();
+        Files.move(journalFile, oldJournalFile, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    // Folds the rotated journal into the snapshot file without touching the in-memory schedule.
+    // Only the weeks the journal touches are decoded; other segments are copied as they are.
+    private void compact() throws IOException {
+        snapshotLock.lock();
+        try {
+            if (!Files.exists(oldJournalFile)) {
+                return;
+            }
+            Map<LocalDate, EventIndex> touched = new HashMap<>();
+            try (WeekStore store = WeekStore.open(snapshotFile)) {
+                replay(oldJournalFile, monday -> {
+                    EventIndex week = touched.get(monday);
+                    if (week == null) {
+                        week = new EventIndex();
+                        week.addAll(store.readWeek(monday));
+                        touched.put(monday, week);
+                    }
+                    return week;
+                });
+            }
+            Map<LocalDate, List<WeeklySchedulerApp.Event>> replaced = new HashMap<>();
+            for (Map.Entry<LocalDate, EventIndex> week : touched.entrySet()) {
+                replaced.put(week.getKey(), week.getValue().toList());
+            }
+            if (!replaced.isEmpty()) { // Nothing to rewrite after a checkpoint with no changes
+                WeekStore.rewrite(snapshotFile, replaced);
+            }
+            Files.delete(oldJournalFile);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    // Applies every intact record and returns the length of the valid prefix of the file
+    private static long replay(Path file, WeekResolver weeks) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            CRC32 crc = new CRC32();
+            byte[] frame = new byte[8];
+            ByteBuffer header = ByteBuffer.wrap(frame);
+            while (true) {
+                int length;
+                int checksum;
+                byte[] record;
+                try {
+                    in.readFully(frame); // One read per frame; readInt would lock the stream per byte
+                    length = header.getInt(0);
+                    checksum = header.getInt(4);
+                    if (length <= 0 || length > (1 << 24)) {
+                        break;
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(record, weeks);
+                valid += 8 + length;
+            }
+        }
+        return valid;
+    }
+
+    private static void apply(byte[] record, WeekResolver weeks) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte op = in.readByte();
+        if (op == OP_CREATE) {
+            put(weeks, readEvent(in));
+        } else if (op == OP_EDIT) {
+            remove(weeks, in.readInt(), in.readInt());
+            put(weeks, readEvent(in));
+        } else if (op == OP_DELETE) {
+            remove(weeks, in.readInt(), in.readInt());
+        } else {
+            throw new IOException("Unknown journal record type " + op);
+        }
+    }
+
+    private static void put(WeekResolver weeks, WeeklySchedulerApp.Event event) throws IOException {
+        EventIndex events = weeks.indexFor(ScheduleFile.weekOf(event.startTime));
+        if (events == null) {
+            return;
+        }
+        WeeklySchedulerApp.Event existing = find(events, ScheduleFile.toMinute(event.startTime), ScheduleFile.toMinute(event.endTime));
+        if (existing != null) {
+            events.remove(existing);
+        }
+        events.add(event);
+    }
+
+    private static void remove(WeekResolver weeks, int start, int end) throws IOException {
+        EventIndex events = weeks.indexFor(ScheduleFile.weekOf(ScheduleFile.fromMinute(start)));
+        if (events == null) {
+            return;
+        }
+        WeeklySchedulerApp.Event existing = find(events, start, end);
+        if (existing != null) {
+            events.remove(existing);
+        }
+    }
+
+    private static WeeklySchedulerApp.Event find(EventIndex events, int start, int end) {
+        LocalDateTime startTime = ScheduleFile.fromMinute(start);
+        LocalDateTime endTime = ScheduleFile.fromMinute(end);
+        // Widened by a minute on each side so zero-length events are found too
+        for (WeeklySchedulerApp.Event event : events.query(startTime.minusMinutes(1), endTime.plusMinutes(1))) {
+            if (ScheduleFile.toMinute(event.startTime) == start && ScheduleFile.toMinute(event.endTime) == end) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] encode(byte op, LocalDateTime oldStart, LocalDateTime oldEnd, WeeklySchedulerApp.Event event) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(op);
+            if (oldStart != null) {
+                out.writeInt(ScheduleFile.toMinute(oldStart));
+                out.writeInt(ScheduleFile.toMinute(oldEnd));
+            }
+            if (event != null) {
+                out.writeInt(ScheduleFile.toMinute(event.startTime));
+                out.writeInt(ScheduleFile.toMinute(event.endTime));
+                writeString(out, event.name);
+                writeString(out, event.location);
+                writeString(out, event.color);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cannot happen with an in-memory stream
+        }
+    }
+
+    private static WeeklySchedulerApp.Event readEvent(DataInputStream in) throws IOException {
+        LocalDateTime start = ScheduleFile.fromMinute(in.readInt());
+        LocalDateTime end = ScheduleFile.fromMinute(in.readInt());
+        return new WeeklySchedulerApp.Event(readString(in), readString(in), start, end, readString(in));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Thread daemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,1281 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// The schedule and its booking rules, without any UI. Safe to use from any number of threads.
+//
+// Events never span midnight, so the overlap rule only ever compares events of the same day.
+// Each day therefore has its own index and its own lock: bookings on different days never
+// contend, and a move between two days locks both in date order. Weeks are loaded from the
+// journal on first use and can be dropped from memory again with unloadWeek.
+//
+// A day's events are an immutable EventTree, and each week publishes the trees of its seven
+// days as one array. Writers build new trees under the day locks and swap the array; readers
+// (week, eventsOn) take the current array without any lock and so always see a whole version
+// of the week, e.g. a moved event in exactly one place. When undo is enabled, every change also
+// keeps the trees of the days it touched from before and after it, and undo and redo publish
+// those again if the days still hold the other version.
+//
+// Recurring events are kept apart as Recurrence definitions and expanded only for the dates a
+// caller asks about. Bookings that change times hold the series read lock before any day lock;
+// creating a series holds the write lock, so it sees every day as it is.
+//
+// Every operation is timed in Metrics.
+//
+// Events handed out are never modified afterwards; edit and move replace the event with a new
+// one, and an edit or delete of an event that has already been replaced is rejected.
+//
+// A change returns only once its journal record is on disk, and is made in memory only if it
+// got there: single changes wait for their record before touching the day, and createAll
+// takes back the events whose records failed. If memory and the journal can no longer be kept
+// in step (an undo whose records were written only in part) the engine refuses all further
+// changes until it is restarted from disk.
+public class SchedulerEngine {
+    private static final int PREFETCH_WEEKS = 8; // Weeks read at once by the free slot search
+    private static final int UNDO_MAX_STEPS = 1000; // Larger changes (imports) are not kept for undo
+
+    private final BookingRules rules;
+    private final ScheduleJournal journal;
+    private final Path seriesFile;
+    private final ReentrantReadWriteLock seriesLock = new ReentrantReadWriteLock();
+    private volatile List<Recurrence> series; // Replaced as a whole under the write lock
+    private final ConcurrentHashMap<LocalDate, Week> weeks = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong unloads = new AtomicLong(); // Bumped before a week is dropped from memory
+    private final Deque<Revision> undoable = new ArrayDeque<>(); // Latest first, guarded by itself
+    private final Deque<Revision> redoable = new ArrayDeque<>(); // Guarded by undoable
+    private volatile int undoLimit; // Changes kept for undo, 0 to keep none
+    private volatile IOException failure; // Set once memory may differ from the journal; no change is made after it
+    private volatile int residentWeekLimit; // Weeks trimWeeks keeps in memory, 0 for no limit
+    private final LinkedHashMap<LocalDate, Boolean> recentWeeks = new LinkedHashMap<>(16, 0.75f, true); // Loaded weeks, least recently used first, guarded by itself; only kept with a limit
+
+    // Told about every change while the affected days are still locked, so a listener sees the
+    // changes of a day in the order they happened. removed is null for a create, added is null
+    // for a delete. Listeners must not block or call back into the engine.
+    public interface Listener {
+        void eventChanged(WeeklySchedulerApp.Event removed, WeeklySchedulerApp.Event added);
+
+        // A recurring event was created, changed or deleted; any of its occurrences may differ
+        default void seriesChanged() {
+        }
+    }
+
+    // A booking that breaks one of the rules or conflicts with the current schedule
+    public static class SchedulingException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public SchedulingException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Week {
+        final LocalDate monday;
+        final Day[] days = new Day[7];
+        final AtomicReference<EventTree[]> version = new AtomicReference<>(); // Trees of the 7 days, never changed once set
+        boolean loaded; // Guarded by the week's monitor
+        volatile boolean dropped; // Set with all day locks held once the week is unloaded
+
+        Week(LocalDate monday, BookingRules rules) {
+            this.monday = monday;
+            EventTree[] empty = new EventTree[7];
+            for (int i = 0; i < 7; i++) {
+                days[i] = new Day(this, i, rules);
+                empty[i] = EventTree.EMPTY;
+            }
+            version.set(empty);
+        }
+
+        // Replaces the trees of the days given (null entries keep theirs) in one step. The
+        // caller holds the locks of those days; others may be replaced meanwhile, hence the retry.
+        void publish(EventTree[] replaced) {
+            while (true) {
+                EventTree[] current = version.get();
+                EventTree[] next = current.clone();
+                for (int i = 0; i < 7; i++) {
+                    if (replaced[i] != null) {
+                        next[i] = replaced[i];
+                    }
+                }
+                if (version.compareAndSet(current, next)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final class Day {
+        final Week week;
+        final int index; // 0 = Monday
+        final ReentrantLock lock = new ReentrantLock();
+        final MinuteBitmap closed; // Shared with the rules, never changed
+        final MinuteBitmap busy; // Closed minutes, and booked ones widened by the buffer, guarded by lock
+        final int buffer;
+
+        Day(Week week, int index, BookingRules rules) {
+            this.week = week;
+            this.index = index;
+            this.closed = rules.closedMinutes(week.monday.plusDays(index));
+            this.busy = closed.copy();
+            this.buffer = rules.bufferMinutes();
+        }
+
+        // The day's current events; any thread may read them, only the lock holder replaces them
+        EventTree events() {
+            return week.version.get()[index];
+        }
+
+        LocalDate date() {
+            return week.monday.plusDays(index);
+        }
+
+        void markBusy(WeeklySchedulerApp.Event event) {
+            busy.set(Math.max(minuteOfDay(event.startTime) - buffer, 0), Math.min(endMinute(event) + buffer, MinuteBitmap.MINUTES));
+        }
+
+        // The freed minutes are reset to the closed hours and any event left in the tree still
+        // covering them (a neighbour's buffer, or overlapping events from old files) is marked again
+        void unmarkBusy(WeeklySchedulerApp.Event event, EventTree remaining) {
+            int from = Math.max(minuteOfDay(event.startTime) - buffer, 0);
+            int to = Math.min(endMinute(event) + buffer, MinuteBitmap.MINUTES);
+            busy.copyRange(closed, from, to);
+            for (WeeklySchedulerApp.Event other : remaining.query(event.startTime.minusMinutes(2L * buffer), event.endTime.plusMinutes(2L * buffer))) {
+                busy.set(Math.max(from, minuteOfDay(other.startTime) - buffer), Math.min(to, endMinute(other) + buffer));
+            }
+        }
+
+        // Rebuilds the busy minutes from the current tree, after undo swapped it
+        void resetBusy() {
+            busy.copyRange(closed, 0, MinuteBitmap.MINUTES);
+            for (WeeklySchedulerApp.Event event : events().toList()) {
+                markBusy(event);
+            }
+        }
+
+        private int endMinute(WeeklySchedulerApp.Event event) {
+            return event.endTime.toLocalDate().equals(event.startTime.toLocalDate()) ? minuteOfDay(event.endTime) : MinuteBitmap.MINUTES;
+        }
+    }
+
+    // One change that can be undone: the trees of the days it touched from before and after it
+    // and what it did in order, or the series list before and after it
+    private static final class Revision {
+        final String label; // E.g. Create "Standup"
+        final Map<Day, EventTree> before = new LinkedHashMap<>();
+        final Map<Day, EventTree> after = new LinkedHashMap<>();
+        final List<WeeklySchedulerApp.Event[]> steps = new ArrayList<>(); // {removed, added}
+        List<Recurrence> seriesBefore; // Null unless the change was to the series
+        List<Recurrence> seriesAfter;
+
+        Revision(String label) {
+            this.label = label;
+        }
+
+        // Called with the day's lock held, before the day is changed
+        void touch(Day day) {
+            if (!before.containsKey(day)) {
+                before.put(day, day.events());
+            }
+        }
+    }
+
+    // With the default booking rules
+    public SchedulerEngine(ScheduleJournal journal, Path seriesFile) throws IOException {
+        this(journal, seriesFile, BookingRules.defaults());
+    }
+
+    public SchedulerEngine(ScheduleJournal journal, Path seriesFile, BookingRules rules) throws IOException {
+        this.rules = rules;
+        this.journal = journal;
+        this.seriesFile = seriesFile;
+        this.series = Collections.unmodifiableList(SeriesStore.read(seriesFile));
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // The rules every booking is checked against
+    public BookingRules rules() {
+        return rules;
+    }
+
+    public WeeklySchedulerApp.Event create(String name, String location, LocalDateTime start, LocalDateTime end, String color)
+            throws SchedulingException, IOException {
+        try (Metrics.Sample sample = Metrics.CREATE.start()) {
+            rules.check(start, end);
+            WeeklySchedulerApp.Event event = new WeeklySchedulerApp.Event(name, location, start, end, color);
+            seriesLock.readLock().lock();
+            try {
+                Day day = lockDay(start.toLocalDate());
+                try {
+                    checkFree(day, start, end, null);
+                    checkWritable();
+                    awaitWritten(journal.recordCreate(event));
+                    Revision revision = new Revision("Create \"" + name + "\"");
+                    replace(revision, null, null, day, event);
+                    fire(revision, null, event);
+                    remember(revision);
+                } finally {
+                    day.lock.unlock();
+                }
+            } finally {
+                seriesLock.readLock().unlock();
+            }
+            sample.succeeded();
+            return event;
+        }
+    }
+
+    // Books many new events at once and returns the reason each one was rejected, or null where
+    // it was booked. The candidates are sorted by start, their weeks are loaded with one pass
+    // over the journal, and each day is locked once for all its candidates. Every candidate is
+    // checked against the rules, the day's events and the candidates booked before it. The
+    // days stay locked until the batch's records are written (usually one group commit), and
+    // an event whose record could not be written is taken back out and rejected.
+    public String[] createAll(List<WeeklySchedulerApp.Event> candidates) throws IOException {
+        try (Metrics.Sample sample = Metrics.CREATE_ALL.start()) {
+            String[] rejections = createAllTimed(candidates);
+            sample.succeeded();
+            return rejections;
+        }
+    }
+
+    private String[] createAllTimed(List<WeeklySchedulerApp.Event> candidates) throws IOException {
+        String[] rejections = new String[candidates.size()];
+        long[] order = new long[candidates.size()]; // Start minute in the high half, index in the low half
+        Set<LocalDate> mondays = new HashSet<>();
+        for (int i = 0; i < order.length; i++) {
+            WeeklySchedulerApp.Event event = candidates.get(i);
+            order[i] = (long) ScheduleFile.toMinute(event.startTime) << 32 | i;
+            mondays.add(event.startTime.toLocalDate().with(DayOfWeek.MONDAY));
+        }
+        Arrays.sort(order);
+        loadWeeks(mondays);
+
+        Revision revision = new Revision("Create " + candidates.size() + " events");
+        List<Day> locked = new ArrayList<>();
+        List<Integer> booked = new ArrayList<>(); // Candidates changed in memory, in order
+        List<Day> bookedDays = new ArrayList<>();
+        List<CompletableFuture<Object>> written = new ArrayList<>();
+        seriesLock.readLock().lock();
+        try {
+            checkWritable();
+            int next = 0;
+            while (next < order.length) {
+                LocalDate date = candidates.get((int) order[next]).startTime.toLocalDate();
+                Day day = lockDay(date);
+                locked.add(day);
+                for (; next < order.length; next++) {
+                    int i = (int) order[next];
+                    WeeklySchedulerApp.Event event = candidates.get(i);
+                    if (!event.startTime.toLocalDate().equals(date)) {
+                        break;
+                    }
+                    try {
+                        rules.check(event.startTime, event.endTime);
+                        checkFree(day, event.startTime, event.endTime, null);
+                    } catch (SchedulingException e) {
+                        rejections[i] = e.getMessage();
+                        continue;
+                    }
+                    replace(revision, null, null, day, event);
+                    booked.add(i);
+                    bookedDays.add(day);
+                    try {
+                        written.add(journal.recordCreate(event));
+                    } catch (RuntimeException e) {
+                        written.add(CompletableFuture.failedFuture(e)); // E.g. the journal was closed
+                    }
+                }
+            }
+            IOException[] errors = new IOException[booked.size()];
+            Set<Day> saved = new HashSet<>(); // Days with at least one event written
+            for (int b = 0; b < booked.size(); b++) {
+                try {
+                    awaitWritten(written.get(b));
+                    saved.add(bookedDays.get(b));
+                } catch (IOException e) {
+                    errors[b] = e;
+                }
+            }
+            for (int b = 0; b < booked.size(); b++) {
+                int i = booked.get(b);
+                if (errors[b] == null) {
+                    fire(revision, null, candidates.get(i));
+                } else {
+                    rejections[i] = errors[b].getMessage();
+                    if (saved.contains(bookedDays.get(b))) {
+                        replace(revision, bookedDays.get(b), candidates.get(i), null, null);
+                    }
+                }
+            }
+            for (Day day : locked) {
+                if (!saved.contains(day) && revision.before.containsKey(day)) {
+                    restore(revision, day); // Nothing of the day was written: it goes back to the very tree it had
+                }
+            }
+            remember(revision);
+        } finally {
+            for (Day day : locked) {
+                day.lock.unlock();
+            }
+            seriesLock.readLock().unlock();
+        }
+        return rejections;
+    }
+
+    // Changes name, location and color; returns the event that replaces the given one
+    public WeeklySchedulerApp.Event edit(WeeklySchedulerApp.Event event, String name, String location, String color)
+            throws SchedulingException, IOException {
+        try (Metrics.Sample sample = Metrics.EDIT.start()) {
+            Day day = lockDay(event.startTime.toLocalDate());
+            try {
+                checkCurrent(day, event);
+                WeeklySchedulerApp.Event edited = new WeeklySchedulerApp.Event(name, location, event.startTime, event.endTime, color);
+                checkWritable();
+                awaitWritten(journal.recordEdit(event.startTime, event.endTime, edited));
+                Revision revision = new Revision("Edit \"" + event.name + "\"");
+                replace(revision, day, event, day, edited);
+                fire(revision, event, edited);
+                remember(revision);
+                sample.succeeded();
+                return edited;
+            } finally {
+                day.lock.unlock();
+            }
+        }
+    }
+
+    // Reschedules the event, possibly to another day; returns the event that replaces it
+    public WeeklySchedulerApp.Event move(WeeklySchedulerApp.Event event, LocalDateTime start, LocalDateTime end)
+            throws SchedulingException, IOException {
+        try (Metrics.Sample sample = Metrics.MOVE.start()) {
+            WeeklySchedulerApp.Event moved = moveChecked(event,
+                    new WeeklySchedulerApp.Event(event.name, event.location, start, end, event.color), "Move");
+            sample.succeeded();
+            return moved;
+        }
+    }
+
+    // Reschedules the event and changes its details as one change, checked against the event
+    // as given and undone in one step; returns the event that replaces it
+    public WeeklySchedulerApp.Event update(WeeklySchedulerApp.Event event, LocalDateTime start, LocalDateTime end, String name,
+            String location, String color) throws SchedulingException, IOException {
+        try (Metrics.Sample sample = Metrics.UPDATE.start()) {
+            WeeklySchedulerApp.Event updated = moveChecked(event,
+                    new WeeklySchedulerApp.Event(name, location, start, end, color), "Change");
+            sample.succeeded();
+            return updated;
+        }
+    }
+
+    private WeeklySchedulerApp.Event moveChecked(WeeklySchedulerApp.Event event, WeeklySchedulerApp.Event moved, String verb)
+            throws SchedulingException, IOException {
+        rules.check(moved.startTime, moved.endTime);
+        seriesLock.readLock().lock();
+        try {
+            return moveLocked(event, moved, verb);
+        } finally {
+            seriesLock.readLock().unlock();
+        }
+    }
+
+    private WeeklySchedulerApp.Event moveLocked(WeeklySchedulerApp.Event event, WeeklySchedulerApp.Event moved, String verb)
+            throws SchedulingException, IOException {
+        LocalDate from = event.startTime.toLocalDate();
+        LocalDate to = moved.startTime.toLocalDate();
+        Day first = lockDay(from.isBefore(to) ? from : to); // Always lock in date order
+        try {
+            Day second = from.equals(to) ? first : lockDay(from.isBefore(to) ? to : from);
+            try {
+                Day source = from.isAfter(to) ? second : first;
+                Day target = source == first ? second : first;
+                checkCurrent(source, event);
+                checkFree(target, moved.startTime, moved.endTime, event);
+                checkWritable();
+                awaitWritten(journal.recordEdit(event.startTime, event.endTime, moved));
+                Revision revision = new Revision(verb + " \"" + event.name + "\"");
+                replace(revision, source, event, target, moved);
+                fire(revision, event, moved);
+                remember(revision);
+                return moved;
+            } finally {
+                if (second != first) {
+                    second.lock.unlock();
+                }
+            }
+        } finally {
+            first.lock.unlock();
+        }
+    }
+
+    public void delete(WeeklySchedulerApp.Event event) throws SchedulingException, IOException {
+        try (Metrics.Sample sample = Metrics.DELETE.start()) {
+            Day day = lockDay(event.startTime.toLocalDate());
+            try {
+                checkCurrent(day, event);
+                checkWritable();
+                awaitWritten(journal.recordDelete(event));
+                Revision revision = new Revision("Delete \"" + event.name + "\"");
+                replace(revision, day, event, null, null);
+                fire(revision, event, null);
+                remember(revision);
+                sample.succeeded();
+            } finally {
+                day.lock.unlock();
+            }
+        }
+    }
+
+    // Recurring events in the order they were created
+    public List<Recurrence> series() {
+        return series;
+    }
+
+    // Stores a new recurring event and returns it with its id. Its times must fit the usual
+    // hours of every weekday it can fall on; occurrences on holidays and in blackouts that
+    // the times do not fit are skipped. It is checked against the other series by their rules
+    // alone, and against single events only in the weeks that have any.
+    public Recurrence createSeries(Recurrence recurrence) throws SchedulingException, IOException {
+        try (Metrics.Sample sample = Metrics.CREATE_SERIES.start()) {
+            Recurrence stored = createSeriesTimed(recurrence);
+            sample.succeeded();
+            return stored;
+        }
+    }
+
+    private Recurrence createSeriesTimed(Recurrence recurrence) throws SchedulingException, IOException {
+        Set<DayOfWeek> weekdays = recurrence.possibleWeekdays();
+        if (weekdays.isEmpty()) {
+            throw new SchedulingException("The series has no occurrences.");
+        }
+        for (DayOfWeek weekday : weekdays) {
+            rules.checkWeekly(weekday, recurrence.startTime, recurrence.endTime);
+        }
+        for (LocalDate date : new TreeSet<>(rules.specialDates())) {
+            if (recurrence.occursOn(date)) {
+                try {
+                    rules.check(date.atTime(recurrence.startTime), date.atTime(recurrence.endTime));
+                } catch (SchedulingException e) {
+                    recurrence = recurrence.withException(date);
+                }
+            }
+        }
+        seriesLock.writeLock().lock();
+        try {
+            long id = 1;
+            for (Recurrence other : series) {
+                if (recurrence.timesOverlap(widen(other.startTime, -rules.bufferMinutes()), widen(other.endTime, rules.bufferMinutes()))) {
+                    LocalDate common = recurrence.firstCommonDate(other);
+                    if (common != null) {
+                        throw new SchedulingException("The series overlaps with \"" + other.name + "\" on " + common + ".");
+                    }
+                }
+                id = Math.max(id, other.id + 1);
+            }
+            checkSingleEventsFree(recurrence);
+            Recurrence stored = recurrence.withId(id);
+            List<Recurrence> updated = new ArrayList<>(series);
+            updated.add(stored);
+            storeSeries("Create series \"" + stored.name + "\"", updated);
+            return stored;
+        } finally {
+            seriesLock.writeLock().unlock();
+        }
+    }
+
+    // Changes name, location and color of every occurrence; returns the replacing series
+    public Recurrence editSeries(Recurrence recurrence, String name, String location, String color)
+            throws SchedulingException, IOException {
+        return replaceSeries(recurrence, recurrence.withDetails(name, location, color));
+    }
+
+    // Removes a single occurrence, leaving the rest of the series; returns the replacing series
+    public Recurrence skipOccurrence(Recurrence recurrence, LocalDate date) throws SchedulingException, IOException {
+        return replaceSeries(recurrence, recurrence.withException(date));
+    }
+
+    public void deleteSeries(Recurrence recurrence) throws SchedulingException, IOException {
+        replaceSeries(recurrence, null);
+    }
+
+    // Events of one day with the series occurring on it, sorted by start
+    public List<WeeklySchedulerApp.Event> eventsOn(LocalDate date) throws IOException {
+        LocalDate monday = date.with(DayOfWeek.MONDAY);
+        EventTree events = loadedWeek(monday).version.get()[(int) (date.toEpochDay() - monday.toEpochDay())];
+        return withOccurrences(events.toList(), date, date.plusDays(1));
+    }
+
+    // Events of the week starting on the given Monday, sorted by start, as one consistent view.
+    // The week's current version is read without locking, so this never waits for a booking.
+    public List<WeeklySchedulerApp.Event> week(LocalDate monday) throws IOException {
+        List<WeeklySchedulerApp.Event> result = new ArrayList<>();
+        for (EventTree events : loadedWeek(monday).version.get()) {
+            result.addAll(events.toList());
+        }
+        return withOccurrences(result, monday, monday.plusWeeks(1));
+    }
+
+    // Start times of the first count free slots of the given length at or after the given time,
+    // looking at most maxDays days ahead. Slots respect the booking rules, start on multiples
+    // of alignMinutes after midnight and do not overlap each other. Weeks are read in batches
+    // as the search reaches them, and those that were not in memory are unloaded once it has
+    // passed them, so a long search keeps at most a batch of extra weeks.
+    public List<LocalDateTime> findFreeSlots(LocalDateTime after, int minutes, int count, int alignMinutes, int maxDays)
+            throws IOException {
+        try (Metrics.Sample sample = Metrics.FREE_SLOTS.start()) {
+            List<LocalDateTime> slots = findFreeSlotsTimed(after, minutes, count, alignMinutes, maxDays);
+            sample.succeeded();
+            return slots;
+        }
+    }
+
+    private List<LocalDateTime> findFreeSlotsTimed(LocalDateTime after, int minutes, int count, int alignMinutes, int maxDays)
+            throws IOException {
+        List<LocalDateTime> slots = new ArrayList<>(count);
+        long[] alignMask = MinuteBitmap.alignMask(alignMinutes);
+        LocalDate date = after.toLocalDate();
+        LocalDate last = date.plusDays(maxDays);
+        Set<LocalDate> notLoaded = new HashSet<>(); // Weeks the search brought into memory
+        try {
+            while (slots.size() < count && !date.isAfter(last)) {
+                if (date.getDayOfWeek() == DayOfWeek.MONDAY || date.equals(after.toLocalDate())) {
+                    LocalDate monday = date.with(DayOfWeek.MONDAY);
+                    if (notLoaded.remove(monday.minusWeeks(1))) {
+                        unloadWeek(monday.minusWeeks(1));
+                    }
+                    Set<LocalDate> mondays = new HashSet<>();
+                    for (int week = 0; week < PREFETCH_WEEKS; week++) {
+                        LocalDate prefetched = monday.plusWeeks(week);
+                        mondays.add(prefetched);
+                        if (!notLoaded.contains(prefetched) && !isWeekLoaded(prefetched)) {
+                            notLoaded.add(prefetched);
+                        }
+                    }
+                    loadWeeks(mondays);
+                }
+                long[] starts;
+                Day day = lockDay(date);
+                try {
+                    starts = busyWithSeries(day, date, false).freeRunStarts(minutes, alignMask);
+                } finally {
+                    day.lock.unlock();
+                }
+                int minute = date.equals(after.toLocalDate()) ? minuteOfDay(after) + (after.getSecond() > 0 || after.getNano() > 0 ? 1 : 0) : 0;
+                while (slots.size() < count && (minute = MinuteBitmap.nextSetBit(starts, minute)) >= 0 && minute < MinuteBitmap.MINUTES) {
+                    slots.add(date.atStartOfDay().plusMinutes(minute));
+                    minute += Math.max(minutes, 1);
+                }
+                date = date.plusDays(1);
+            }
+        } finally {
+            for (LocalDate monday : notLoaded) {
+                unloadWeek(monday);
+            }
+        }
+        return slots;
+    }
+
+    public boolean isWeekLoaded(LocalDate monday) {
+        Week week = weeks.get(monday);
+        if (week == null) {
+            return false;
+        }
+        synchronized (week) {
+            return week.loaded;
+        }
+    }
+
+    // Drops a week from memory; it is read back from the journal the next time it is used.
+    // Weeks that changes kept for undo refer to stay.
+    public void unloadWeek(LocalDate monday) {
+        Week week = weeks.get(monday);
+        if (week == null || isKeptForUndo(week)) {
+            return;
+        }
+        unloads.incrementAndGet();
+        for (Day day : week.days) {
+            day.lock.lock();
+        }
+        try {
+            week.dropped = true;
+            weeks.remove(monday, week);
+        } finally {
+            for (Day day : week.days) {
+                day.lock.unlock();
+            }
+        }
+        synchronized (recentWeeks) {
+            recentWeeks.remove(monday);
+        }
+    }
+
+    // Lets trimWeeks keep at most the given number of weeks in memory, dropping those used
+    // least recently; 0 (the default) keeps every week read until it is unloaded
+    public void setResidentWeekLimit(int limit) {
+        residentWeekLimit = limit;
+        if (limit <= 0) {
+            synchronized (recentWeeks) {
+                recentWeeks.clear();
+            }
+        }
+    }
+
+    // Unloads the least recently used weeks beyond the resident week limit, skipping those
+    // kept for undo. Unloading waits for the week's day locks, so callers must not hold any:
+    // a server calls this between requests rather than the engine in the middle of one.
+    public void trimWeeks() {
+        int limit = residentWeekLimit;
+        List<LocalDate> oldestFirst;
+        synchronized (recentWeeks) {
+            if (limit <= 0 || recentWeeks.size() <= limit) {
+                return;
+            }
+            oldestFirst = new ArrayList<>(recentWeeks.keySet());
+        }
+        for (LocalDate monday : oldestFirst) {
+            synchronized (recentWeeks) {
+                if (recentWeeks.size() <= limit) {
+                    return;
+                }
+            }
+            unloadWeek(monday);
+        }
+    }
+
+    private void touch(LocalDate monday) {
+        if (residentWeekLimit > 0) {
+            synchronized (recentWeeks) {
+                recentWeeks.put(monday, Boolean.TRUE);
+            }
+        }
+    }
+
+    // Drops every loaded week and rereads the series, so the schedule is read again from disk.
+    // Memory then matches the journal again, so an engine that stopped taking changes resumes.
+    public void reload() throws IOException {
+        try (Metrics.Sample sample = Metrics.RELOAD.start()) {
+            synchronized (undoable) {
+                undoable.clear();
+                redoable.clear();
+            }
+            for (LocalDate monday : new ArrayList<>(weeks.keySet())) {
+                unloadWeek(monday);
+            }
+            failure = null;
+            seriesLock.writeLock().lock();
+            try {
+                series = Collections.unmodifiableList(SeriesStore.read(seriesFile));
+            } finally {
+                seriesLock.writeLock().unlock();
+            }
+            sample.succeeded();
+        }
+    }
+
+    // Keeps the given number of changes for undo; 0 (the default) keeps none
+    public void setUndoLimit(int limit) {
+        synchronized (undoable) {
+            undoLimit = limit;
+            while (undoable.size() > limit) {
+                undoable.removeLast();
+            }
+            if (limit == 0) {
+                redoable.clear();
+            }
+        }
+    }
+
+    public boolean canUndo() {
+        synchronized (undoable) {
+            return !undoable.isEmpty();
+        }
+    }
+
+    public boolean canRedo() {
+        synchronized (undoable) {
+            return !redoable.isEmpty();
+        }
+    }
+
+    // Takes back the latest change and returns its label. The days it touched go back to the
+    // versions they had before it; if any of them changed since (say, from another client), the
+    // change is dropped from the history and an exception is thrown.
+    public String undo() throws SchedulingException, IOException {
+        return travel(true);
+    }
+
+    // Makes the latest undone change again and returns its label
+    public String redo() throws SchedulingException, IOException {
+        return travel(false);
+    }
+
+    private String travel(boolean back) throws SchedulingException, IOException {
+        try (Metrics.Sample sample = Metrics.UNDO.start()) {
+            String label = travelTimed(back);
+            sample.succeeded();
+            return label;
+        }
+    }
+
+    private String travelTimed(boolean back) throws SchedulingException, IOException {
+        Revision revision;
+        synchronized (undoable) {
+            revision = (back ? undoable : redoable).peek();
+        }
+        if (revision == null) {
+            throw new SchedulingException(back ? "Nothing to undo." : "Nothing to redo.");
+        }
+        if (revision.seriesAfter != null) {
+            travelSeries(revision, back);
+        } else {
+            travelEvents(revision, back);
+        }
+        return revision.label;
+    }
+
+    private void travelEvents(Revision revision, boolean back) throws SchedulingException, IOException {
+        Map<Day, EventTree> expected = back ? revision.after : revision.before;
+        Map<Day, EventTree> restored = back ? revision.before : revision.after;
+        List<Day> days = new ArrayList<>(restored.keySet());
+        days.sort(Comparator.comparing(Day::date)); // Always lock in date order
+        List<WeeklySchedulerApp.Event[]> steps = new ArrayList<>();
+        for (WeeklySchedulerApp.Event[] step : revision.steps) {
+            steps.add(back ? new WeeklySchedulerApp.Event[] {step[1], step[0]} : step);
+        }
+        if (back) {
+            Collections.reverse(steps);
+        }
+        seriesLock.readLock().lock();
+        List<Day> locked = new ArrayList<>();
+        try {
+            for (Day day : days) {
+                day.lock.lock();
+                locked.add(day);
+            }
+            for (Day day : days) {
+                if (day.week.dropped || day.events() != expected.get(day)) {
+                    throw outdated(revision, back);
+                }
+            }
+            for (WeeklySchedulerApp.Event[] step : steps) {
+                if (step[1] != null) {
+                    checkSeriesFree(step[1].startTime, step[1].endTime); // A series may have been added since
+                }
+            }
+            checkWritable();
+            moveInHistory(revision, back);
+            writeSteps(revision, back, steps);
+            Map<Week, EventTree[]> replaced = new HashMap<>();
+            for (Day day : days) {
+                replaced.computeIfAbsent(day.week, week -> new EventTree[7])[day.index] = restored.get(day);
+            }
+            for (Map.Entry<Week, EventTree[]> entry : replaced.entrySet()) {
+                entry.getKey().publish(entry.getValue());
+            }
+            for (Day day : days) {
+                day.resetBusy();
+            }
+            for (WeeklySchedulerApp.Event[] step : steps) {
+                fire(step[0], step[1]);
+            }
+        } finally {
+            for (Day day : locked) {
+                day.lock.unlock();
+            }
+            seriesLock.readLock().unlock();
+        }
+    }
+
+    private void travelSeries(Revision revision, boolean back) throws SchedulingException, IOException {
+        seriesLock.writeLock().lock();
+        try {
+            List<Recurrence> expected = back ? revision.seriesAfter : revision.seriesBefore;
+            List<Recurrence> restored = back ? revision.seriesBefore : revision.seriesAfter;
+            if (series != expected) {
+                throw outdated(revision, back);
+            }
+            for (Recurrence recurrence : restored) {
+                if (!expected.contains(recurrence)) {
+                    checkSingleEventsFree(recurrence); // Events may have been booked in its place since
+                }
+            }
+            moveInHistory(revision, back);
+            List<Recurrence> stored = writeSeries(new ArrayList<>(restored));
+            if (back) {
+                revision.seriesBefore = stored;
+            } else {
+                revision.seriesAfter = stored;
+            }
+        } finally {
+            seriesLock.writeLock().unlock();
+        }
+    }
+
+    // Called with the locks of what the revision changed held
+    private void moveInHistory(Revision revision, boolean back) throws SchedulingException {
+        synchronized (undoable) {
+            Deque<Revision> from = back ? undoable : redoable;
+            if (from.peek() != revision) {
+                throw new SchedulingException("The history was changed in the meantime.");
+            }
+            from.pop();
+            (back ? redoable : undoable).push(revision);
+        }
+    }
+
+    // Journals the steps of an undo or redo and waits for them, before anything changes in
+    // memory. If none were written the revision is dropped from the history and nothing else
+    // happens; if only some were, the journal holds half of it and the engine stops taking changes.
+    private void writeSteps(Revision revision, boolean back, List<WeeklySchedulerApp.Event[]> steps) throws IOException {
+        List<CompletableFuture<Object>> written = new ArrayList<>(steps.size());
+        try {
+            for (WeeklySchedulerApp.Event[] step : steps) {
+                if (step[0] != null && step[1] != null) {
+                    written.add(journal.recordEdit(step[0].startTime, step[0].endTime, step[1]));
+                } else if (step[0] != null) {
+                    written.add(journal.recordDelete(step[0]));
+                } else {
+                    written.add(journal.recordCreate(step[1]));
+                }
+            }
+        } catch (RuntimeException e) {
+            written.add(CompletableFuture.failedFuture(e)); // E.g. the journal was closed
+        }
+        IOException error = null;
+        int succeeded = 0;
+        for (CompletableFuture<Object> record : written) {
+            try {
+                awaitWritten(record);
+                succeeded++;
+            } catch (IOException e) {
+                error = error == null ? e : error;
+            }
+        }
+        if (error == null) {
+            return;
+        }
+        synchronized (undoable) {
+            (back ? redoable : undoable).remove(revision);
+        }
+        if (succeeded > 0) {
+            failure = error;
+            System.err.println("The schedule in memory no longer matches its journal; restart to read it again: " + error.getMessage());
+        }
+        throw error;
+    }
+
+    // Throws once the engine has stopped taking changes
+    private void checkWritable() throws IOException {
+        IOException failed = failure;
+        if (failed != null) {
+            throw new IOException("The schedule cannot be changed until it is read from disk again: " + failed.getMessage(), failed);
+        }
+    }
+
+    // Waits until the record is on disk; a failure to write it comes back as an IOException
+    private static void awaitWritten(CompletableFuture<Object> written) throws IOException {
+        try {
+            written.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw new IOException("The change could not be saved: " + (cause.getMessage() != null ? cause.getMessage() : cause), cause);
+        }
+    }
+
+    private SchedulingException outdated(Revision revision, boolean back) {
+        synchronized (undoable) {
+            (back ? undoable : redoable).remove(revision);
+        }
+        return new SchedulingException("\"" + revision.label + "\" cannot be " + (back ? "undone" : "redone")
+                + ": the schedule was changed in the meantime.");
+    }
+
+    // Folds the journal into the snapshot file (see ScheduleJournal.checkpoint)
+    public CompletableFuture<Object> checkpoint() {
+        Metrics.Sample sample = Metrics.CHECKPOINT.start();
+        CompletableFuture<Object> done = journal.checkpoint();
+        done.whenComplete((result, error) -> {
+            if (error == null) {
+                sample.succeeded();
+            }
+            sample.close();
+        });
+        return done;
+    }
+
+    // Minutes of every date from first to last (inclusive) in which nothing can be booked: the
+    // closed hours and the events and occurrences, widened by the rules' buffer. The bitmaps are
+    // copies the caller may change. This is a snapshot; anything planned from it must still be
+    // booked through create or createAll, which check again.
+    public MinuteBitmap[] busyMinutes(LocalDate first, LocalDate last) throws IOException {
+        MinuteBitmap[] busy = new MinuteBitmap[(int) (last.toEpochDay() - first.toEpochDay() + 1)];
+        Set<LocalDate> mondays = new HashSet<>();
+        for (LocalDate monday = first.with(DayOfWeek.MONDAY); !monday.isAfter(last); monday = monday.plusWeeks(1)) {
+            mondays.add(monday);
+        }
+        loadWeeks(mondays);
+        for (int i = 0; i < busy.length; i++) {
+            LocalDate date = first.plusDays(i);
+            Day day = lockDay(date);
+            try {
+                busy[i] = busyWithSeries(day, date, true);
+            } finally {
+                day.lock.unlock();
+            }
+        }
+        return busy;
+    }
+
+    // The day's busy minutes with the series occurring on the date added. Called with the
+    // day's lock held; the day's own bitmap is returned if nothing is added and copy is false.
+    private MinuteBitmap busyWithSeries(Day day, LocalDate date, boolean copy) {
+        MinuteBitmap busy = copy ? day.busy.copy() : day.busy;
+        for (Recurrence recurrence : series) {
+            if (recurrence.occursOn(date)) {
+                if (busy == day.busy) {
+                    busy = busy.copy();
+                }
+                busy.set(Math.max(recurrence.startTime.toSecondOfDay() / 60 - rules.bufferMinutes(), 0),
+                        Math.min(recurrence.endTime.toSecondOfDay() / 60 + rules.bufferMinutes(), MinuteBitmap.MINUTES));
+            }
+        }
+        return busy;
+    }
+
+    private static int minuteOfDay(LocalDateTime time) {
+        return time.getHour() * 60 + time.getMinute();
+    }
+
+    // The time moved by the given minutes, but not past either end of the day
+    private static LocalTime widen(LocalTime time, int minutes) {
+        int second = time.toSecondOfDay() + minutes * 60;
+        return second < 0 ? LocalTime.MIN : second >= 24 * 60 * 60 ? LocalTime.MAX : LocalTime.ofSecondOfDay(second);
+    }
+
+    // Called with the series read lock and the day's lock held. Events closer to the booking
+    // than the rules' buffer count as overlapping.
+    private void checkFree(Day day, LocalDateTime start, LocalDateTime end, WeeklySchedulerApp.Event ignored) throws SchedulingException {
+        long began = System.nanoTime();
+        boolean free = false;
+        try {
+            int buffer = rules.bufferMinutes();
+            WeeklySchedulerApp.Event other = day.events().findOverlap(start.minusMinutes(buffer), end.plusMinutes(buffer), ignored);
+            if (other != null) {
+                throw new SchedulingException(other.startTime.isBefore(end) && other.endTime.isAfter(start)
+                        ? "Event time overlaps with an existing event."
+                        : "Events must be at least " + buffer + " minutes apart.");
+            }
+            checkSeriesFree(start, end);
+            free = true;
+        } finally {
+            Metrics.OVERLAP_CHECK.record(System.nanoTime() - began, free);
+        }
+    }
+
+    // Called with the series lock held
+    private void checkSeriesFree(LocalDateTime start, LocalDateTime end) throws SchedulingException {
+        LocalDate date = start.toLocalDate();
+        LocalTime from = widen(start.toLocalTime(), -rules.bufferMinutes());
+        LocalTime to = widen(end.toLocalTime(), rules.bufferMinutes());
+        for (Recurrence recurrence : series) {
+            if (recurrence.occursOn(date) && recurrence.timesOverlap(from, to)) {
+                throw new SchedulingException("Event time overlaps with the recurring event \"" + recurrence.name + "\".");
+            }
+        }
+    }
+
+    // Called with the series write lock held, so no single event can be booked meanwhile. Only
+    // the weeks that have events are read, a batch at a time, and those that were not in memory
+    // before are dropped again afterwards.
+    private void checkSingleEventsFree(Recurrence recurrence) throws SchedulingException, IOException {
+        LocalDate firstMonday = recurrence.start.with(DayOfWeek.MONDAY);
+        List<LocalDate> mondays = new ArrayList<>();
+        for (LocalDate monday : journal.weeksWithEvents()) {
+            if (!monday.isBefore(firstMonday) && (recurrence.until == null || !monday.isAfter(recurrence.until))) {
+                mondays.add(monday);
+            }
+        }
+        for (int batch = 0; batch < mondays.size(); batch += PREFETCH_WEEKS) {
+            Set<LocalDate> batchMondays = new HashSet<>(mondays.subList(batch, Math.min(mondays.size(), batch + PREFETCH_WEEKS)));
+            List<LocalDate> notLoaded = new ArrayList<>();
+            for (LocalDate monday : batchMondays) {
+                if (!isWeekLoaded(monday)) {
+                    notLoaded.add(monday);
+                }
+            }
+            loadWeeks(batchMondays);
+            try {
+                for (LocalDate monday : batchMondays) {
+                    for (LocalDate date = monday; date.isBefore(monday.plusWeeks(1)); date = date.plusDays(1)) {
+                        if (!recurrence.occursOn(date)) {
+                            continue;
+                        }
+                        Day day = lockDay(date);
+                        try {
+                            WeeklySchedulerApp.Event other = day.events().findOverlap(date.atTime(widen(recurrence.startTime, -rules.bufferMinutes())),
+                                    date.atTime(widen(recurrence.endTime, rules.bufferMinutes())));
+                            if (other != null) {
+                                throw new SchedulingException("The series overlaps with \"" + other.name + "\" on " + date + ".");
+                            }
+                        } finally {
+                            day.lock.unlock();
+                        }
+                    }
+                }
+            } finally {
+                for (LocalDate monday : notLoaded) {
+                    unloadWeek(monday);
+                }
+            }
+        }
+    }
+
+    // Replaces a series with a changed copy, or deletes it if replacement is null
+    private Recurrence replaceSeries(Recurrence recurrence, Recurrence replacement) throws SchedulingException, IOException {
+        seriesLock.writeLock().lock();
+        try {
+            List<Recurrence> updated = new ArrayList<>(series);
+            int index = updated.indexOf(recurrence);
+            if (index < 0) {
+                throw new SchedulingException("The event was changed or deleted in the meantime.");
+            }
+            if (replacement == null) {
+                updated.remove(index);
+            } else {
+                updated.set(index, replacement);
+            }
+            storeSeries((replacement == null ? "Delete" : "Change") + " series \"" + recurrence.name + "\"", updated);
+            return replacement;
+        } finally {
+            seriesLock.writeLock().unlock();
+        }
+    }
+
+    // Called with the series write lock held
+    private void storeSeries(String label, List<Recurrence> updated) throws IOException {
+        Revision revision = new Revision(label);
+        revision.seriesBefore = series;
+        revision.seriesAfter = writeSeries(updated);
+        remember(revision);
+    }
+
+    // Called with the series write lock held; returns the list now in series
+    private List<Recurrence> writeSeries(List<Recurrence> updated) throws IOException {
+        SeriesStore.write(seriesFile, updated);
+        List<Recurrence> stored = Collections.unmodifiableList(updated);
+        series = stored;
+        for (Listener listener : listeners) {
+            listener.seriesChanged();
+        }
+        return stored;
+    }
+
+    // Adds the occurrences from from (inclusive) to to (exclusive) to the events, by start
+    private List<WeeklySchedulerApp.Event> withOccurrences(List<WeeklySchedulerApp.Event> events, LocalDate from, LocalDate to) {
+        List<Recurrence> current = series;
+        if (current.isEmpty()) {
+            return events;
+        }
+        for (Recurrence recurrence : current) {
+            events.addAll(recurrence.occurrences(from, to));
+        }
+        events.sort(Comparator.comparing(event -> event.startTime));
+        return events;
+    }
+
+    private static void checkCurrent(Day day, WeeklySchedulerApp.Event event) throws SchedulingException {
+        if (!day.events().contains(event)) {
+            throw new SchedulingException("The event was changed or deleted in the meantime.");
+        }
+    }
+
+    // Takes removed out of source and puts added into target (either pair may be null). Both
+    // days are published in one step when they are in the same week, so a moved event is never
+    // seen twice or not at all. Called with the days' locks held.
+    private static void replace(Revision revision, Day source, WeeklySchedulerApp.Event removed, Day target, WeeklySchedulerApp.Event added) {
+        if (source != null) {
+            revision.touch(source);
+        }
+        if (target != null) {
+            revision.touch(target);
+        }
+        if (source != null && target != null && source.week == target.week) {
+            EventTree[] replaced = new EventTree[7];
+            replaced[source.index] = source.events().without(removed);
+            replaced[target.index] = replaced[target.index] != null ? replaced[target.index].with(added) : target.events().with(added);
+            source.week.publish(replaced);
+            source.unmarkBusy(removed, replaced[source.index]);
+            target.markBusy(added);
+        } else {
+            if (source != null) {
+                EventTree[] replaced = new EventTree[7];
+                replaced[source.index] = source.events().without(removed);
+                source.week.publish(replaced);
+                source.unmarkBusy(removed, replaced[source.index]);
+            }
+            if (target != null) {
+                EventTree[] replaced = new EventTree[7];
+                replaced[target.index] = target.events().with(added);
+                target.week.publish(replaced);
+                target.markBusy(added);
+            }
+        }
+        if (source != null) {
+            revision.after.put(source, source.events());
+        }
+        if (target != null) {
+            revision.after.put(target, target.events());
+        }
+    }
+
+    // Puts back the tree the day had before the revision touched it and forgets the day, so the
+    // revision before it can still be undone. Called with the day's lock held.
+    private static void restore(Revision revision, Day day) {
+        EventTree[] replaced = new EventTree[7];
+        replaced[day.index] = revision.before.remove(day);
+        revision.after.remove(day);
+        day.week.publish(replaced);
+        day.resetBusy();
+    }
+
+    private void fire(Revision revision, WeeklySchedulerApp.Event removed, WeeklySchedulerApp.Event added) {
+        if (revision.steps.size() <= UNDO_MAX_STEPS) {
+            revision.steps.add(new WeeklySchedulerApp.Event[] {removed, added});
+        }
+        fire(removed, added);
+    }
+
+    private void fire(WeeklySchedulerApp.Event removed, WeeklySchedulerApp.Event added) {
+        for (Listener listener : listeners) {
+            listener.eventChanged(removed, added);
+        }
+    }
+
+    // Keeps the change for undo, with the days' locks still held so the history is in the same
+    // order as the changes. A new change cannot be redone past, so redo is forgotten.
+    private void remember(Revision revision) {
+        synchronized (undoable) {
+            if (undoLimit == 0) {
+                return;
+            }
+            if (revision.steps.isEmpty() && revision.seriesAfter == null) {
+                return;
+            }
+            redoable.clear();
+            if (revision.steps.size() > UNDO_MAX_STEPS) {
+                undoable.clear(); // Too large to keep; what came before it cannot be undone past it either
+                return;
+            }
+            undoable.push(revision);
+            while (undoable.size() > undoLimit) {
+                undoable.removeLast();
+            }
+        }
+    }
+
+    private boolean isKeptForUndo(Week week) {
+        synchronized (undoable) {
+            for (Deque<Revision> revisions : List.of(undoable, redoable)) {
+                for (Revision revision : revisions) {
+                    for (Day day : revision.before.keySet()) {
+                        if (day.week == week) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    // Locks the day of a loaded week, retrying if the week is unloaded while we wait
+    private Day lockDay(LocalDate date) throws IOException {
+        LocalDate monday = date.with(DayOfWeek.MONDAY);
+        int index = (int) (date.toEpochDay() - monday.toEpochDay());
+        while (true) {
+            Day day = loadedWeek(monday).days[index];
+            day.lock.lock();
+            if (!day.week.dropped) {
+                return day;
+            }
+            day.lock.unlock();
+        }
+    }
+
+
+    // Reads the weeks that are not in memory yet with a single pass over the journal. A week is
+    // only filled in if no week was unloaded since the read: its changes made in memory and
+    // journaled after the read could otherwise be lost. lockDay then reads such a week itself.
+    private void loadWeeks(Set<LocalDate> mondays) throws IOException {
+        List<LocalDate> missing = new ArrayList<>();
+        for (LocalDate monday : mondays) {
+            if (!isWeekLoaded(monday)) {
+                missing.add(monday);
+            }
+        }
+        if (missing.size() < 2) {
+            return; // Nothing to gain over loading on first use
+        }
+        long unloadsBefore = unloads.get();
+        Map<LocalDate, List<WeeklySchedulerApp.Event>> loaded;
+        try (Metrics.Sample sample = Metrics.LOAD_WEEKS.start()) {
+            loaded = journal.loadWeeks(missing);
+            sample.succeeded();
+        }
+        for (LocalDate monday : missing) {
+            Week week = weeks.computeIfAbsent(monday, m -> new Week(m, rules));
+            synchronized (week) {
+                if (!week.loaded && unloads.get() == unloadsBefore) {
+                    fill(week, loaded.get(monday));
+                }
+            }
+            touch(monday);
+        }
+    }
+
+    // Returns the week, reading it from the journal first if needed. Only one thread reads a
+    // given week; others asking for it meanwhile wait for that read.
+    private Week loadedWeek(LocalDate monday) throws IOException {
+        Week week = weeks.computeIfAbsent(monday, m -> new Week(m, rules));
+        synchronized (week) {
+            if (!week.loaded) {
+                try (Metrics.Sample sample = Metrics.LOAD_WEEKS.start()) {
+                    fill(week, journal.loadWeek(monday));
+                    sample.succeeded();
+                }
+            }
+        }
+        touch(monday);
+        return week;
+    }
+
+    // Called with the week's monitor held, before any of its days can be locked
+    private static void fill(Week week, List<WeeklySchedulerApp.Event> events) {
+        EventTree[] trees = week.version.get().clone();
+        for (WeeklySchedulerApp.Event event : events) {
+            int index = (int) (event.startTime.toLocalDate().toEpochDay() - week.monday.toEpochDay());
+            trees[index] = trees[index].with(event);
+            week.days[index].markBusy(event);
+        }
+        week.version.set(trees);
+        week.loaded = true;
+    }
+}
@@ -0,0 +1,502 @@
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Finds events by the words of their name and location without scanning the schedule. Each
+// word (lower case, split at anything but letters and digits) has the events containing it,
+// sorted by start; the words themselves are sorted for prefix lookups and indexed by their
+// three-letter substrings, so "room" also finds "Boardroom". A query matches the events that
+// contain every query word as part of one of their words (words shorter than three letters
+// only as a prefix).
+//
+// The events are held in a PackedEvents table and the postings are sorted arrays of longs
+// (start minute in the high half, slot in the low half), so the index of a long history takes
+// a few dozen bytes per event and creates Event objects only for the results it returns.
+//
+// The index is built once from the journal on a background thread and kept current through
+// the engine listener. Changes that arrive while it is being built are replayed at the end,
+// so an event read from disk before it was deleted does not linger. Recurring events are few
+// and are matched directly against engine.series().
+public class SearchIndex implements SchedulerEngine.Listener {
+    private static final int BUILD_BATCH_WEEKS = 52; // Weeks read from the journal at once
+    private static final int GRAM = 3;
+    private static final String[] NO_WORDS = {};
+
+    private final SchedulerEngine engine;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final PackedEvents events = new PackedEvents(); // Guarded by lock
+    private final TreeMap<String, Postings> postings = new TreeMap<>(); // Guarded by lock
+    private final Map<String, Set<String>> wordsByGram = new HashMap<>(); // Guarded by lock
+    private final List<String[]> stringWords = new ArrayList<>(); // Words of each string id of events, guarded by lock
+    private List<WeeklySchedulerApp.Event[]> changesWhileBuilding = new ArrayList<>(); // {removed, added}, null once built
+
+    // Registers with the engine and starts building the index from the journal
+    public SearchIndex(SchedulerEngine engine, ScheduleJournal journal) {
+        this.engine = engine;
+        engine.addListener(this);
+        Thread builder = new Thread(() -> build(journal), "search-index");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    @Override
+    public void eventChanged(WeeklySchedulerApp.Event removed, WeeklySchedulerApp.Event added) {
+        lock.writeLock().lock();
+        try {
+            if (changesWhileBuilding != null) {
+                changesWhileBuilding.add(new WeeklySchedulerApp.Event[]{removed, added});
+            }
+            apply(removed, added);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // False while the index is still being built; searches then miss events not read yet
+    public boolean isReady() {
+        lock.readLock().lock();
+        try {
+            return changesWhileBuilding == null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return events.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Approximate heap taken by the index, in bytes
+    public long footprint() {
+        lock.readLock().lock();
+        try {
+            long bytes = events.footprint();
+            for (Map.Entry<String, Postings> word : postings.entrySet()) {
+                bytes += 96 + 2L * word.getKey().length() + word.getValue().footprint(); // Word, map entry and postings
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Up to limit events matching the query: those starting at or after from in order, then
+    // earlier ones, most recent first. A recurring event is found as its next occurrence.
+    public List<WeeklySchedulerApp.Event> search(String query, LocalDateTime from, int limit) {
+        try (Metrics.Sample sample = Metrics.SEARCH.start()) {
+            List<WeeklySchedulerApp.Event> results = searchTimed(query, from, limit);
+            sample.succeeded();
+            return results;
+        }
+    }
+
+    private List<WeeklySchedulerApp.Event> searchTimed(String query, LocalDateTime from, int limit) {
+        List<String> terms = words(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<WeeklySchedulerApp.Event> upcoming = new ArrayList<>();
+        List<WeeklySchedulerApp.Event> earlier = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            // Walk the postings of the term with the fewest events and check the other terms
+            List<Postings> driver = null;
+            long driverSize = Long.MAX_VALUE;
+            for (String term : terms) {
+                List<Postings> lists = new ArrayList<>();
+                long total = 0;
+                for (String word : matchingWords(term)) {
+                    Postings list = postings.get(word);
+                    lists.add(list);
+                    total += list.size;
+                }
+                if (total < driverSize) {
+                    driver = lists;
+                    driverSize = total;
+                }
+            }
+            if (driverSize > 0) {
+                long fromKey = key(ScheduleFile.toMinute(from), 0);
+                collect(driver, fromKey, false, terms, limit, upcoming);
+                collect(driver, fromKey, true, terms, limit, earlier);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        LocalDate fromDate = from.toLocalDate();
+        for (Recurrence recurrence : engine.series()) {
+            if (matchesAll(terms, words(recurrence.name, recurrence.location))) {
+                LocalDate date = recurrence.nextOccurrence(fromDate);
+                if (date != null) {
+                    upcoming.addAll(recurrence.occurrences(date, date.plusDays(1)));
+                }
+            }
+        }
+        upcoming.sort(Comparator.comparing(event -> event.startTime));
+        List<WeeklySchedulerApp.Event> results = new ArrayList<>(upcoming.subList(0, Math.min(limit, upcoming.size())));
+        results.addAll(earlier.subList(0, Math.min(limit - results.size(), earlier.size())));
+        return results;
+    }
+
+    // Merges the postings from the key on (or before it, descending) and keeps the first limit
+    // distinct events matching all terms. Called with the read lock held.
+    private void collect(List<Postings> lists, long fromKey, boolean descending, List<String> terms, int limit,
+                         List<WeeklySchedulerApp.Event> out) {
+        PriorityQueue<Postings.Cursor> heads = new PriorityQueue<>(Math.max(1, lists.size()),
+                descending ? (a, b) -> Long.compare(b.key, a.key) : (a, b) -> Long.compare(a.key, b.key));
+        for (Postings list : lists) {
+            Postings.Cursor cursor = list.cursor(fromKey, descending);
+            if (cursor.next()) {
+                heads.add(cursor);
+            }
+        }
+        long last = 0;
+        boolean first = true;
+        while (out.size() < limit && !heads.isEmpty()) {
+            Postings.Cursor head = heads.poll();
+            long key = head.key;
+            if (head.next()) {
+                heads.add(head);
+            }
+            int slot = (int) key;
+            if ((first || key != last) && matchesAll(terms, slot)) {
+                out.add(events.toEvent(slot));
+            }
+            first = false;
+            last = key;
+        }
+    }
+
+    // Words of the index the term matches, found through the sorted words or the substrings
+    private List<String> matchingWords(String term) {
+        if (term.length() < GRAM) {
+            return new ArrayList<>(postings.subMap(term, true, term + Character.MAX_VALUE, false).keySet());
+        }
+        Set<String> smallest = null;
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            Set<String> words = wordsByGram.get(term.substring(i, i + GRAM));
+            if (words == null) {
+                return Collections.emptyList();
+            }
+            if (smallest == null || words.size() < smallest.size()) {
+                smallest = words;
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (String word : smallest) {
+            if (word.contains(term)) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    // Checks a stored event through the cached words of its strings, without decoding it
+    private boolean matchesAll(List<String> terms, int slot) {
+        String[] nameWords = wordsOf(events.nameId(slot));
+        String[] locationWords = wordsOf(events.locationId(slot));
+        for (String term : terms) {
+            if (!matches(term, nameWords) && !matches(term, locationWords)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesAll(List<String> terms, List<String> words) {
+        for (String term : terms) {
+            if (!matches(term, words.toArray(NO_WORDS))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(String term, String[] words) {
+        for (String word : words) {
+            if (term.length() < GRAM ? word.startsWith(term) : word.contains(term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String[] wordsOf(int stringId) {
+        return stringId < 0 ? NO_WORDS : stringWords.get(stringId);
+    }
+
+    // Lower-case words of the texts, each once
+    private static List<String> words(String... texts) {
+        List<String> words = new ArrayList<>();
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+            int start = -1;
+            for (int i = 0; i <= text.length(); i++) {
+                boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+                if (inWord && start < 0) {
+                    start = i;
+                } else if (!inWord && start >= 0) {
+                    String word = text.substring(start, i).toLowerCase(Locale.ROOT);
+                    if (!words.contains(word)) {
+                        words.add(word);
+                    }
+                    start = -1;
+                }
+            }
+        }
+        return words;
+    }
+
+    private static long key(int startMinute, int slot) {
+        return (long) startMinute << 32 | (slot & 0xFFFFFFFFL);
+    }
+
+    // Slot holding the event, or -1. Events without words are not indexed at all.
+    private int find(WeeklySchedulerApp.Event event, List<String> words) {
+        Postings list = words.isEmpty() ? null : postings.get(words.get(0));
+        if (list == null) {
+            return -1;
+        }
+        int start = ScheduleFile.toMinute(event.startTime);
+        Postings.Cursor cursor = list.cursor(key(start, 0), false);
+        while (cursor.next() && (int) (cursor.key >> 32) == start) {
+            if (events.matches((int) cursor.key, event)) {
+                return (int) cursor.key;
+            }
+        }
+        return -1;
+    }
+
+    // Called with the write lock held. Adding and removing are idempotent, so replaying the
+    // changes made while building gives the same index whichever version the build read.
+    private void apply(WeeklySchedulerApp.Event removed, WeeklySchedulerApp.Event added) {
+        if (removed != null) {
+            List<String> words = words(removed.name, removed.location);
+            int slot = find(removed, words);
+            if (slot >= 0) {
+                long key = key(events.start(slot), slot);
+                for (String word : words) {
+                    Postings list = postings.get(word);
+                    list.remove(key);
+                    if (list.size == 0) {
+                        postings.remove(word);
+                        forEachGram(word, gram -> {
+                            Set<String> gramWords = wordsByGram.get(gram);
+                            gramWords.remove(word);
+                            if (gramWords.isEmpty()) {
+                                wordsByGram.remove(gram);
+                            }
+                        });
+                    }
+                }
+                events.remove(slot);
+            }
+        }
+        if (added != null) {
+            List<String> words = words(added.name, added.location);
+            if (words.isEmpty() || find(added, words) >= 0) {
+                return;
+            }
+            int slot = events.add(added);
+            while (stringWords.size() < events.stringCount()) { // Strings the event added to the table
+                stringWords.add(words(events.string(stringWords.size())).toArray(NO_WORDS));
+            }
+            long key = key(events.start(slot), slot);
+            for (String word : words) {
+                Postings list = postings.get(word);
+                if (list == null) {
+                    list = new Postings();
+                    postings.put(word, list);
+                    forEachGram(word, gram -> wordsByGram.computeIfAbsent(gram, g -> new HashSet<>()).add(word));
+                }
+                list.add(key);
+            }
+        }
+    }
+
+    private static void forEachGram(String word, Consumer<String> action) {
+        for (int i = 0; i + GRAM <= word.length(); i++) {
+            action.accept(word.substring(i, i + GRAM));
+        }
+    }
+
+    // Runs on the builder thread; the lock is taken per batch so changes are not held up
+    private void build(ScheduleJournal journal) {
+        try (Metrics.Sample sample = Metrics.SEARCH_INDEX_BUILD.start()) {
+            try {
+                List<LocalDate> mondays = new ArrayList<>(journal.weeksWithEvents());
+                for (int i = 0; i < mondays.size(); i += BUILD_BATCH_WEEKS) {
+                    Map<LocalDate, List<WeeklySchedulerApp.Event>> weeks =
+                            journal.loadWeeks(mondays.subList(i, Math.min(mondays.size(), i + BUILD_BATCH_WEEKS)));
+                    lock.writeLock().lock();
+                    try {
+                        for (List<WeeklySchedulerApp.Event> week : weeks.values()) {
+                            for (WeeklySchedulerApp.Event event : week) {
+                                apply(null, event);
+                            }
+                        }
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }
+                sample.succeeded();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not build the search index: " + e);
+            } finally {
+                replayChangesWhileBuilding(); // Even after a failure, or the index would buffer changes forever
+            }
+        }
+    }
+
+    // Applies the changes buffered during the build and from then on lets them through directly
+    private void replayChangesWhileBuilding() {
+        lock.writeLock().lock();
+        try {
+            for (WeeklySchedulerApp.Event[] change : changesWhileBuilding) {
+                apply(change[0], change[1]);
+            }
+        } finally {
+            changesWhileBuilding = null;
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Sorted set of keys kept in chunks of at most CHUNK, so an insert or removal moves at
+    // most one chunk's keys. Keys added in order fill each chunk before starting the next.
+    private static final class Postings {
+        private static final int CHUNK = 256;
+        private final List<Chunk> chunks = new ArrayList<>();
+        int size;
+
+        private static final class Chunk {
+            final long[] keys = new long[CHUNK];
+            int count;
+        }
+
+        void add(long key) {
+            if (chunks.isEmpty()) {
+                chunks.add(new Chunk());
+            }
+            int c = chunkFor(key);
+            Chunk chunk = chunks.get(c);
+            int i = Arrays.binarySearch(chunk.keys, 0, chunk.count, key);
+            if (i >= 0) {
+                return;
+            }
+            i = -i - 1;
+            if (chunk.count == CHUNK) {
+                Chunk right = new Chunk();
+                if (i < CHUNK) { // Split; past the end a new chunk is started instead
+                    right.count = CHUNK / 2;
+                    chunk.count = CHUNK - right.count;
+                    System.arraycopy(chunk.keys, chunk.count, right.keys, 0, right.count);
+                }
+                chunks.add(c + 1, right);
+                if (i > chunk.count || chunk.count == CHUNK) {
+                    i -= chunk.count;
+                    chunk = right;
+                }
+            }
+            System.arraycopy(chunk.keys, i, chunk.keys, i + 1, chunk.count - i);
+            chunk.keys[i] = key;
+            chunk.count++;
+            size++;
+        }
+
+        void remove(long key) {
+            if (chunks.isEmpty()) {
+                return;
+            }
+            int c = chunkFor(key);
+            Chunk chunk = chunks.get(c);
+            int i = Arrays.binarySearch(chunk.keys, 0, chunk.count, key);
+            if (i < 0) {
+                return;
+            }
+            System.arraycopy(chunk.keys, i + 1, chunk.keys, i, chunk.count - i - 1);
+            size--;
+            if (--chunk.count == 0) {
+                chunks.remove(c);
+            }
+        }
+
+        long footprint() {
+            return 64 + chunks.size() * (CHUNK * 8L + 40);
+        }
+
+        // Last chunk whose first key is at most the key, or the first chunk
+        private int chunkFor(long key) {
+            int low = 0;
+            int high = chunks.size() - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (chunks.get(mid).keys[0] <= key) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+
+        // Keys from the given one on, or below it going down when descending
+        Cursor cursor(long from, boolean descending) {
+            Cursor cursor = new Cursor(descending);
+            if (chunks.isEmpty()) {
+                return cursor; // next() finds nothing either way
+            }
+            cursor.chunk = chunkFor(from);
+            Chunk chunk = chunks.get(cursor.chunk);
+            int i = Arrays.binarySearch(chunk.keys, 0, chunk.count, from);
+            i = i < 0 ? -i - 1 : i; // First key at or after from
+            cursor.index = descending ? i : i - 1; // next() steps onto the first key
+            return cursor;
+        }
+
+        final class Cursor {
+            private final boolean descending;
+            private int chunk;
+            private int index;
+            long key;
+
+            private Cursor(boolean descending) {
+                this.descending = descending;
+            }
+
+            // Moves to the next key; false once there are none left
+            boolean next() {
+                if (descending) {
+                    index--;
+                    while (index < 0) {
+                        if (--chunk < 0) {
+                            return false;
+                        }
+                        index = chunks.get(chunk).count - 1;
+                    }
+                } else {
+                    index++;
+                    while (chunk < chunks.size() && index >= chunks.get(chunk).count) {
+                        chunk++;
+                        index = 0;
+                    }
+                    if (chunk >= chunks.size()) {
+                        return false;
+                    }
+                }
+                key = chunks.get(chunk).keys[index];
+                return true;
+            }
+        }
+    }
+}
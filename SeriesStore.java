@@ -0,0 +1,144 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// File holding the recurring event definitions (<snapshot>.series). There are few of them, so
+// every change rewrites the whole file: written to a temp file, fsynced and renamed over the
+// old one, like the schedule snapshot.
+//
+// Layout (big endian): magic "WSRS", u16 version, u16 reserved, i32 series count, then per
+// series: i64 id, name, location and color (i32 UTF-8 length, -1 for null, then the bytes),
+// u8 frequency, i32 interval, u8 weekday bits (bit 0 = Monday), i32 start epoch day, i32 end
+// epoch day (NO_END if none), u16 start and end minute of the day, i32 skipped date count and
+// their epoch days. A CRC32 of everything before it closes the file.
+public class SeriesStore {
+    static final int MAGIC = 0x57535253; // "WSRS"
+    static final int VERSION = 1;
+    private static final int NO_END = Integer.MIN_VALUE;
+
+    public static List<Recurrence> read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return new ArrayList<>();
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length < 16) {
+            throw new IOException("Series file is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt(bytes.length - 4) != (int) crc.getValue()) {
+            throw new IOException("Series file is corrupt (checksum mismatch)");
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a series file");
+        }
+        int version = buffer.getShort() & 0xFFFF;
+        if (version != VERSION) {
+            throw new IOException("Unsupported series file version " + version);
+        }
+        buffer.getShort();
+        int count = buffer.getInt();
+        List<Recurrence> series = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long id = buffer.getLong();
+            String name = readString(buffer);
+            String location = readString(buffer);
+            String color = readString(buffer);
+            Recurrence.Frequency frequency = Recurrence.Frequency.values()[buffer.get()];
+            int interval = buffer.getInt();
+            int weekdayBits = buffer.get();
+            Set<DayOfWeek> weekdays = EnumSet.noneOf(DayOfWeek.class);
+            for (DayOfWeek day : DayOfWeek.values()) {
+                if ((weekdayBits & 1 << day.ordinal()) != 0) {
+                    weekdays.add(day);
+                }
+            }
+            LocalDate start = LocalDate.ofEpochDay(buffer.getInt());
+            int end = buffer.getInt();
+            LocalTime startTime = LocalTime.ofSecondOfDay((buffer.getShort() & 0xFFFF) * 60L);
+            LocalTime endTime = LocalTime.ofSecondOfDay((buffer.getShort() & 0xFFFF) * 60L);
+            NavigableSet<LocalDate> exceptions = new TreeSet<>();
+            for (int skipped = buffer.getInt(); skipped > 0; skipped--) {
+                exceptions.add(LocalDate.ofEpochDay(buffer.getInt()));
+            }
+            series.add(new Recurrence(id, name, location, color, frequency, interval, weekdays, start,
+                    end == NO_END ? null : LocalDate.ofEpochDay(end), startTime, endTime, exceptions));
+        }
+        return series;
+    }
+
+    public static void write(Path file, List<Recurrence> series) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        out.writeInt(series.size());
+        for (Recurrence recurrence : series) {
+            out.writeLong(recurrence.id);
+            writeString(out, recurrence.name);
+            writeString(out, recurrence.location);
+            writeString(out, recurrence.color);
+            out.writeByte(recurrence.frequency.ordinal());
+            out.writeInt(recurrence.interval);
+            int weekdayBits = 0;
+            for (DayOfWeek day : recurrence.weekdays) {
+                weekdayBits |= 1 << day.ordinal();
+            }
+            out.writeByte(weekdayBits);
+            out.writeInt(Math.toIntExact(recurrence.start.toEpochDay()));
+            out.writeInt(recurrence.until == null ? NO_END : Math.toIntExact(recurrence.until.toEpochDay()));
+            out.writeShort(recurrence.startTime.toSecondOfDay() / 60);
+            out.writeShort(recurrence.endTime.toSecondOfDay() / 60);
+            out.writeInt(recurrence.exceptions.size());
+            for (LocalDate skipped : recurrence.exceptions) {
+                out.writeInt(Math.toIntExact(skipped.toEpochDay()));
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        Path temp = ScheduleFile.tempFileFor(file);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Path fileFor(Path snapshotFile) {
+        return snapshotFile.resolveSibling(snapshotFile.getFileName() + ".series");
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,70 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
+
+// What the window showed when it was last closed: the Monday of the week on screen and that
+// week's events, in a small file next to the schedule (schedule.dat.startup). Startup reads it
+// before anything else and opens straight to that week, painting these events while the
+// journal is recovered and the week is read properly in the background. It is only a picture:
+// nothing is ever booked against it, and it is replaced as soon as the real week arrives.
+//
+// Layout (big endian): magic "WSUP", u16 version, u16 reserved, i32 epoch day of the Monday,
+// i32 segment length, i32 CRC32 of the segment, then the week encoded as a ScheduleFile segment.
+public final class StartupSnapshot {
+    static final int MAGIC = 0x57535550; // "WSUP"
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+
+    public final LocalDate monday;
+    public final List<WeeklySchedulerApp.Event> events;
+
+    private StartupSnapshot(LocalDate monday, List<WeeklySchedulerApp.Event> events) {
+        this.monday = monday;
+        this.events = events;
+    }
+
+    public static Path fileFor(Path snapshotFile) {
+        return snapshotFile.resolveSibling(snapshotFile.getFileName() + ".startup");
+    }
+
+    // The saved picture, or null if there is none or it cannot be used; startup then falls
+    // back to the current week, so a damaged file costs nothing but the head start
+    public static StartupSnapshot read(Path file) {
+        try {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                return null;
+            }
+            buffer.getShort(); // Reserved
+            LocalDate monday = LocalDate.ofEpochDay(buffer.getInt());
+            int length = buffer.getInt();
+            int crc = buffer.getInt();
+            if (length != buffer.remaining() || monday.getDayOfWeek() != DayOfWeek.MONDAY) {
+                return null;
+            }
+            return new StartupSnapshot(monday, ScheduleFile.decodeSegment(buffer.slice(), crc));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Replaces the file through a temp file, so a crash leaves either the old or the new one
+    public static void write(Path file, LocalDate monday, List<WeeklySchedulerApp.Event> events) throws IOException {
+        ScheduleFile.Segment segment = ScheduleFile.encodeSegment(monday, events);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + segment.length);
+        out.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0);
+        out.putInt((int) monday.toEpochDay()).putInt(segment.length).putInt(segment.crc);
+        out.put(segment.bytes.duplicate());
+        Path temp = ScheduleFile.tempFileFor(file);
+        Files.write(temp, out.array());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
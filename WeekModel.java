@@ -0,0 +1,141 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Prepared display model of one week: events bucketed per day and per hour of the day, plus the
+// side-by-side lane layout for events that overlap. Built off the Event Dispatch Thread and
+// then only read or changed on it, so switching the grid to a prepared week costs nothing.
+public class WeekModel {
+    final LocalDate monday;
+    private final List<List<WeeklySchedulerApp.Event>> days = new ArrayList<>(7);
+    private final List<List<WeeklySchedulerApp.Event>> cells = new ArrayList<>(7 * 24); // All 24 hours, whichever the grid shows
+    private final Map<WeeklySchedulerApp.Event, int[]> lanes = new IdentityHashMap<>(); // Event -> {lane, lane count}
+
+    private WeekModel(LocalDate monday) {
+        this.monday = monday;
+        for (int day = 0; day < 7; day++) {
+            days.add(new ArrayList<>());
+        }
+        for (int cell = 0; cell < 7 * 24; cell++) {
+            cells.add(new ArrayList<>());
+        }
+    }
+
+    // Buckets the given events (events outside the week are ignored)
+    public static WeekModel build(LocalDate monday, Collection<WeeklySchedulerApp.Event> events) {
+        WeekModel model = new WeekModel(monday);
+        for (WeeklySchedulerApp.Event event : events) {
+            int day = model.dayIndex(event);
+            if (day >= 0) {
+                model.days.get(day).add(event);
+            }
+        }
+        for (int day = 0; day < 7; day++) {
+            model.days.get(day).sort(Comparator.comparing(event -> event.startTime));
+            model.layoutDay(day);
+        }
+        return model;
+    }
+
+    public static WeekModel empty(LocalDate monday) {
+        return build(monday, Collections.emptyList());
+    }
+
+    public List<WeeklySchedulerApp.Event> day(int day) {
+        return Collections.unmodifiableList(days.get(day));
+    }
+
+    // Events overlapping the given hour (0 = midnight) of the given day
+    public List<WeeklySchedulerApp.Event> cell(int day, int hour) {
+        return Collections.unmodifiableList(cells.get(day * 24 + hour));
+    }
+
+    public int lane(WeeklySchedulerApp.Event event) {
+        int[] lane = lanes.get(event);
+        return lane == null ? 0 : lane[0];
+    }
+
+    public int laneCount(WeeklySchedulerApp.Event event) {
+        int[] lane = lanes.get(event);
+        return lane == null ? 1 : lane[1];
+    }
+
+    // Adds the event and returns the day index whose layout changed, or -1 if outside the week
+    // or already here
+    public int add(WeeklySchedulerApp.Event event) {
+        int day = dayIndex(event);
+        if (day < 0 || lanes.containsKey(event)) {
+            return -1;
+        }
+        List<WeeklySchedulerApp.Event> dayEvents = days.get(day);
+        int i = 0;
+        while (i < dayEvents.size() && !dayEvents.get(i).startTime.isAfter(event.startTime)) {
+            i++;
+        }
+        dayEvents.add(i, event);
+        layoutDay(day);
+        return day;
+    }
+
+    // Removes the event and returns the day index whose layout changed, or -1 if it was not here
+    public int remove(WeeklySchedulerApp.Event event) {
+        int day = dayIndex(event);
+        if (day < 0 || !days.get(day).remove(event)) {
+            return -1;
+        }
+        lanes.remove(event);
+        layoutDay(day);
+        return day;
+    }
+
+    public int dayIndex(WeeklySchedulerApp.Event event) {
+        LocalDate date = event.startTime.toLocalDate();
+        if (date.isBefore(monday) || !date.isBefore(monday.plusDays(7))) {
+            return -1;
+        }
+        return (int) (date.toEpochDay() - monday.toEpochDay());
+    }
+
+    // Recomputes hour buckets and lanes for one day. Events are sorted by start, so each run of
+    // mutually overlapping events forms a cluster and every event takes the first free lane in it.
+    private void layoutDay(int day) {
+        for (int hour = 0; hour < 24; hour++) {
+            cells.get(day * 24 + hour).clear();
+        }
+        List<WeeklySchedulerApp.Event> cluster = new ArrayList<>();
+        List<LocalDateTime> laneEnds = new ArrayList<>();
+        LocalDateTime clusterEnd = null;
+        for (WeeklySchedulerApp.Event event : days.get(day)) {
+            if (clusterEnd != null && !event.startTime.isBefore(clusterEnd)) {
+                closeCluster(cluster, laneEnds.size());
+                laneEnds.clear();
+            }
+            int lane = 0;
+            while (lane < laneEnds.size() && laneEnds.get(lane).isAfter(event.startTime)) {
+                lane++;
+            }
+            if (lane == laneEnds.size()) {
+                laneEnds.add(event.endTime);
+            } else {
+                laneEnds.set(lane, event.endTime);
+            }
+            lanes.put(event, new int[]{lane, 1});
+            cluster.add(event);
+            clusterEnd = cluster.size() == 1 || event.endTime.isAfter(clusterEnd) ? event.endTime : clusterEnd;
+
+            int first = event.startTime.getHour();
+            int last = event.endTime.getHour() - (event.endTime.getMinute() == 0 ? 1 : 0); // Events never span midnight
+            for (int hour = first; hour <= Math.max(first, last); hour++) {
+                cells.get(day * 24 + hour).add(event);
+            }
+        }
+        closeCluster(cluster, laneEnds.size());
+    }
+
+    private void closeCluster(List<WeeklySchedulerApp.Event> cluster, int laneCount) {
+        for (WeeklySchedulerApp.Event event : cluster) {
+            lanes.get(event)[1] = laneCount;
+        }
+        cluster.clear();
+    }
+}
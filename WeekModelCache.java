@@ -0,0 +1,43 @@
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Bounded least-recently-used cache of prepared week models, keyed by Monday.
+// Only used on the Event Dispatch Thread, so it needs no locking.
+public class WeekModelCache {
+    private final LinkedHashMap<LocalDate, WeekModel> models;
+
+    public WeekModelCache(int capacity, Consumer<LocalDate> onEvict) {
+        models = new LinkedHashMap<>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<LocalDate, WeekModel> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                onEvict.accept(eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    public WeekModel get(LocalDate monday) {
+        return models.get(monday);
+    }
+
+    public boolean contains(LocalDate monday) {
+        return models.containsKey(monday);
+    }
+
+    public void put(WeekModel model) {
+        models.put(model.monday, model);
+    }
+
+    public void invalidate(LocalDate monday) {
+        models.remove(monday);
+    }
+
+    public void clear() {
+        models.clear();
+    }
+}
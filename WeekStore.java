@@ -0,0 +1,140 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+
+// Read access to a week-segmented schedule file (ScheduleFile version 2).
+// Opening maps only the header and the week -> offset directory; readWeek then maps and
+// decodes a single segment, so the cost of showing a week does not depend on how much
+// history the file holds. Older formats are converted to version 2 the first time they are opened.
+public class WeekStore implements Closeable {
+    private final FileChannel channel;
+    private final int[] weeks; // Epoch day of each segment's Monday, ascending
+    private final int[] eventCounts;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] checksums;
+    private final int eventCount;
+
+    private WeekStore(FileChannel channel, ByteBuffer directory, int segmentCount, int eventCount) {
+        this.channel = channel;
+        this.eventCount = eventCount;
+        weeks = new int[segmentCount];
+        eventCounts = new int[segmentCount];
+        offsets = new long[segmentCount];
+        lengths = new int[segmentCount];
+        checksums = new int[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            weeks[i] = directory.getInt();
+            eventCounts[i] = directory.getInt();
+            offsets[i] = directory.getLong();
+            lengths[i] = directory.getInt();
+            checksums[i] = directory.getInt();
+        }
+    }
+
+    // Opens the store, or returns an empty one if the file does not exist yet
+    public static WeekStore open(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return new WeekStore(null, ByteBuffer.allocate(0), 0, 0);
+        }
+        if (ScheduleFile.isLegacy(file)) {
+            ScheduleFile.migrateLegacy(file);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() < ScheduleFile.HEADER_SIZE) {
+                throw new IOException("Schedule file is truncated");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, ScheduleFile.HEADER_SIZE);
+            if (ScheduleFile.version(header) != ScheduleFile.VERSION) {
+                // Unsegmented file from an older version: rewrite it segmented once
+                channel.close();
+                ScheduleFile.write(file, ScheduleFile.read(file));
+                return open(file);
+            }
+            int segmentCount = header.getInt(12);
+            long directoryEnd = ScheduleFile.HEADER_SIZE + (long) segmentCount * ScheduleFile.DIRECTORY_ENTRY_SIZE;
+            if (segmentCount < 0 || directoryEnd > channel.size()) {
+                throw new IOException("Schedule file directory is truncated");
+            }
+            ByteBuffer headerAndDirectory = channel.map(FileChannel.MapMode.READ_ONLY, 0, directoryEnd);
+            ByteBuffer directory = ScheduleFile.directory(headerAndDirectory, segmentCount);
+            return new WeekStore(channel, directory, segmentCount, header.getInt(8));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int eventCount() {
+        return eventCount;
+    }
+
+    public int eventCount(LocalDate monday) {
+        int i = find(monday);
+        return i < 0 ? 0 : eventCounts[i];
+    }
+
+    public List<LocalDate> weeks() {
+        List<LocalDate> result = new ArrayList<>(weeks.length);
+        for (int week : weeks) {
+            result.add(LocalDate.ofEpochDay(week));
+        }
+        return result;
+    }
+
+    // Maps and decodes the segment of the week starting on the given Monday
+    public List<WeeklySchedulerApp.Event> readWeek(LocalDate monday) throws IOException {
+        int i = find(monday);
+        if (i < 0) {
+            return new ArrayList<>();
+        }
+        return ScheduleFile.decodeSegment(segment(i), checksums[i]);
+    }
+
+    // Segment exactly as stored, for copying unchanged weeks into a rewritten file
+    ScheduleFile.Segment rawSegment(LocalDate monday) {
+        int i = find(monday);
+        return i < 0 ? null : new ScheduleFile.Segment(monday, eventCounts[i], channel, offsets[i], lengths[i], checksums[i]);
+    }
+
+    // Rewrites the file with the given weeks replaced (an empty list drops the week) and every
+    // other segment copied over byte for byte without decoding it
+    public static long rewrite(Path file, Map<LocalDate, List<WeeklySchedulerApp.Event>> replacedWeeks) throws IOException {
+        try (WeekStore store = open(file)) {
+            SortedSet<LocalDate> allWeeks = new TreeSet<>(store.weeks());
+            allWeeks.addAll(replacedWeeks.keySet());
+            List<ScheduleFile.Segment> segments = new ArrayList<>(allWeeks.size());
+            for (LocalDate monday : allWeeks) {
+                List<WeeklySchedulerApp.Event> replaced = replacedWeeks.get(monday);
+                if (replaced == null) {
+                    segments.add(store.rawSegment(monday));
+                } else if (!replaced.isEmpty()) {
+                    segments.add(ScheduleFile.encodeSegment(monday, replaced));
+                }
+            }
+            return ScheduleFile.writeSegments(file, segments);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private ByteBuffer segment(int i) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offsets[i], lengths[i]);
+    }
+
+    private int find(LocalDate monday) {
+        return Arrays.binarySearch(weeks, Math.toIntExact(monday.toEpochDay()));
+    }
+}
@@ -1,72 +1,199 @@
 import javax.swing.*;
 import java.awt.*;
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 // Main class for the weekly scheduler application
 public class WeeklySchedulerApp extends JFrame {
+    private static final Path SCHEDULE_FILE = Paths.get("schedule.dat");
+    private static final Path METRICS_LOG_FILE = Paths.get("scheduler-metrics.log");
+    private static final long EDT_STALL_THRESHOLD_MS = 16; // One frame at 60 Hz
+    static final String[] COLORS = {"Red", "Green", "Yellow", "Blue", "Orange", "Gray"};
+    private static final Map<String, Color> PAINTS = new HashMap<>(); // By COLORS name, looked up for every block painted
+    static {
+        Color[] paints = {Color.RED, Color.GREEN, Color.YELLOW, Color.BLUE, Color.ORANGE, Color.GRAY};
+        for (int i = 0; i < COLORS.length; i++) {
+            PAINTS.put(COLORS[i], paints[i]);
+        }
+    }
+    private static final int SUGGESTED_SLOTS = 8;
+    private static final int SUGGESTION_ALIGN_MINUTES = 15;
+    private static final int SUGGESTION_SEARCH_DAYS = 90;
+    private static final int DIAGNOSTICS_REFRESH_MS = 1000;
+    private static final int SEARCH_RESULTS = 10;
+    private static final int UNDO_LIMIT = 100; // Changes that can be undone in the window
+    private static final long PACK_BUDGET_MS = 2000; // Time the meeting packer may search for a better plan
+    private static final String[] PACK_COLUMNS = {"Name", "Location", "Color", "Minutes", "Priority", "Earliest (YYYY-MM-DD)",
+            "Latest (YYYY-MM-DD)", "Preferred From (HH:MM)", "Preferred To (HH:MM)"};
+    private static final long METRICS_LOG_MINUTES = 10;
+    private static final int API_PORT = 8765; // Default port of the booking API (--server)
+    private static final int SERVER_RESIDENT_WEEKS = Integer.getInteger("scheduler.server.residentWeeks", 256); // Weeks the booking API keeps in memory
+    private static final long AUTOSAVE_QUIET_MS = Long.getLong("scheduler.autosave.quietMs", 2000); // Save once edits pause this long
+    private static final long AUTOSAVE_MAX_DELAY_MS = Long.getLong("scheduler.autosave.maxDelayMs", 30000); // Or at the latest after this
+    private static final String[] REPEAT_OPTIONS = {"Never", "Daily", "Weekly", "Monthly"};
+    private static final Recurrence.Frequency[] RECURRENCE_FREQUENCIES = {
+            Recurrence.Frequency.DAILY, Recurrence.Frequency.WEEKLY, Recurrence.Frequency.MONTHLY}; // For REPEAT_OPTIONS after "Never"
+
+    private static final Map<String, WeeklySchedulerApp> WINDOWS = new HashMap<>(); // Open window of each calendar, EDT only
+    private static long launchNanos = System.nanoTime(); // When the JVM started, on the System.nanoTime scale (see main)
+
     private LocalDate currentMonday;
-    private List<Event> events = new ArrayList<>();
-    private JButton[][] timeSlots; // To keep track of time slots for each day
+    private final CalendarSet calendars; // Every calendar, opened on first use
+    private final String calendarName; // The calendar this window shows
+    private final SchedulerEngine engine; // Holds the schedule and enforces the booking rules
+    private final AutosaveService autosave; // Folds changes into schedule.dat in the background
+    private final SearchIndex searchIndex; // Finds events by name and location
+    private final JPopupMenu searchResults = new JPopupMenu();
+    private ScheduleGrid grid; // Painted week grid showing the events of currentMonday's week
+    private final JLabel[] dayLabels = new JLabel[7];
+    private final WeekModelCache weekModels = new WeekModelCache(12, this::unloadWeek); // Prepared weeks, most recent first
+    private final Set<LocalDate> prefetching = new HashSet<>(); // Weeks being loaded in the background
+    private final Set<LocalDate> changedWhilePrefetching = new HashSet<>(); // Their loaded copy may be stale
+    private final Queue<Event[]> pendingChanges = new ConcurrentLinkedQueue<>(); // {removed, added} from the engine
+    private final AtomicBoolean changesScheduled = new AtomicBoolean();
+    private final BackgroundTasks background = new BackgroundTasks(2); // Runs file I/O and other slow work off the EDT
+    private Metrics.Sample showingWeek; // Times showing currentMonday's week while it is being loaded
+    private JDialog diagnosticsDialog;
+    private CreateEventForm createEventForm; // Built once, see prebuildForms
+    private EditEventForm editEventForm;
+    private WeekModel startupModel; // The week as it was at the last exit, shown until the real one is loaded
+    private List<String> overlayNames = new ArrayList<>(); // Calendars shaded over this one
+    private final Map<String, SchedulerEngine> overlaid = new ConcurrentHashMap<>(); // Their engines once overlayListener is added
+    private final AtomicBoolean overlayScheduled = new AtomicBoolean();
+    private final SchedulerEngine.Listener overlayListener = new SchedulerEngine.Listener() {
+        @Override
+        public void eventChanged(Event removed, Event added) {
+            scheduleOverlayRefresh();
+        }
+
+        @Override
+        public void seriesChanged() {
+            scheduleOverlayRefresh();
+        }
+    };
     
 
     // Constructor
-    public WeeklySchedulerApp(LocalDate initialMonday) {
+    // The startup snapshot (may be null) is shown if it is of the initial week
+    public WeeklySchedulerApp(LocalDate initialMonday, CalendarSet calendars, CalendarSet.Calendar calendar, SearchIndex searchIndex,
+                              StartupSnapshot startup) {
         this.currentMonday = initialMonday;
+        if (startup != null && startup.monday.equals(initialMonday)) {
+            this.startupModel = WeekModel.build(startup.monday, startup.events);
+        }
+        this.calendars = calendars;
+        this.calendarName = calendar.name;
+        this.engine = calendar.engine;
+        this.autosave = calendar.autosave;
+        this.searchIndex = searchIndex;
+        WINDOWS.put(calendarName, this);
+        // Changes may come from other clients of the engine on any thread. They are queued and
+        // applied in one go, so a bulk import does not flood the EDT with one event per change.
+        engine.addListener(new SchedulerEngine.Listener() {
+            @Override
+            public void eventChanged(Event removed, Event added) {
+                pendingChanges.add(new Event[]{removed, added});
+                if (changesScheduled.compareAndSet(false, true)) {
+                    SwingUtilities.invokeLater(WeeklySchedulerApp.this::applyPendingChanges);
+                }
+            }
 
-        setTitle("CEO Weekly Scheduler");
+            @Override
+            public void seriesChanged() {
+                SwingUtilities.invokeLater(WeeklySchedulerApp.this::seriesChanged);
+            }
+        });
+
+        setTitle(calendarName.equals(CalendarSet.MAIN) ? "CEO Weekly Scheduler" : "CEO Weekly Scheduler - " + calendarName);
         setSize(1300, 700);
         setLayout(new BorderLayout());
 
         // Panel for displaying the days of the week (Monday to Sunday)
         JPanel daysPanel = new JPanel(new GridLayout(1, 8)); // 7 days + time column
-        JPanel hoursPanel = new JPanel(new GridLayout(13, 8)); // 13 time slots (8AM to 8PM) + time column
 
         // Create day labels (Monday to Sunday)
         daysPanel.add(new JLabel("Time", SwingConstants.CENTER)); // Time header
         for (int i = 0; i < 7; i++) {
-            LocalDate day = currentMonday.plusDays(i);
-            JLabel dayLabel = new JLabel(day.getDayOfWeek().toString() + " (" + day + ")", SwingConstants.CENTER);
-            daysPanel.add(dayLabel);
+            dayLabels[i] = new JLabel("", SwingConstants.CENTER);
+            daysPanel.add(dayLabels[i]);
         }
+        updateDayLabels();
 
-        // Initialize the time slots button array
-        timeSlots = new JButton[13][7];
+        // Buttons for moving between weeks
+        JPanel navigationPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        JButton previousWeekButton = new JButton("< Previous Week");
+        previousWeekButton.addActionListener(e -> showWeek(currentMonday.minusWeeks(1)));
+        JButton thisWeekButton = new JButton("This Week");
+        thisWeekButton.addActionListener(e -> showWeek(LocalDate.now().with(DayOfWeek.MONDAY)));
+        JButton jumpButton = new JButton("Go to Date...");
+        jumpButton.addActionListener(e -> jumpToDate());
+        JButton nextWeekButton = new JButton("Next Week >");
+        nextWeekButton.addActionListener(e -> showWeek(currentMonday.plusWeeks(1)));
+        navigationPanel.add(previousWeekButton);
+        navigationPanel.add(thisWeekButton);
+        navigationPanel.add(jumpButton);
+        navigationPanel.add(nextWeekButton);
 
-        // Create hourly grid for each day
-        for (int hour = 8; hour <= 20; hour++) {
-             // Display time in the first column with proper AM/PM designation
-             String timeLabel;
-             if (hour == 12) {
-                 timeLabel = "12.00 PM"; // Handle noon correctly
-             } else if (hour > 12) {
-                 timeLabel = (hour - 12) + ".00 PM"; // Convert to 12-hour format for PM
-             } else {
-                 timeLabel = hour + ".00 AM"; // For AM times
-             }
- 
-             JLabel label = new JLabel(timeLabel, SwingConstants.CENTER);
-             hoursPanel.add(label); // Add time label
+        // Search bar: matching events are listed as you type; picking one shows its week
+        JTextField searchField = new JTextField(18);
+        searchField.setToolTipText("Search event names and locations");
+        searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                updateSearchResults(searchField);
+            }
 
-            for (int day = 0; day < 7; day++) {
-                JButton timeSlot = new JButton(); // Empty button for the event name
-                timeSlot.setBackground(Color.WHITE);
-                LocalDate date = currentMonday.plusDays(day);
-                LocalDateTime dateTime = LocalDateTime.of(date, LocalTime.of(hour, 0));
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                updateSearchResults(searchField);
+            }
 
-                // Open event dialog when a time slot is clicked
-                timeSlot.addActionListener(e -> handleTimeSlotClick(dateTime));
-                timeSlots[hour - 8][day] = timeSlot; // Store the button in the array
-                hoursPanel.add(timeSlot); // Add button to the panel
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {
             }
-        }
+        });
+        searchField.addActionListener(e -> {
+            if (searchResults.isVisible() && searchResults.getComponentCount() > 0
+                    && searchResults.getComponent(0) instanceof JMenuItem) {
+                ((JMenuItem) searchResults.getComponent(0)).doClick();
+            }
+        });
+        searchResults.setFocusable(false); // Keep typing in the field while the results are shown
+        navigationPanel.add(new JLabel("  Search:"));
+        navigationPanel.add(searchField);
+
+        JPanel headerPanel = new JPanel(new BorderLayout());
+        headerPanel.add(navigationPanel, BorderLayout.NORTH);
+        headerPanel.add(daysPanel, BorderLayout.SOUTH);
+
+        // Week grid that paints the events and hit-tests clicks itself
+        grid = new ScheduleGrid(currentMonday);
+        grid.setRules(engine.rules());
+        grid.setFirstPaintListener(() -> SwingUtilities.invokeLater(this::firstFrameShown));
+        grid.setClickListener(this::handleTimeSlotClick);
 
         // Add panels to the frame
-        add(daysPanel, BorderLayout.NORTH);
-        add(hoursPanel, BorderLayout.CENTER);
+        add(headerPanel, BorderLayout.NORTH);
+        add(grid, BorderLayout.CENTER);
+        add(background.getStatusBar(), BorderLayout.SOUTH);
 
         // Menu for creating, saving, and loading events
         JMenuBar menuBar = new JMenuBar();
@@ -77,35 +204,104 @@ public class WeeklySchedulerApp extends JFrame {
         saveScheduleMenu.addActionListener(e -> saveScheduleToFile());
         JMenuItem loadScheduleMenu = new JMenuItem("Load Schedule");
         loadScheduleMenu.addActionListener(e -> loadScheduleFromFile());
+        JMenuItem importMenu = new JMenuItem("Import Events...");
+        importMenu.addActionListener(e -> importEvents());
+        JMenuItem packMenu = new JMenuItem("Auto-Schedule Meetings...");
+        packMenu.addActionListener(e -> openAutoScheduleForm());
+        JMenuItem diagnosticsMenu = new JMenuItem("Diagnostics");
+        diagnosticsMenu.addActionListener(e -> showDiagnostics());
 
         menu.add(addEventMenu);
         menu.add(saveScheduleMenu);
         menu.add(loadScheduleMenu);
+        menu.add(importMenu);
+        menu.add(packMenu);
+        menu.addSeparator();
+        menu.add(diagnosticsMenu);
         menuBar.add(menu);
 
+        // Undo and redo go through the engine's history, so they also cover drags and imports
+        JMenu editMenu = new JMenu("Edit");
+        JMenuItem undoMenu = new JMenuItem("Undo");
+        undoMenu.setAccelerator(KeyStroke.getKeyStroke("control Z"));
+        undoMenu.addActionListener(e -> runChange(this, "Undoing", Metrics.UI_UNDO, engine::undo, null, () -> {}));
+        JMenuItem redoMenu = new JMenuItem("Redo");
+        redoMenu.setAccelerator(KeyStroke.getKeyStroke("control Y"));
+        redoMenu.addActionListener(e -> runChange(this, "Redoing", Metrics.UI_UNDO, engine::redo, null, () -> {}));
+        editMenu.addMenuListener(new javax.swing.event.MenuListener() {
+            @Override
+            public void menuSelected(javax.swing.event.MenuEvent e) {
+                undoMenu.setEnabled(engine.canUndo());
+                redoMenu.setEnabled(engine.canRedo());
+            }
+
+            @Override
+            public void menuDeselected(javax.swing.event.MenuEvent e) {
+                undoMenu.setEnabled(true); // Keep the shortcuts working; the engine reports if there is nothing to do
+                redoMenu.setEnabled(true);
+            }
+
+            @Override
+            public void menuCanceled(javax.swing.event.MenuEvent e) {
+                menuDeselected(e);
+            }
+        });
+        editMenu.add(undoMenu);
+        editMenu.add(redoMenu);
+        menuBar.add(editMenu);
+
+        // Each calendar opens in its own window; others can be overlaid on this one
+        JMenu calendarMenu = new JMenu("Calendars");
+        JMenuItem openCalendarMenu = new JMenuItem("Open Calendar...");
+        openCalendarMenu.addActionListener(e -> withCalendarNames(this::chooseCalendar));
+        JMenuItem overlayMenu = new JMenuItem("Overlay Calendars...");
+        overlayMenu.addActionListener(e -> withCalendarNames(this::chooseOverlay));
+        JMenuItem commonTimeMenu = new JMenuItem("Find Common Free Time...");
+        commonTimeMenu.addActionListener(e -> withCalendarNames(this::findCommonFreeTime));
+        calendarMenu.add(openCalendarMenu);
+        calendarMenu.add(overlayMenu);
+        calendarMenu.add(commonTimeMenu);
+        menuBar.add(calendarMenu);
+
         setJMenuBar(menuBar);
         setVisible(true);
-        setDefaultCloseOperation(EXIT_ON_CLOSE);
+        setDefaultCloseOperation(calendarName.equals(CalendarSet.MAIN) ? EXIT_ON_CLOSE : HIDE_ON_CLOSE); // Hidden windows are shown again when reopened
+        if (calendarName.equals(CalendarSet.MAIN)) {
+            addWindowListener(new java.awt.event.WindowAdapter() {
+                @Override
+                public void windowClosing(java.awt.event.WindowEvent e) {
+                    saveStartupSnapshot();
+                }
+            });
+        }
         setLocationRelativeTo(null);
+
+        // Load the displayed week (last snapshot plus journaled changes) in the background
+        showWeek(currentMonday);
     }
 
-    // New method to prompt for the week start date
-    private static LocalDate promptForWeekStartDate() {
-        String input = JOptionPane.showInputDialog(null, "Enter the start date of the week (YYYY-MM-DD):");
-        if (input != null && !input.trim().isEmpty()) {
-            try {
-                LocalDate date = LocalDate.parse(input);
-                if (date.getDayOfWeek() == DayOfWeek.MONDAY) {
-                    return date;
-                } else {
-                    // If not Monday, find the previous Monday
-                    return date.with(DayOfWeek.MONDAY);
-                }
-            } catch (Exception e) {
-                JOptionPane.showMessageDialog(null, "Invalid date format. Using the current week instead.");
-            }
+    // Runs on the EDT once the grid has been painted and the events queued before that are
+    // handled, i.e. when the window first takes input. The forms are built after that.
+    private void firstFrameShown() {
+        if (calendarName.equals(CalendarSet.MAIN)) {
+            Metrics.UI_STARTUP.record(System.nanoTime() - launchNanos, true);
+        }
+        SwingUtilities.invokeLater(this::prebuildForms);
+    }
+
+    // Remembers the week on screen for the next start (see StartupSnapshot). Runs on the EDT as
+    // the window closes; the file is one week, so this is quick.
+    private void saveStartupSnapshot() {
+        WeekModel model = grid.getModel();
+        List<Event> events = new ArrayList<>();
+        for (int day = 0; day < 7; day++) {
+            events.addAll(model.day(day));
+        }
+        try {
+            StartupSnapshot.write(StartupSnapshot.fileFor(SCHEDULE_FILE), model.monday, events);
+        } catch (IOException e) {
+            System.err.println("Cannot save the startup snapshot: " + e.getMessage()); // Next start shows the current week instead
         }
-        return LocalDate.now().with(DayOfWeek.MONDAY); // Default to the current week's Monday
     }
 
 
@@ -117,10 +313,11 @@ public class WeeklySchedulerApp extends JFrame {
             // Collect secretary input
             String secretaryInput = JOptionPane.showInputDialog(this, "Please enter your name (Secretary):");
             if (secretaryInput != null && !secretaryInput.trim().isEmpty()) {
-                // Remove the event from the list
-                events.remove(eventToDelete);
-                updateScheduleDisplay(); // Update the UI to reflect the deletion
-                JOptionPane.showMessageDialog(this, "Event deleted successfully by " + secretaryInput + "!");
+                // Remove the event; the grid is updated through the engine listener
+                runChange(this, "Deleting event", Metrics.UI_DELETE, () -> {
+                    engine.delete(eventToDelete);
+                    return null;
+                }, "Event deleted successfully by " + secretaryInput + "!", () -> { });
             } else {
                 JOptionPane.showMessageDialog(this, "Deletion canceled: Secretary name is required.");
             }
@@ -128,33 +325,15 @@ public class WeeklySchedulerApp extends JFrame {
     }
     
     
-    // Handle time slot click for event creation or editing
-    private void handleTimeSlotClick(LocalDateTime dateTime) {
-        // Check if the selected date is a Sunday
-        if (dateTime.getDayOfWeek() == DayOfWeek.SUNDAY) {
-            JOptionPane.showMessageDialog(this, "Cannot schedule events on Sunday!", "Error", JOptionPane.ERROR_MESSAGE);
-            return; // Exit the method to prevent further processing
-        }
-    
-        // Check if the selected date is Saturday and the time is within the allowed range (8 AM to 3 PM)
-        if (dateTime.getDayOfWeek() == DayOfWeek.SATURDAY) {
-            int hour = dateTime.getHour();
-            if (hour < 8 || hour >= 15) {
-                JOptionPane.showMessageDialog(this, "Events can only be scheduled on Saturday between 8 AM and 3 PM!", "Error", JOptionPane.ERROR_MESSAGE);
-                return; // Exit the method to prevent further processing
-            }
-        }
-    
-        // Find the event at the clicked time
-        Event eventToEdit = null;
-        for (Event event : events) {
-            if (event.startTime.equals(dateTime)) {
-                eventToEdit = event;
-                break;
-            }
+    // Handle time slot click for event creation or editing; the grid passes the clicked hour
+    // and the event under the pointer (null if the click was on free time)
+    private void handleTimeSlotClick(LocalDateTime dateTime, Event eventToEdit) {
+        if (eventToEdit != null && grid.getModel() == startupModel) {
+            return; // Still the picture from the last session; its events are not the engine's
         }
-    
-        if (eventToEdit != null) {
+        if (eventToEdit instanceof Recurrence.Occurrence) {
+            openSeriesOptions((Recurrence.Occurrence) eventToEdit);
+        } else if (eventToEdit != null) {
             // Display event details and options (Edit and Delete)
             int option = JOptionPane.showOptionDialog(this, "Event: " + eventToEdit.name + "\nLocation: " + eventToEdit.location, 
                     "Event Details", JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.INFORMATION_MESSAGE, null, 
@@ -165,366 +344,1025 @@ public class WeeklySchedulerApp extends JFrame {
             } else if (option == 1) {
                 confirmAndDeleteEvent(eventToEdit); // Delete option
             }
+        } else if (!isOpenDuringHour(dateTime)) {
+            // Closed by the booking rules (e.g. a Sunday or a holiday); say when it is open
+            JOptionPane.showMessageDialog(this, engine.rules().hoursMessage(dateTime.toLocalDate()), "Error", JOptionPane.ERROR_MESSAGE);
         } else {
             // Handle case where no event exists at that time
             JOptionPane.showMessageDialog(this, "No event scheduled at this time.");
         }
     }
+
+    // Whether events may be booked in any minute of the hour starting at the given time
+    private boolean isOpenDuringHour(LocalDateTime hour) {
+        int first = hour.getHour() * 60;
+        for (int minute = first; minute < first + 60; minute++) {
+            if (engine.rules().isOpen(hour.toLocalDate(), minute)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Options for one occurrence of a recurring event: edits apply to the whole series, a delete
+    // can skip just this date or remove the series
+    private void openSeriesOptions(Recurrence.Occurrence occurrence) {
+        Recurrence series = occurrence.series;
+        int option = JOptionPane.showOptionDialog(this, "Event: " + series.name + "\nLocation: " + series.location
+                        + "\nRepeats: " + series, "Recurring Event Details", JOptionPane.DEFAULT_OPTION, JOptionPane.INFORMATION_MESSAGE,
+                null, new String[]{"Edit Series", "Delete This Occurrence", "Delete Series", "Cancel"}, null);
+        if (option == 0) {
+            openEditEventForm(occurrence);
+        } else if (option == 1 || option == 2) {
+            String secretaryInput = JOptionPane.showInputDialog(this, "Please enter your name (Secretary):");
+            if (secretaryInput == null || secretaryInput.trim().isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Deletion canceled: Secretary name is required.");
+            } else if (option == 1) {
+                LocalDate date = occurrence.startTime.toLocalDate();
+                runChange(this, "Deleting occurrence", Metrics.UI_DELETE, () -> engine.skipOccurrence(series, date),
+                        "Occurrence on " + date + " deleted successfully by " + secretaryInput + "!", () -> { });
+            } else {
+                runChange(this, "Deleting series", Metrics.UI_DELETE, () -> {
+                    engine.deleteSeries(series);
+                    return null;
+                }, "Recurring event deleted successfully by " + secretaryInput + "!", () -> { });
+            }
+        }
+    }
     
 
 
-    // Method to open the event creation form
+    // Method to open the event creation form; the window is built once and reused
     private void openCreateEventForm(LocalDateTime dateTime) {
-        JFrame createEventFrame = new JFrame("Create Event");
-        createEventFrame.setSize(400, 500);
-        createEventFrame.setLayout(new GridBagLayout());
-        GridBagConstraints gbc = new GridBagConstraints();
-        gbc.fill = GridBagConstraints.HORIZONTAL;
-        gbc.insets = new Insets(10, 10, 10, 10); // Padding around components
-
-        // Date spinner for event date
-        JLabel dateLabel = new JLabel("Event Date:");
-        JSpinner dateSpinner = new JSpinner(new SpinnerDateModel());
-        JSpinner.DateEditor dateEditor = new JSpinner.DateEditor(dateSpinner, "yyyy-MM-dd");
-        dateSpinner.setEditor(dateEditor);
-        dateSpinner.setValue(java.sql.Date.valueOf(dateTime != null ? dateTime.toLocalDate() : LocalDate.now())); // Set current date
-
-        gbc.gridx = 0;
-        gbc.gridy = 0;
-        createEventFrame.add(dateLabel, gbc);
-
-        gbc.gridx = 1;
-        createEventFrame.add(dateSpinner, gbc);
-
-        // Time spinner for start time
-        JLabel startTimeLabel = new JLabel("Start Time:");
-        JSpinner startTimeSpinner = new JSpinner(new SpinnerDateModel());
-        JSpinner.DateEditor startTimeEditor = new JSpinner.DateEditor(startTimeSpinner, "hh:mm a");
-        startTimeSpinner.setEditor(startTimeEditor);
-        startTimeSpinner.setValue(java.sql.Time.valueOf(dateTime != null ? dateTime.toLocalTime() : LocalTime.now().withMinute(0).withSecond(0))); // Set current time
-
-        gbc.gridx = 0;
-        gbc.gridy = 1;
-        createEventFrame.add(startTimeLabel, gbc);
-
-        gbc.gridx = 1;
-        createEventFrame.add(startTimeSpinner, gbc);
-
-        // Time spinner for end time
-        JLabel endTimeLabel = new JLabel("End Time:");
-        JSpinner endTimeSpinner = new JSpinner(new SpinnerDateModel());
-        JSpinner.DateEditor endTimeEditor = new JSpinner.DateEditor(endTimeSpinner, "hh:mm a");
-        endTimeSpinner.setEditor(endTimeEditor);
-        endTimeSpinner.setValue(java.sql.Time.valueOf(dateTime != null ? dateTime.plusHours(1).toLocalTime() : LocalTime.now().plusHours(1).withMinute(0).withSecond(0))); // Set end time
-
-        gbc.gridx = 0;
-        gbc.gridy = 2;
-        createEventFrame.add(endTimeLabel, gbc);
-
-        gbc.gridx = 1;
-        createEventFrame.add(endTimeSpinner, gbc);
-
-        // Event name
-        JLabel eventNameLabel = new JLabel("Event Name:");
-        JTextField eventNameField = new JTextField(20);
-
-        gbc.gridx = 0;
-        gbc.gridy = 3;
-        createEventFrame.add(eventNameLabel, gbc);
-
-        gbc.gridx = 1;
-        createEventFrame.add(eventNameField, gbc);
-
-        // Location
-        JLabel locationLabel = new JLabel("Location:");
-        JTextField locationField = new JTextField(20);
-
-        gbc.gridx = 0;
-        gbc.gridy = 4;
-        createEventFrame.add(locationLabel, gbc);
-
-        gbc.gridx = 1;
-        createEventFrame.add(locationField, gbc);
-
-        // Color selection
-        JLabel colorLabel = new JLabel("Select Color:");
-        String[] colors = {"Red", "Green", "Yellow", "Blue", "Orange", "Gray"};
-        JComboBox<String> colorComboBox = new JComboBox<>(colors);
-        
-        gbc.gridx = 0;
-        gbc.gridy = 5;
-        createEventFrame.add(colorLabel, gbc);
-        
-        gbc.gridx = 1;
-        createEventFrame.add(colorComboBox, gbc);
+        if (createEventForm == null) {
+            createEventForm = new CreateEventForm();
+        }
+        createEventForm.show(dateTime);
+    }
+
+    // Open edit event form; the window is built once and reused
+    private void openEditEventForm(Event event) {
+        if (editEventForm == null) {
+            editEventForm = new EditEventForm();
+        }
+        editEventForm.show(event);
+    }
 
-        // Create button
-        JButton createButton = new JButton("Create Event");
-        createButton.addActionListener(e -> {
-            // Logic to create event goes here
-            if (createEvent(dateSpinner, startTimeSpinner, endTimeSpinner, eventNameField, locationField, colorComboBox)) {
-                JOptionPane.showMessageDialog(createEventFrame, "Event created successfully!");
-                createEventFrame.dispose();
+    // Builds the forms while the EDT has nothing else to do, so the first click on Create
+    // Event or Edit does not pay for laying out spinners and combo boxes
+    private void prebuildForms() {
+        if (createEventForm == null) {
+            createEventForm = new CreateEventForm();
+        }
+        if (editEventForm == null) {
+            editEventForm = new EditEventForm();
+        }
+    }
+
+    // The event creation window. show fills it in again for each booking.
+    private final class CreateEventForm {
+        final JFrame frame = new JFrame("Create Event");
+        final JSpinner dateSpinner = new JSpinner(new SpinnerDateModel());
+        final JSpinner startTimeSpinner = new JSpinner(new SpinnerDateModel());
+        final JSpinner endTimeSpinner = new JSpinner(new SpinnerDateModel());
+        final JTextField eventNameField = new JTextField(20);
+        final JTextField locationField = new JTextField(20);
+        final JComboBox<String> colorComboBox = new JComboBox<>(COLORS);
+        final JComboBox<String> repeatComboBox = new JComboBox<>(REPEAT_OPTIONS); // Weekly and monthly series follow the event date
+        final JTextField untilField = new JTextField(20); // Last date of the series, empty if it never ends
+
+        CreateEventForm() {
+            frame.setSize(450, 600);
+            frame.setLayout(new GridBagLayout());
+            GridBagConstraints gbc = new GridBagConstraints();
+            gbc.fill = GridBagConstraints.HORIZONTAL;
+            gbc.insets = new Insets(10, 10, 10, 10); // Padding around components
+            dateSpinner.setEditor(new JSpinner.DateEditor(dateSpinner, "yyyy-MM-dd"));
+            startTimeSpinner.setEditor(new JSpinner.DateEditor(startTimeSpinner, "hh:mm a"));
+            endTimeSpinner.setEditor(new JSpinner.DateEditor(endTimeSpinner, "hh:mm a"));
+
+            String[] labels = {"Event Date:", "Start Time:", "End Time:", "Event Name:", "Location:", "Select Color:", "Repeat:",
+                    "Repeat Until (YYYY-MM-DD):"};
+            JComponent[] fields = {dateSpinner, startTimeSpinner, endTimeSpinner, eventNameField, locationField, colorComboBox,
+                    repeatComboBox, untilField};
+            for (int row = 0; row < labels.length; row++) {
+                gbc.gridx = 0;
+                gbc.gridy = row;
+                frame.add(new JLabel(labels[row]), gbc);
+                gbc.gridx = 1;
+                frame.add(fields[row], gbc);
             }
-        });
 
-        gbc.gridx = 0;
-        gbc.gridy = 6;
-        gbc.gridwidth = 2; // Span across both columns
-        gbc.anchor = GridBagConstraints.CENTER; // Center the button
-        
-        createEventFrame.add(createButton, gbc);
-        createEventFrame.setVisible(true);
-        createEventFrame.setLocationRelativeTo(null);
+            // Create button
+            JButton createButton = new JButton("Create Event");
+            createButton.addActionListener(e -> createEvent(frame, dateSpinner, startTimeSpinner, endTimeSpinner, eventNameField,
+                    locationField, colorComboBox, repeatComboBox, untilField));
+
+            // Suggest button fills in the next free time for the chosen duration
+            JButton suggestButton = new JButton("Suggest Time");
+            suggestButton.addActionListener(e -> suggestTime(frame, dateSpinner, startTimeSpinner, endTimeSpinner));
+
+            JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+            buttonPanel.add(suggestButton);
+            buttonPanel.add(createButton);
+
+            gbc.gridx = 0;
+            gbc.gridy = labels.length;
+            gbc.gridwidth = 2; // Span across both columns
+            gbc.anchor = GridBagConstraints.CENTER; // Center the button
+            frame.add(buttonPanel, gbc);
+        }
+
+        // Starts at the clicked time (an hour long), or at the next full hour today
+        void show(LocalDateTime dateTime) {
+            dateSpinner.setValue(java.sql.Date.valueOf(dateTime != null ? dateTime.toLocalDate() : LocalDate.now()));
+            startTimeSpinner.setValue(java.sql.Time.valueOf(dateTime != null ? dateTime.toLocalTime() : LocalTime.now().withMinute(0).withSecond(0)));
+            endTimeSpinner.setValue(java.sql.Time.valueOf(dateTime != null ? dateTime.plusHours(1).toLocalTime() : LocalTime.now().plusHours(1).withMinute(0).withSecond(0)));
+            eventNameField.setText("");
+            locationField.setText("");
+            colorComboBox.setSelectedIndex(0);
+            repeatComboBox.setSelectedIndex(0);
+            untilField.setText("");
+            frame.setLocationRelativeTo(null);
+            frame.setVisible(true);
+            frame.toFront();
+        }
     }
 
-    // Open edit event form
-    private void openEditEventForm(Event event) {
-        JFrame editEventFrame = new JFrame("Edit Event");
-        editEventFrame.setSize(400, 300);
-        editEventFrame.setLayout(new GridBagLayout());
-        GridBagConstraints gbc = new GridBagConstraints();
-        gbc.fill = GridBagConstraints.HORIZONTAL;
-        gbc.insets = new Insets(10, 10, 10, 10); // Padding around components
-    
-        // Event name
-        JLabel eventNameLabel = new JLabel("Event Name:");
-        JTextField eventNameField = new JTextField(event.name, 20);
-    
-        gbc.gridx = 0;
-        gbc.gridy = 0;
-        editEventFrame.add(eventNameLabel, gbc);
-    
-        gbc.gridx = 1;
-        editEventFrame.add(eventNameField, gbc);
-    
-        // Location
-        JLabel locationLabel = new JLabel("Location:");
-        JTextField locationField = new JTextField(event.location, 20);
-    
-        gbc.gridx = 0;
-        gbc.gridy = 1;
-        editEventFrame.add(locationLabel, gbc);
-    
-        gbc.gridx = 1;
-        editEventFrame.add(locationField, gbc);
-    
-        // Color selection
-        JLabel colorLabel = new JLabel("Event Color:");
-        String[] colors = {"Red", "Green", "Yellow", "Blue", "Orange", "Gray"};
-        JComboBox<String> colorComboBox = new JComboBox<>(colors);
-        colorComboBox.setSelectedItem(event.color); // Set the current color of the event
-    
-        gbc.gridx = 0;
-        gbc.gridy = 2;
-        editEventFrame.add(colorLabel, gbc);
+    // The window for changing an event's name, location and color. show points it at the event.
+    private final class EditEventForm {
+        final JFrame frame = new JFrame("Edit Event");
+        final JTextField eventNameField = new JTextField(20);
+        final JTextField locationField = new JTextField(20);
+        final JComboBox<String> colorComboBox = new JComboBox<>(COLORS);
+        Event event; // The event being edited
+
+        EditEventForm() {
+            frame.setSize(400, 300);
+            frame.setLayout(new GridBagLayout());
+            GridBagConstraints gbc = new GridBagConstraints();
+            gbc.fill = GridBagConstraints.HORIZONTAL;
+            gbc.insets = new Insets(10, 10, 10, 10); // Padding around components
+
+            String[] labels = {"Event Name:", "Location:", "Event Color:"};
+            JComponent[] fields = {eventNameField, locationField, colorComboBox};
+            for (int row = 0; row < labels.length; row++) {
+                gbc.gridx = 0;
+                gbc.gridy = row;
+                frame.add(new JLabel(labels[row]), gbc);
+                gbc.gridx = 1;
+                frame.add(fields[row], gbc);
+            }
+
+            // Save button
+            JButton saveButton = new JButton("Save");
+            saveButton.addActionListener(e -> {
+                Event edited = event;
+                String name = eventNameField.getText();
+                String location = locationField.getText();
+                String color = (String) colorComboBox.getSelectedItem(); // Update event color
+                if (edited instanceof Recurrence.Occurrence) {
+                    runChange(frame, "Saving series", Metrics.UI_EDIT, () -> engine.editSeries(((Recurrence.Occurrence) edited).series, name, location, color),
+                            "Recurring event updated successfully!", () -> frame.setVisible(false));
+                } else {
+                    runChange(frame, "Saving event", Metrics.UI_EDIT, () -> engine.edit(edited, name, location, color),
+                            "Event updated successfully!", () -> frame.setVisible(false));
+                }
+            });
+
+            gbc.gridx = 0;
+            gbc.gridy = labels.length;
+            gbc.gridwidth = 2; // Span across both columns
+            gbc.anchor = GridBagConstraints.CENTER; // Center the button
+            frame.add(saveButton, gbc);
+        }
+
+        void show(Event event) {
+            this.event = event;
+            eventNameField.setText(event.name);
+            locationField.setText(event.location);
+            colorComboBox.setSelectedItem(event.color); // Set the current color of the event
+            frame.setLocationRelativeTo(null);
+            frame.setVisible(true);
+            frame.toFront();
+        }
+    }
     
-        gbc.gridx = 1;
-        editEventFrame.add(colorComboBox, gbc);
+    // Paint of one of the COLORS names; white for null or any other name
+    static Color getColor(String colorName) {
+        Color color = colorName == null ? null : PAINTS.get(colorName);
+        return color == null ? Color.WHITE : color;
+    }
     
-        // Save button
-        JButton saveButton = new JButton("Save");
-        saveButton.addActionListener(e -> {
-            event.name = eventNameField.getText();
-            event.location = locationField.getText();
-            event.color = (String) colorComboBox.getSelectedItem(); // Update event color
-            updateEventDisplay(event); // Call the updated method to display the event
-            JOptionPane.showMessageDialog(editEventFrame, "Event updated successfully!");
-            editEventFrame.dispose();
+    // Create a new event or recurring event; the rules and the overlap check are applied by the engine
+    private void createEvent(JFrame createEventFrame, JSpinner dateSpinner, JSpinner startTimeSpinner, JSpinner endTimeSpinner,
+                             JTextField eventNameField, JTextField locationField, JComboBox<String> colorComboBox,
+                             JComboBox<String> repeatComboBox, JTextField untilField) {
+        LocalDate eventDate = ((java.util.Date) dateSpinner.getValue()).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        LocalTime startTime = ((java.util.Date) startTimeSpinner.getValue()).toInstant().atZone(ZoneId.systemDefault()).toLocalTime();
+        LocalTime endTime = ((java.util.Date) endTimeSpinner.getValue()).toInstant().atZone(ZoneId.systemDefault()).toLocalTime();
+        String name = eventNameField.getText();
+        String location = locationField.getText();
+        String color = colorComboBox.getSelectedItem().toString();
+
+        int repeat = repeatComboBox.getSelectedIndex();
+        if (repeat > 0) {
+            LocalDate until = null;
+            if (!untilField.getText().trim().isEmpty()) {
+                try {
+                    until = LocalDate.parse(untilField.getText().trim());
+                } catch (DateTimeException e) {
+                    JOptionPane.showMessageDialog(createEventFrame, "Invalid end date format.", "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+            }
+            Recurrence.Frequency frequency = RECURRENCE_FREQUENCIES[repeat - 1];
+            Set<DayOfWeek> weekdays = EnumSet.of(eventDate.getDayOfWeek());
+            if (frequency != Recurrence.Frequency.WEEKLY) {
+                // Daily and monthly series leave out the days these times are not open for, e.g. Sundays
+                weekdays = EnumSet.noneOf(DayOfWeek.class);
+                for (DayOfWeek day : DayOfWeek.values()) {
+                    try {
+                        engine.rules().checkWeekly(day, startTime, endTime);
+                        weekdays.add(day);
+                    } catch (SchedulerEngine.SchedulingException e) {
+                        // Not open at these times on this day
+                    }
+                }
+                if (weekdays.isEmpty()) {
+                    JOptionPane.showMessageDialog(createEventFrame, "These times are outside the opening hours on every day.", "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+            }
+            Recurrence recurrence = new Recurrence(name, location, color, frequency, 1, weekdays, eventDate, until,
+                    startTime.withSecond(0).withNano(0), endTime.withSecond(0).withNano(0));
+            // Checking against single events may read many weeks, so this runs on a worker thread
+            runChange(createEventFrame, "Creating recurring event", Metrics.UI_CREATE, () -> engine.createSeries(recurrence),
+                    "Recurring event created successfully!", () -> createEventFrame.setVisible(false));
+            return;
+        }
+
+        // The event's week may have to be read from disk first, so this runs on a worker thread
+        runChange(createEventFrame, "Creating event", Metrics.UI_CREATE,
+                () -> engine.create(name, location, LocalDateTime.of(eventDate, startTime), LocalDateTime.of(eventDate, endTime), color),
+                "Event created successfully!", () -> createEventFrame.setVisible(false));
+    }
+
+    // Looks up the first free slots at or after the chosen date and start time (never in the
+    // past) with the duration between the chosen start and end, and lets the user pick one
+    private void suggestTime(JFrame createEventFrame, JSpinner dateSpinner, JSpinner startTimeSpinner, JSpinner endTimeSpinner) {
+        LocalDate date = ((java.util.Date) dateSpinner.getValue()).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        LocalTime startTime = ((java.util.Date) startTimeSpinner.getValue()).toInstant().atZone(ZoneId.systemDefault()).toLocalTime();
+        LocalTime endTime = ((java.util.Date) endTimeSpinner.getValue()).toInstant().atZone(ZoneId.systemDefault()).toLocalTime();
+        int minutes = (int) Duration.between(startTime, endTime).toMinutes();
+        int duration = minutes > 0 ? minutes : 60;
+        LocalDateTime chosen = LocalDateTime.of(date, startTime);
+        LocalDateTime after = chosen.isAfter(LocalDateTime.now()) ? chosen : LocalDateTime.now();
+
+        background.run("Finding free time", new SwingWorker<List<LocalDateTime>, Void>() {
+            @Override
+            protected List<LocalDateTime> doInBackground() throws Exception {
+                return engine.findFreeSlots(after, duration, SUGGESTED_SLOTS, SUGGESTION_ALIGN_MINUTES, SUGGESTION_SEARCH_DAYS);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    List<LocalDateTime> slots = get();
+                    if (slots.isEmpty()) {
+                        JOptionPane.showMessageDialog(createEventFrame, "No free time of " + duration + " minutes in the next " + SUGGESTION_SEARCH_DAYS + " days.");
+                        return;
+                    }
+                    DateTimeFormatter format = DateTimeFormatter.ofPattern("EEE yyyy-MM-dd  h:mm a");
+                    String[] options = new String[slots.size()];
+                    for (int i = 0; i < options.length; i++) {
+                        options[i] = slots.get(i).format(format) + " - " + slots.get(i).plusMinutes(duration).toLocalTime().format(DateTimeFormatter.ofPattern("h:mm a"));
+                    }
+                    Object choice = JOptionPane.showInputDialog(createEventFrame, "Free times:", "Suggest Time",
+                            JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+                    for (int i = 0; i < options.length; i++) {
+                        if (options[i].equals(choice)) {
+                            LocalDateTime slot = slots.get(i);
+                            dateSpinner.setValue(java.sql.Date.valueOf(slot.toLocalDate()));
+                            startTimeSpinner.setValue(java.sql.Time.valueOf(slot.toLocalTime()));
+                            endTimeSpinner.setValue(java.sql.Time.valueOf(slot.plusMinutes(duration).toLocalTime()));
+                        }
+                    }
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(createEventFrame, "Error finding free time: " + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, false);
+    }
+
+    // Applies a change through the engine on a worker thread and then reports the outcome on the
+    // EDT; a broken rule or conflict is shown as an error, onSuccess runs only if it went through.
+    // A null successMessage skips the confirmation. The timer measures up to the moment the
+    // outcome is shown.
+    private void runChange(Component parent, String description, Metrics.Timer timer, Callable<?> change, String successMessage, Runnable onSuccess) {
+        Metrics.Sample sample = timer.start();
+        background.run(description, new SwingWorker<Object, Void>() {
+            @Override
+            protected Object doInBackground() throws Exception {
+                return change.call();
+            }
+
+            @Override
+            protected void done() {
+                Throwable failure;
+                try {
+                    get();
+                    sample.succeeded();
+                    failure = null;
+                } catch (ExecutionException e) {
+                    failure = e.getCause();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    sample.close(); // The outcome is known; the dialogs below wait for the user
+                }
+                if (failure == null) {
+                    if (successMessage != null) {
+                        JOptionPane.showMessageDialog(parent, successMessage);
+                    }
+                    onSuccess.run();
+                } else if (failure instanceof SchedulerEngine.SchedulingException) {
+                    JOptionPane.showMessageDialog(parent, failure.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(parent, "Error: " + failure.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }, false);
+    }
+
+    // Method to save schedule to a file (folds the journal into schedule.dat now rather than
+    // when autosave gets to it)
+    private void saveScheduleToFile() {
+        Metrics.Sample sample = Metrics.UI_SAVE.start();
+        background.run("Saving schedule", new SwingWorker<Object, Void>() {
+            @Override
+            protected Object doInBackground() throws Exception {
+                return autosave.saveNow().get();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    sample.succeeded();
+                    sample.close();
+                    JOptionPane.showMessageDialog(WeeklySchedulerApp.this, "Schedule saved successfully!");
+                } catch (ExecutionException e) {
+                    sample.close();
+                    Throwable cause = e.getCause() instanceof ExecutionException ? e.getCause().getCause() : e.getCause();
+                    JOptionPane.showMessageDialog(WeeklySchedulerApp.this, "Error saving schedule: " + cause.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    sample.close();
+                }
+            }
+        }, false);
+    }
+
+    // Method to load schedule from a file (older serialized files are migrated on first load).
+    // The engine drops what it holds and the displayed week is read back on a worker thread.
+    private void loadScheduleFromFile() {
+        LocalDate monday = currentMonday;
+        Metrics.Sample sample = Metrics.UI_LOAD.start();
+        background.run("Loading schedule", new SwingWorker<WeekModel, Void>() {
+            @Override
+            protected WeekModel doInBackground() throws Exception {
+                engine.reload();
+                setProgress(10);
+                List<Event> week = engine.week(monday); // Snapshot plus journaled changes
+                setProgress(80);
+                return isCancelled() ? null : WeekModel.build(monday, week);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    sample.close();
+                    return;
+                }
+                try {
+                    WeekModel model = get();
+                    changedWhilePrefetching.addAll(prefetching); // Loaded before the reload
+                    weekModels.clear();
+                    weekModels.put(model);
+                    showWeek(currentMonday); // Update the UI to reflect loaded events
+                    sample.succeeded();
+                    sample.close();
+                    JOptionPane.showMessageDialog(WeeklySchedulerApp.this, "Schedule loaded successfully!");
+                } catch (ExecutionException e) {
+                    sample.close();
+                    JOptionPane.showMessageDialog(WeeklySchedulerApp.this, "Error loading schedule: " + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    sample.close();
+                }
+            }
+        }, true);
+    }
+
+    // Books the events of a CSV or iCalendar file; rejected rows are listed in a report file
+    private void importEvents() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("CSV or iCalendar files", "csv", "ics"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = chooser.getSelectedFile().toPath();
+        Path report = EventImporter.reportFileFor(file);
+        background.run("Importing " + file.getFileName(), new SwingWorker<EventImporter.Result, Void>() {
+            @Override
+            protected EventImporter.Result doInBackground() throws Exception {
+                return new EventImporter(engine).importFile(file, report, this::setProgress);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    JOptionPane.showMessageDialog(WeeklySchedulerApp.this, "Import cancelled. Events imported before that were kept.");
+                    return;
+                }
+                try {
+                    EventImporter.Result result = get();
+                    JOptionPane.showMessageDialog(WeeklySchedulerApp.this, "Imported " + result.imported + " events."
+                            + (result.rejected == 0 ? "" : "\n" + result.rejected + " rows were rejected, see " + report));
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(WeeklySchedulerApp.this, "Error importing events: " + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, true);
+    }
+
+    // Places a batch of meetings in free time: the secretary lists them, MeetingPacker plans
+    // them and the plan is only booked once it has been previewed
+    private void openAutoScheduleForm() {
+        JFrame packFrame = new JFrame("Auto-Schedule Meetings");
+        packFrame.setSize(1000, 350);
+        packFrame.setLayout(new BorderLayout());
+
+        // One row per meeting, starting with the displayed week
+        LocalDate earliest = LocalDate.now().isAfter(currentMonday) ? LocalDate.now() : currentMonday;
+        LocalDate latest = earliest.isAfter(currentMonday.plusDays(6)) ? earliest : currentMonday.plusDays(6);
+        Object[] newRow = {"", "", COLORS[0], "60", "1", earliest.toString(), latest.toString(), "", ""};
+        javax.swing.table.DefaultTableModel rows = new javax.swing.table.DefaultTableModel(PACK_COLUMNS, 0);
+        rows.addRow(newRow.clone());
+        JTable table = new JTable(rows);
+        table.getColumnModel().getColumn(2).setCellEditor(new DefaultCellEditor(new JComboBox<>(COLORS)));
+        packFrame.add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JButton addButton = new JButton("Add Meeting");
+        addButton.addActionListener(e -> rows.addRow(newRow.clone()));
+        JButton removeButton = new JButton("Remove Meeting");
+        removeButton.addActionListener(e -> {
+            int[] selected = table.getSelectedRows();
+            for (int i = selected.length - 1; i >= 0; i--) {
+                rows.removeRow(selected[i]);
+            }
         });
-    
-        gbc.gridx = 0;
-        gbc.gridy = 3;
-        gbc.gridwidth = 2; // Span across both columns
-        gbc.anchor = GridBagConstraints.CENTER; // Center the button
-        editEventFrame.add(saveButton, gbc);
-    
-        editEventFrame.setVisible(true);
-        editEventFrame.setLocationRelativeTo(null);
+        JButton planButton = new JButton("Plan");
+        planButton.addActionListener(e -> {
+            if (table.isEditing()) {
+                table.getCellEditor().stopCellEditing();
+            }
+            List<MeetingPacker.Request> requests = new ArrayList<>();
+            for (int row = 0; row < rows.getRowCount(); row++) {
+                try {
+                    requests.add(meetingRequest(rows, row));
+                } catch (IllegalArgumentException | DateTimeException ex) {
+                    JOptionPane.showMessageDialog(packFrame, "Row " + (row + 1) + ": " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+            }
+            if (!requests.isEmpty()) {
+                planMeetings(packFrame, requests);
+            }
+        });
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        buttonPanel.add(addButton);
+        buttonPanel.add(removeButton);
+        buttonPanel.add(planButton);
+        packFrame.add(buttonPanel, BorderLayout.SOUTH);
+        packFrame.setVisible(true);
+        packFrame.setLocationRelativeTo(null);
     }
-    
-    private Color getColor(String colorName) {
-        switch (colorName) {
-            case "Red":
-                return Color.RED;
-            case "Green":
-                return Color.GREEN;
-            case "Yellow":
-                return Color.YELLOW;
-            case "Blue":
-                return Color.BLUE;
-            case "Orange":
-                return Color.ORANGE;
-            case "Gray":
-                return Color.GRAY;
-            default:
-                return Color.WHITE; // Default color if none match
+
+    private static MeetingPacker.Request meetingRequest(javax.swing.table.DefaultTableModel rows, int row) {
+        String[] cells = new String[PACK_COLUMNS.length];
+        for (int column = 0; column < cells.length; column++) {
+            Object value = rows.getValueAt(row, column);
+            cells[column] = value == null ? "" : value.toString().trim();
+        }
+        if (cells[0].isEmpty()) {
+            throw new IllegalArgumentException("Every meeting needs a name.");
+        }
+        int minutes;
+        int priority;
+        try {
+            minutes = Integer.parseInt(cells[3]);
+            priority = Integer.parseInt(cells[4]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Minutes and priority must be whole numbers.");
         }
+        return new MeetingPacker.Request(cells[0], cells[1], cells[2], minutes, priority, LocalDate.parse(cells[5]), LocalDate.parse(cells[6]),
+                cells[7].isEmpty() ? null : LocalTime.parse(cells[7]), cells[8].isEmpty() ? null : LocalTime.parse(cells[8]));
     }
-    
-    private void updateEventDisplay(Event event) {
-        LocalDateTime startTime = event.startTime;
-        int hourIndex = startTime.getHour() - 8; // Calculate the hour index (8 AM is 0)
-        int dayIndex = startTime.getDayOfWeek().getValue() - 1; // Get the index for the day (Monday is 0)
-    
-        JButton timeSlotButton = timeSlots[hourIndex][dayIndex];
-        timeSlotButton.setText(event.name); // Set button text to event name
-        timeSlotButton.setForeground(Color.BLACK); // Set text color
-        timeSlotButton.setBackground(getColor(event.color)); // Set background color based on the event
+
+    // Plans on a worker thread, then previews the plan and books it if the secretary agrees
+    private void planMeetings(JFrame packFrame, List<MeetingPacker.Request> requests) {
+        MeetingPacker packer = new MeetingPacker(engine);
+        background.run("Planning meetings", new SwingWorker<MeetingPacker.Plan, Void>() {
+            @Override
+            protected MeetingPacker.Plan doInBackground() throws Exception {
+                return packer.plan(requests, PACK_BUDGET_MS, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            protected void done() {
+                MeetingPacker.Plan plan;
+                try {
+                    plan = get();
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(packFrame, "Error planning meetings: " + e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                DateTimeFormatter day = DateTimeFormatter.ofPattern("EEE yyyy-MM-dd  h:mm a");
+                DateTimeFormatter time = DateTimeFormatter.ofPattern("h:mm a");
+                StringBuilder preview = new StringBuilder();
+                if (!plan.events.isEmpty()) {
+                    preview.append("Placed:\n");
+                    for (Event event : plan.events) {
+                        preview.append("  ").append(event.startTime.format(day)).append(" - ").append(event.endTime.format(time))
+                                .append("  ").append(event.name).append(event.location.isEmpty() ? "" : " (" + event.location + ")").append('\n');
+                    }
+                }
+                if (!plan.unplaced.isEmpty()) {
+                    preview.append(plan.events.isEmpty() ? "" : "\n").append("Not placed:\n");
+                    for (Map.Entry<MeetingPacker.Request, String> entry : plan.unplaced.entrySet()) {
+                        preview.append("  ").append(entry.getKey().name).append(": ").append(entry.getValue()).append('\n');
+                    }
+                }
+                if (!plan.complete) {
+                    preview.append("\nThis is the best plan found in ").append(PACK_BUDGET_MS / 1000.0).append(" seconds.\n");
+                }
+                JTextArea text = new JTextArea(preview.toString(), Math.min(20, preview.toString().split("\n").length + 1), 70);
+                text.setEditable(false);
+                if (plan.events.isEmpty()) {
+                    JOptionPane.showMessageDialog(packFrame, new JScrollPane(text), "Meeting Plan", JOptionPane.WARNING_MESSAGE);
+                    return;
+                }
+                int option = JOptionPane.showOptionDialog(packFrame, new JScrollPane(text), "Meeting Plan", JOptionPane.OK_CANCEL_OPTION,
+                        JOptionPane.PLAIN_MESSAGE, null, new String[]{"Book", "Cancel"}, "Book");
+                if (option == 0) {
+                    runChange(packFrame, "Booking meetings", Metrics.UI_CREATE, () -> {
+                        List<String> failed = packer.book(plan);
+                        if (!failed.isEmpty()) {
+                            throw new SchedulerEngine.SchedulingException("Booked " + (plan.events.size() - failed.size()) + " of "
+                                    + plan.events.size() + " meetings. The schedule changed meanwhile for:\n" + String.join("\n", failed));
+                        }
+                        return null;
+                    }, "Booked " + plan.events.size() + " meetings.", packFrame::dispose);
+                }
+            }
+        }, false);
     }
-    
 
-    // Create a new event
-    private boolean createEvent(JSpinner dateSpinner, JSpinner startTimeSpinner, JSpinner endTimeSpinner, 
-                             JTextField eventNameField, JTextField locationField, JComboBox<String> colorComboBox) {
-    LocalDate eventDate = ((java.util.Date) dateSpinner.getValue()).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-    LocalTime startTime = ((java.util.Date) startTimeSpinner.getValue()).toInstant().atZone(ZoneId.systemDefault()).toLocalTime();
-    LocalTime endTime = ((java.util.Date) endTimeSpinner.getValue()).toInstant().atZone(ZoneId.systemDefault()).toLocalTime();
+    // Drops a week that fell out of the model cache from memory; it is reloaded when needed
+    private void unloadWeek(LocalDate monday) {
+        if (!monday.equals(currentMonday)) {
+            engine.unloadWeek(monday);
+        }
+    }
 
-    LocalTime eightAM = LocalTime.of(8, 0);
-    LocalTime threePM = LocalTime.of(15, 0);
-    LocalTime eightPM = LocalTime.of(20, 0);
+    private void applyPendingChanges() {
+        changesScheduled.set(false);
+        Event[] change;
+        while ((change = pendingChanges.poll()) != null) {
+            eventChanged(change[0], change[1]);
+        }
+    }
 
-    // Check if the event is being scheduled on Sunday
-    if (eventDate.getDayOfWeek() == DayOfWeek.SUNDAY) {
-        JOptionPane.showMessageDialog(this, "Cannot schedule events on Sunday!", "Error", JOptionPane.ERROR_MESSAGE);
-        return false;
+    // Brings the prepared models up to date with a change made through the engine (by this
+    // window or by any other client). Adding or removing twice is harmless, as a model
+    // loaded after the change already reflects it.
+    private void eventChanged(Event removed, Event added) {
+        if (removed != null) {
+            WeekModel model = modelToUpdate(removed);
+            if (model == grid.getModel()) {
+                grid.eventRemoved(removed);
+            } else if (model != null) {
+                model.remove(removed);
+            }
+        }
+        if (added != null) {
+            WeekModel model = modelToUpdate(added);
+            if (model == grid.getModel()) {
+                grid.eventAdded(added);
+            } else if (model != null) {
+                model.add(added);
+            }
+        }
+    }
+
+    // A recurring event changed, so any prepared week may show stale occurrences. The cached
+    // models are dropped (their weeks stay loaded in the engine) and the current week is rebuilt.
+    private void seriesChanged() {
+        changedWhilePrefetching.addAll(prefetching);
+        weekModels.clear();
+        showWeek(currentMonday);
+    }
+
+    private WeekModel modelToUpdate(Event event) {
+        LocalDate monday = event.startTime.toLocalDate().with(DayOfWeek.MONDAY);
+        if (prefetching.contains(monday)) {
+            changedWhilePrefetching.add(monday); // The copy being loaded may predate this change
+        }
+        return weekModels.contains(monday) ? weekModels.get(monday) : null;
     }
 
-    // Check if the event is being scheduled on Saturday
-    if (eventDate.getDayOfWeek() == DayOfWeek.SATURDAY) {
-        // Check if startTime and endTime are within the allowed range (8 AM to 3 PM)
-        if (startTime.isBefore(eightAM) || endTime.isAfter(threePM)) {
-            JOptionPane.showMessageDialog(this, "Events on Saturday can only be scheduled between 8 AM and 3 PM.", "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
+    // Lists the events matching the search field below it, upcoming ones first
+    private void updateSearchResults(JTextField searchField) {
+        searchResults.setVisible(false);
+        searchResults.removeAll();
+        String query = searchField.getText();
+        if (query.trim().isEmpty()) {
+            return;
         }
-    } else {
-        // For weekdays (Monday to Friday), check if startTime and endTime are within the allowed range (8 AM to 8 PM)
-        if (startTime.isBefore(eightAM) || endTime.isAfter(eightPM)) {
-            JOptionPane.showMessageDialog(this, "Events on weekdays can only be scheduled between 8 AM and 8 PM.", "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
+        List<Event> matches = searchIndex.search(query, LocalDate.now().atStartOfDay(), SEARCH_RESULTS);
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("EEE yyyy-MM-dd HH:mm");
+        for (Event match : matches) {
+            String location = match.location == null || match.location.isEmpty() ? "" : " (" + match.location + ")";
+            JMenuItem item = new JMenuItem(match.startTime.format(formatter) + "  " + match.name + location);
+            item.addActionListener(e -> {
+                searchResults.setVisible(false);
+                showWeek(match.startTime.toLocalDate().with(DayOfWeek.MONDAY));
+            });
+            searchResults.add(item);
         }
+        if (matches.isEmpty()) {
+            searchResults.add(new JLabel(searchIndex.isReady() ? " No matching events" : " No matches yet (still indexing)"));
+        }
+        searchResults.show(searchField, 0, searchField.getHeight());
     }
 
-    // Check if endTime is after startTime
-    if (endTime.isBefore(startTime)) {
-        JOptionPane.showMessageDialog(this, "End time must be after start time.", "Error", JOptionPane.ERROR_MESSAGE);
-        return false;
+    // Switches the grid to the week starting on the given Monday. A prepared model is shown
+    // immediately; otherwise the week is loaded in the background. Neighbouring weeks are
+    // prefetched so that flipping to them is instant.
+    private void showWeek(LocalDate monday) {
+        currentMonday = monday;
+        updateDayLabels();
+        Metrics.Sample sample = Metrics.UI_SHOW_WEEK.start();
+        WeekModel model = weekModels.get(monday);
+        if (model != null) {
+            grid.setModel(model);
+            sample.succeeded();
+            sample.close();
+            showingWeek = null;
+        } else {
+            // Placeholder until the background load arrives: the last session's picture of the
+            // week if there is one, otherwise an empty week
+            grid.setModel(startupModel != null && startupModel.monday.equals(monday) ? startupModel : WeekModel.empty(monday));
+            showingWeek = sample; // Closed once the week arrives; dropped if another week is shown first
+            prefetch(monday);
+        }
+        prefetch(monday.minusWeeks(1));
+        prefetch(monday.plusWeeks(1));
+        refreshOverlay();
     }
 
-    LocalDateTime startDateTime = LocalDateTime.of(eventDate, startTime);
-    LocalDateTime endDateTime = LocalDateTime.of(eventDate, endTime);
+    // Loads a week and prepares its model on a worker thread
+    private void prefetch(LocalDate monday) {
+        if (weekModels.contains(monday) || !prefetching.add(monday)) {
+            return;
+        }
+        background.execute(() -> {
+            try {
+                List<Event> week = engine.week(monday);
+                WeekModel model;
+                try (Metrics.Sample sample = Metrics.UI_BUILD_WEEK.start()) {
+                    model = WeekModel.build(monday, week);
+                    sample.succeeded();
+                }
+                SwingUtilities.invokeLater(() -> weekPrefetched(model));
+            } catch (IOException e) {
+                SwingUtilities.invokeLater(() -> {
+                    prefetching.remove(monday);
+                    if (monday.equals(currentMonday)) {
+                        if (showingWeek != null) {
+                            showingWeek.close();
+                            showingWeek = null;
+                        }
+                        JOptionPane.showMessageDialog(this, "Error loading week: " + e.getMessage());
+                    }
+                });
+            }
+        });
+    }
 
-    // Check for overlapping events
-    for (Event event : events) {
-        if (event.startTime.toLocalDate().isEqual(eventDate) && event.overlaps(new Event("", "", startDateTime, endDateTime, ""))) {
-            JOptionPane.showMessageDialog(this, "Event time overlaps with an existing event.", "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
+    private void weekPrefetched(WeekModel model) {
+        LocalDate monday = model.monday;
+        if (!prefetching.remove(monday)) {
+            return;
+        }
+        if (changedWhilePrefetching.remove(monday)) {
+            prefetch(monday); // Changed while loading, so this copy may be missing the change
+            return;
+        }
+        if (weekModels.contains(monday)) {
+            return; // Loaded another way meanwhile (and maybe changed since), so this copy is stale
+        }
+        weekModels.put(model);
+        if (startupModel != null && startupModel.monday.equals(monday)) {
+            startupModel = null; // No longer needed
+        }
+        if (monday.equals(currentMonday)) {
+            grid.setModel(model);
+            if (showingWeek != null) {
+                showingWeek.succeeded();
+                showingWeek.close();
+                showingWeek = null;
+            }
         }
     }
 
-    // Create and add the event
-    Event newEvent = new Event(eventNameField.getText(), locationField.getText(), startDateTime, endDateTime, colorComboBox.getSelectedItem().toString());
-    events.add(newEvent);
+    // Lists the calendars on a worker thread, then passes them on on the EDT
+    private void withCalendarNames(java.util.function.Consumer<List<String>> then) {
+        background.run("Listing calendars", new SwingWorker<List<String>, Void>() {
+            @Override
+            protected List<String> doInBackground() throws Exception {
+                return calendars.names();
+            }
 
-    // Update the schedule view after creating the event
-    updateEventDisplay(startDateTime, newEvent.name, newEvent.color);
-    setLocationRelativeTo(null);
-    return true;
-}
+            @Override
+            protected void done() {
+                try {
+                    then.accept(get());
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(WeeklySchedulerApp.this, "Error listing calendars: " + e.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, false);
+    }
 
-    
-    // Modify updateEventDisplay method to accept color
-    private void updateEventDisplay(LocalDateTime startDateTime, String eventName, String color) {
-        int hourIndex = startDateTime.getHour() - 8; // Adjust for the hour index (assuming 8 AM start)
-        int dayIndex = startDateTime.getDayOfWeek().getValue() - 1; // Adjust for the day index (Monday=1)
-    
-        if (hourIndex >= 0 && hourIndex < 13 && dayIndex >= 0 && dayIndex < 7) {
-            JButton timeSlot = timeSlots[hourIndex][dayIndex];
-            timeSlot.setText(eventName); // Set the button text to the event name
-            
-            // Set button background color based on event color
-            switch (color.toLowerCase()) {
-                case "red":
-                    timeSlot.setBackground(Color.RED);
-                    break;
-                case "green":
-                    timeSlot.setBackground(Color.GREEN);
-                    break;
-                case "yellow":
-                    timeSlot.setBackground(Color.YELLOW);
-                    break;
-                case "blue":
-                    timeSlot.setBackground(Color.BLUE);
-                    break;
-                case "orange":
-                    timeSlot.setBackground(Color.ORANGE);
-                    break;
-                case "gray":
-                    timeSlot.setBackground(Color.GRAY);
-                    break;
-                default:
-                    timeSlot.setBackground(Color.LIGHT_GRAY); // Default color if something goes wrong
-                    break;
-            }
-        }
-    }
-
-    // Method to save schedule to a file
-    private void saveScheduleToFile() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("schedule.dat"))) {
-            oos.writeObject(events);
-            JOptionPane.showMessageDialog(this, "Schedule saved successfully!");
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Error saving schedule: " + e.getMessage());
+    // Shows the window of an existing calendar, or of a new one if a new name is typed
+    private void chooseCalendar(List<String> names) {
+        JComboBox<String> nameBox = new JComboBox<>(names.toArray(new String[0]));
+        nameBox.setEditable(true);
+        if (JOptionPane.showConfirmDialog(this, new Object[]{"Calendar (type a new name to create one):", nameBox}, "Open Calendar",
+                JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION || nameBox.getSelectedItem() == null) {
+            return;
         }
+        String name = nameBox.getSelectedItem().toString().trim();
+        background.run("Opening calendar " + name, new SwingWorker<CalendarSet.Calendar, Void>() {
+            @Override
+            protected CalendarSet.Calendar doInBackground() throws Exception {
+                return calendars.open(name); // Recovers its journal, so this may read from disk
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    CalendarSet.Calendar calendar = get();
+                    WeeklySchedulerApp window = WINDOWS.get(calendar.name);
+                    if (window == null) {
+                        window = new WeeklySchedulerApp(currentMonday, calendars, calendar, new SearchIndex(calendar.engine, calendar.journal), null);
+                    }
+                    window.setVisible(true);
+                    window.toFront();
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(WeeklySchedulerApp.this, "Error opening calendar: " + e.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, false);
     }
 
-    // Method to load schedule from a file
-    @SuppressWarnings("unchecked")
-    private void loadScheduleFromFile() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream("schedule.dat"))) {
-            events = (List<Event>) ois.readObject();
-            JOptionPane.showMessageDialog(this, "Schedule loaded successfully!");
-            updateScheduleDisplay(); // Update the UI to reflect loaded events
-        } catch (IOException | ClassNotFoundException e) {
-            JOptionPane.showMessageDialog(this, "Error loading schedule: " + e.getMessage());
+    private void chooseOverlay(List<String> names) {
+        List<String> others = new ArrayList<>(names);
+        others.remove(calendarName);
+        if (others.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "There are no other calendars yet. Create one with Open Calendar.");
+            return;
         }
+        JList<String> list = calendarList(others, overlayNames);
+        if (JOptionPane.showConfirmDialog(this, new Object[]{"Shade the busy time of:", new JScrollPane(list)}, "Overlay Calendars",
+                JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+        overlayNames = new ArrayList<>(list.getSelectedValuesList());
+        overlaid.entrySet().removeIf(entry -> {
+            if (overlayNames.contains(entry.getKey())) {
+                return false;
+            }
+            entry.getValue().removeListener(overlayListener);
+            return true;
+        });
+        refreshOverlay();
     }
 
-    // Method to update the UI with loaded events
-    private void updateScheduleDisplay() {
-        // Reset all time slot buttons to default color
-        for (int hour = 0; hour < timeSlots.length; hour++) {
-            for (int day = 0; day < timeSlots[hour].length; day++) {
-                timeSlots[hour][day].setText(""); // Clear any text
-                timeSlots[hour][day].setBackground(Color.WHITE); // Reset to default background color
+    private static JList<String> calendarList(List<String> names, List<String> selected) {
+        JList<String> list = new JList<>(names.toArray(new String[0]));
+        list.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        list.setVisibleRowCount(Math.min(names.size(), 10));
+        for (int i = 0; i < names.size(); i++) {
+            if (selected.contains(names.get(i))) {
+                list.addSelectionInterval(i, i);
             }
         }
-    
-        // Update buttons based on current events
-        for (Event event : events) {
-            int hour = event.startTime.getHour() - 8; // Adjust hour to array index (8 AM starts at index 0)
-            int day = event.startTime.getDayOfWeek().getValue() - 1; // Monday is 1, Sunday is 7 (index 0-6)
-    
-            if (hour >= 0 && hour < timeSlots.length && day >= 0 && day < timeSlots[hour].length) {
-                JButton timeSlotButton = timeSlots[hour][day];
-                timeSlotButton.setText(event.name); // Display event name
-                timeSlotButton.setBackground(getColor(event.color)); // Set background color based on the event
+        return list;
+    }
+
+    // Called by the overlaid calendars' engines on any thread; coalesces their changes into one refresh
+    private void scheduleOverlayRefresh() {
+        if (overlayScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                overlayScheduled.set(false);
+                refreshOverlay();
+            });
+        }
+    }
+
+    // Reads the overlaid calendars' busy time in the shown week on a worker thread. Their
+    // engines are watched from then on, so the overlay follows their changes.
+    private void refreshOverlay() {
+        List<String> names = overlayNames;
+        LocalDate monday = currentMonday;
+        if (names.isEmpty()) {
+            grid.setOverlay(monday, null);
+            return;
+        }
+        background.execute(() -> {
+            try {
+                for (String name : names) {
+                    if (!overlaid.containsKey(name)) {
+                        SchedulerEngine other = calendars.open(name).engine;
+                        if (overlaid.putIfAbsent(name, other) == null) {
+                            other.addListener(overlayListener);
+                        }
+                    }
+                }
+                MinuteBitmap[] busy = calendars.busyMinutes(names, monday, monday.plusDays(6));
+                SwingUtilities.invokeLater(() -> {
+                    if (names == overlayNames && monday.equals(currentMonday)) {
+                        grid.setOverlay(monday, busy);
+                    }
+                });
+            } catch (IOException e) {
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "Error reading overlaid calendars: " + e.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE));
             }
+        });
+    }
+
+    // Asks for calendars and a length, then lists the first times all of them are free; picking
+    // one starts a booking at that time in this calendar
+    private void findCommonFreeTime(List<String> names) {
+        List<String> preselected = new ArrayList<>(overlayNames);
+        preselected.add(calendarName);
+        JList<String> list = calendarList(names, preselected);
+        JSpinner minutesSpinner = new JSpinner(new SpinnerNumberModel(60, 5, 24 * 60, 5));
+        if (JOptionPane.showConfirmDialog(this, new Object[]{"Calendars:", new JScrollPane(list), "Minutes:", minutesSpinner},
+                "Find Common Free Time", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION || list.isSelectionEmpty()) {
+            return;
+        }
+        List<String> chosen = list.getSelectedValuesList();
+        int minutes = (Integer) minutesSpinner.getValue();
+        LocalDateTime after = LocalDateTime.now();
+        background.run("Finding common free time", new SwingWorker<List<LocalDateTime>, Void>() {
+            @Override
+            protected List<LocalDateTime> doInBackground() throws Exception {
+                return calendars.commonFreeSlots(chosen, after, minutes, SUGGESTED_SLOTS, SUGGESTION_ALIGN_MINUTES, SUGGESTION_SEARCH_DAYS);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    List<LocalDateTime> slots = get();
+                    if (slots.isEmpty()) {
+                        JOptionPane.showMessageDialog(WeeklySchedulerApp.this, "No common free time of " + minutes + " minutes in the next "
+                                + SUGGESTION_SEARCH_DAYS + " days.");
+                        return;
+                    }
+                    DateTimeFormatter format = DateTimeFormatter.ofPattern("EEE yyyy-MM-dd  h:mm a");
+                    String[] options = new String[slots.size()];
+                    for (int i = 0; i < options.length; i++) {
+                        options[i] = slots.get(i).format(format) + " - " + slots.get(i).plusMinutes(minutes).toLocalTime().format(DateTimeFormatter.ofPattern("h:mm a"));
+                    }
+                    Object choice = JOptionPane.showInputDialog(WeeklySchedulerApp.this, "Free in " + String.join(", ", chosen) + ":",
+                            "Common Free Time", JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+                    for (int i = 0; i < options.length; i++) {
+                        if (options[i].equals(choice)) {
+                            showWeek(slots.get(i).toLocalDate().with(DayOfWeek.MONDAY));
+                            openCreateEventForm(slots.get(i));
+                        }
+                    }
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(WeeklySchedulerApp.this, "Error finding common free time: " + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, false);
+    }
+
+
+    // Non-modal window with the operation timings and the EDT statistics, refreshed every
+    // second while it is open
+    private void showDiagnostics() {
+        if (diagnosticsDialog != null) {
+            diagnosticsDialog.toFront();
+            return;
+        }
+        JTextArea text = new JTextArea(diagnosticsReport(), 30, 100);
+        text.setEditable(false);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        javax.swing.Timer refresh = new javax.swing.Timer(DIAGNOSTICS_REFRESH_MS, e -> text.setText(diagnosticsReport()));
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(e -> {
+            Metrics.reset();
+            EdtMonitor monitor = EdtMonitor.get();
+            if (monitor != null) {
+                monitor.reset();
+            }
+            text.setText(diagnosticsReport());
+        });
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.add(resetButton);
+
+        diagnosticsDialog = new JDialog(this, "Diagnostics", false);
+        diagnosticsDialog.add(new JScrollPane(text), BorderLayout.CENTER);
+        diagnosticsDialog.add(buttons, BorderLayout.SOUTH);
+        diagnosticsDialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        diagnosticsDialog.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                refresh.stop();
+                diagnosticsDialog = null;
+            }
+        });
+        diagnosticsDialog.pack();
+        diagnosticsDialog.setLocationRelativeTo(this);
+        diagnosticsDialog.setVisible(true);
+        refresh.start();
+    }
+
+    // Operation timings followed by the EDT statistics; also what the metrics log receives
+    static String diagnosticsReport() {
+        EdtMonitor monitor = EdtMonitor.get();
+        return Metrics.report() + System.lineSeparator() + "Event Dispatch Thread" + System.lineSeparator()
+                + (monitor == null ? "Monitoring is not enabled." : monitor.report());
+    }
+
+    private void updateDayLabels() {
+        for (int i = 0; i < 7; i++) {
+            LocalDate day = currentMonday.plusDays(i);
+            dayLabels[i].setText(day.getDayOfWeek().toString() + " (" + day + ")");
+        }
+    }
+
+    // Ask for any date and show the week containing it
+    private void jumpToDate() {
+        String input = JOptionPane.showInputDialog(this, "Go to the week of (YYYY-MM-DD):", currentMonday.toString());
+        if (input == null || input.trim().isEmpty()) {
+            return;
+        }
+        try {
+            showWeek(LocalDate.parse(input.trim()).with(DayOfWeek.MONDAY));
+        } catch (DateTimeException e) {
+            JOptionPane.showMessageDialog(this, "Invalid date format.", "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
     
 
-    // Event class to hold event details
+    // Event class to hold event details. Immutable: a change replaces the event with a new one,
+    // so the engine's trees, undo history and readers never see one half changed.
     static class Event implements Serializable {
         private static final long serialVersionUID = 1L;
         
-        private String name;
-        private String location;
-        private LocalDateTime startTime;
-        private LocalDateTime endTime;
-        public String color;
+        final String name;
+        final String location;
+        final LocalDateTime startTime;
+        final LocalDateTime endTime;
+        final String color;
 
         public Event(String name, String location, LocalDateTime startTime, LocalDateTime endTime, String color) {
             this.name = name;
@@ -546,12 +1384,103 @@ public class WeeklySchedulerApp extends JFrame {
     }
 
     // Main method
+    // With --server [port] the booking API is served instead of opening the window
     public static void main(String[] args) {
-        LocalDate weekStartDate = promptForWeekStartDate();
+        if (args.length > 0 && args[0].equals("--server")) {
+            int port = args.length == 2 ? parsePort(args[1]) : API_PORT;
+            if (args.length > 2 || port < 0) {
+                System.err.println("Usage: WeeklySchedulerApp [--server [port]]");
+                System.err.println("  --server  serve the booking API instead of opening the window, on port "
+                        + API_PORT + " unless a port from 0 to 65535 is given (0 picks a free one)");
+                System.exit(2);
+            }
+            runServer(port);
+            return;
+        }
+        // Launch to first frame is measured from the start of the process, JVM startup included
+        Instant started = ProcessHandle.current().info().startInstant().orElse(null);
+        if (started != null) {
+            launchNanos = System.nanoTime() - Duration.between(started, Instant.now()).toNanos();
+        }
+        // The EDT loads the look and feel and fonts while this thread recovers the journal
+        SwingUtilities.invokeLater(WeeklySchedulerApp::warmUpSwing);
+        EdtMonitor.install(EDT_STALL_THRESHOLD_MS); // Log any event that keeps the UI busy for too long
+        Metrics.startLogDump(METRICS_LOG_FILE, METRICS_LOG_MINUTES, TimeUnit.MINUTES, WeeklySchedulerApp::diagnosticsReport);
+        // Open straight to the week shown at the last exit, or the current week on the first run
+        StartupSnapshot startup = StartupSnapshot.read(StartupSnapshot.fileFor(SCHEDULE_FILE));
+        LocalDate weekStartDate = startup != null ? startup.monday : LocalDate.now().with(DayOfWeek.MONDAY);
+
+        CalendarSet calendars;
+        try {
+            calendars = new CalendarSet(SCHEDULE_FILE, BookingRules.load(BookingRules.fileFor(SCHEDULE_FILE)), UNDO_LIMIT,
+                    AUTOSAVE_QUIET_MS, AUTOSAVE_MAX_DELAY_MS);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Error reading booking rules: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(calendars::close)); // Flush pending journal records on exit
+
+        // Open the main calendar's journal before the window exists so the EDT never waits for it
+        CalendarSet.Calendar calendar;
+        try {
+            calendar = calendars.open(CalendarSet.MAIN);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Error recovering schedule or recurring events: " + e.getMessage());
+            System.exit(1); // Refuse to run without a journal rather than silently lose edits
+            return;
+        }
+        SearchIndex searchIndex = new SearchIndex(calendar.engine, calendar.journal); // Built in the background
         SwingUtilities.invokeLater(() -> {
-            new WeeklySchedulerApp(weekStartDate);
+            new WeeklySchedulerApp(weekStartDate, calendars, calendar, searchIndex, startup);
         });
         
     }
+
+    // Runs on the EDT during startup so the first window does not pay for initializing Swing
+    private static void warmUpSwing() {
+        new JLabel(DayOfWeek.MONDAY.toString()).getPreferredSize(); // Loads the look and feel, the toolkit and the default font
+    }
+
+    // The port given after --server, or -1 if it is not a number from 0 to 65535
+    private static int parsePort(String text) {
+        try {
+            int port = Integer.parseInt(text);
+            return port >= 0 && port <= 65535 ? port : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Headless: no window, no dialogs, errors go to stderr. The server's threads keep the JVM
+    // running until it is stopped.
+    private static void runServer(int port) {
+        System.setProperty("java.awt.headless", "true");
+        Metrics.startLogDump(METRICS_LOG_FILE, METRICS_LOG_MINUTES, TimeUnit.MINUTES, Metrics::report);
+        ScheduleJournal journal = new ScheduleJournal(SCHEDULE_FILE);
+        try {
+            journal.open();
+            SchedulerEngine engine = new SchedulerEngine(journal, SeriesStore.fileFor(SCHEDULE_FILE), BookingRules.load(BookingRules.fileFor(SCHEDULE_FILE)));
+            engine.setResidentWeekLimit(SERVER_RESIDENT_WEEKS); // Clients can ask about any week; without a window nothing else unloads them
+            AutosaveService autosave = new AutosaveService(engine, AUTOSAVE_QUIET_MS, AUTOSAVE_MAX_DELAY_MS, TimeUnit.MILLISECONDS);
+            BookingServer server = new BookingServer(engine, port);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop(1);
+                try {
+                    autosave.saveNow().join(); // Changes still waiting for the quiet period
+                } catch (CompletionException e) {
+                    System.err.println("Could not save the schedule on exit: " + e.getCause().getMessage());
+                }
+                autosave.close();
+                journal.close(); // Flush pending journal records on exit
+            }));
+            server.start();
+            System.out.println("Booking API listening on http://" + server.getAddress().getHostString() + ":"
+                    + server.getAddress().getPort() + "/api/");
+        } catch (IOException e) {
+            System.err.println("Cannot start the booking API: " + e.getMessage());
+            System.exit(1);
+        }
+    }
     
 }
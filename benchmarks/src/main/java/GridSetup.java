@@ -0,0 +1,58 @@
+import benchmarks.Fixtures;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Random;
+
+// Fixture of benchmarks.GridBenchmark: a grid sized like the window's, showing one week, with
+// clicks of which half land on an event and the rest anywhere on the grid.
+public class GridSetup implements Fixtures.Grid {
+    private List<WeeklySchedulerApp.Event> events;
+    private ScheduleGrid grid;
+    private int[][] clicks;
+    private BufferedImage image;
+
+    @Override
+    public void setUp(int eventsPerWeek) {
+        events = ScheduleData.week(eventsPerWeek);
+        grid = new ScheduleGrid(ScheduleData.FIRST_MONDAY);
+        grid.setSize(1300, 650);
+        grid.setModel(WeekModel.build(ScheduleData.FIRST_MONDAY, events));
+
+        Random random = new Random(ScheduleData.SEED);
+        clicks = new int[CLICKS][];
+        for (int i = 0; i < CLICKS; i++) {
+            if (i % 2 == 0) {
+                Rectangle block = grid.blockBounds(events.get(random.nextInt(events.size())));
+                clicks[i] = new int[]{(int) block.getCenterX(), (int) block.getCenterY()};
+            } else {
+                clicks[i] = new int[]{random.nextInt(grid.getWidth()), random.nextInt(grid.getHeight())};
+            }
+        }
+        image = new BufferedImage(grid.getWidth(), grid.getHeight(), BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Override
+    public Object buildModel() {
+        return WeekModel.build(ScheduleData.FIRST_MONDAY, events);
+    }
+
+    @Override
+    public Object clickLookup(int click) {
+        int x = clicks[click][0];
+        int y = clicks[click][1];
+        return grid.slotAt(x, y) == null ? null : grid.eventAt(x, y);
+    }
+
+    @Override
+    public Object paintWeek() {
+        Graphics2D g = image.createGraphics();
+        try {
+            grid.paint(g);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+}
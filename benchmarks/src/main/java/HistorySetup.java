@@ -0,0 +1,47 @@
+import benchmarks.Fixtures;
+
+import java.util.List;
+
+// Fixture of benchmarks.HistoryBenchmark: the same schedule as a list of Events and packed
+// into PackedEvents. Both scans count the morning lunches, comparing names by content for the
+// objects and by string id for the packed table.
+public class HistorySetup implements Fixtures.History {
+    private static final String NAME = "Lunch";
+    private static final int NOON = 12 * 60; // Minute of the day
+
+    private List<WeeklySchedulerApp.Event> events;
+    private PackedEvents packed;
+    private int nameId;
+
+    @Override
+    public void setUp(int eventCount) {
+        events = ScheduleData.events(eventCount);
+        packed = new PackedEvents();
+        for (WeeklySchedulerApp.Event event : events) {
+            packed.add(event);
+        }
+        nameId = packed.findString(NAME);
+    }
+
+    @Override
+    public int scanObjects() {
+        int count = 0;
+        for (WeeklySchedulerApp.Event event : events) {
+            if (NAME.equals(event.name) && event.startTime.getHour() < 12) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int scanPacked() {
+        int count = 0;
+        for (int slot = 0, size = packed.size(); slot < size; slot++) {
+            if (packed.nameId(slot) == nameId && Math.floorMod(packed.start(slot), 24 * 60) < NOON) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
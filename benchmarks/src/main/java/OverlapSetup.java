@@ -0,0 +1,87 @@
+import benchmarks.Fixtures;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+// Fixture of benchmarks.OverlapBenchmark: an index over the whole schedule with random
+// realistic slots to look up, and an engine over a snapshot of the schedule with a few weeks
+// loaded and existing events of those weeks to book over again.
+public class OverlapSetup implements Fixtures.Overlap {
+    private static final int PROBE_WEEKS = 16; // Weeks the engine probes fall in, kept in memory
+
+    private EventIndex index;
+    private LocalDateTime[][] probes;
+    private WeeklySchedulerApp.Event[] conflicts;
+    private Path directory;
+    private ScheduleJournal journal;
+    private SchedulerEngine engine;
+
+    @Override
+    public void setUp(int eventCount) throws IOException {
+        List<WeeklySchedulerApp.Event> events = ScheduleData.events(eventCount);
+        index = new EventIndex();
+        index.addAll(events);
+
+        Random random = new Random(ScheduleData.SEED);
+        LocalDate first = events.get(0).startTime.toLocalDate();
+        LocalDate last = events.get(events.size() - 1).startTime.toLocalDate();
+        probes = new LocalDateTime[PROBES][];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = ScheduleData.slot(random, first, last);
+        }
+
+        long weekCount = ChronoUnit.WEEKS.between(ScheduleData.FIRST_MONDAY, last) + 1;
+        Set<LocalDate> probeWeeks = new HashSet<>();
+        while (probeWeeks.size() < Math.min(PROBE_WEEKS, weekCount)) {
+            probeWeeks.add(ScheduleData.FIRST_MONDAY.plusWeeks(random.nextInt((int) weekCount)));
+        }
+        List<WeeklySchedulerApp.Event> inProbeWeeks = new ArrayList<>();
+        for (WeeklySchedulerApp.Event event : events) {
+            if (probeWeeks.contains(event.startTime.toLocalDate().with(DayOfWeek.MONDAY))) {
+                inProbeWeeks.add(event);
+            }
+        }
+        conflicts = new WeeklySchedulerApp.Event[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            conflicts[i] = inProbeWeeks.get(random.nextInt(inProbeWeeks.size()));
+        }
+
+        directory = Files.createTempDirectory("overlap-benchmark");
+        Path snapshot = directory.resolve("schedule.dat");
+        ScheduleFile.write(snapshot, events);
+        journal = new ScheduleJournal(snapshot);
+        journal.open();
+        engine = new SchedulerEngine(journal, SeriesStore.fileFor(snapshot));
+        for (LocalDate monday : probeWeeks) {
+            engine.week(monday);
+        }
+    }
+
+    @Override
+    public Object indexFindOverlap(int probe) {
+        return index.findOverlap(probes[probe][0], probes[probe][1]);
+    }
+
+    @Override
+    public String engineCreateRejected(int probe) throws IOException {
+        WeeklySchedulerApp.Event conflict = conflicts[probe];
+        try {
+            engine.create("Probe", "Office", conflict.startTime, conflict.endTime, "Blue");
+            throw new IllegalStateException("Booking over " + conflict + " was accepted");
+        } catch (SchedulerEngine.SchedulingException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        journal.close();
+        ScheduleData.deleteRecursively(directory);
+    }
+}
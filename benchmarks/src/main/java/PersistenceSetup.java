@@ -0,0 +1,64 @@
+import benchmarks.Fixtures;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Random;
+
+// Fixture of benchmarks.PersistenceBenchmark: the schedule in memory, a snapshot of it that is
+// only read, a second file that saves overwrite, and random weeks to load.
+public class PersistenceSetup implements Fixtures.Persistence {
+    private List<WeeklySchedulerApp.Event> events;
+    private Path directory;
+    private Path snapshot;
+    private Path saved;
+    private LocalDate[] weeks;
+
+    @Override
+    public void setUp(int eventCount) throws IOException {
+        events = ScheduleData.events(eventCount);
+        directory = Files.createTempDirectory("persistence-benchmark");
+        snapshot = directory.resolve("schedule.dat");
+        saved = directory.resolve("saved.dat");
+        ScheduleFile.write(snapshot, events);
+
+        Random random = new Random(ScheduleData.SEED);
+        LocalDate last = events.get(events.size() - 1).startTime.toLocalDate();
+        long weekCount = ChronoUnit.WEEKS.between(ScheduleData.FIRST_MONDAY, last) + 1;
+        weeks = new LocalDate[WEEKS];
+        for (int i = 0; i < WEEKS; i++) {
+            weeks[i] = ScheduleData.FIRST_MONDAY.plusWeeks(random.nextInt((int) weekCount));
+        }
+    }
+
+    @Override
+    public long save() throws IOException {
+        return ScheduleFile.write(saved, events);
+    }
+
+    @Override
+    public Object load() throws IOException {
+        return ScheduleFile.read(snapshot);
+    }
+
+    @Override
+    public Object saveAndLoad() throws IOException {
+        ScheduleFile.write(saved, events);
+        return ScheduleFile.read(saved);
+    }
+
+    @Override
+    public Object loadWeek(int week) throws IOException {
+        try (WeekStore store = WeekStore.open(snapshot)) {
+            return store.readWeek(weeks[week]);
+        }
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        ScheduleData.deleteRecursively(directory);
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Generates schedules shaped like real ones for the benchmarks: events only in the bookable
+// hours (8 AM to 8 PM on weekdays, 8 AM to 3 PM on Saturday, nothing on Sunday), never
+// overlapping, on quarter hours, mostly 30 to 60 minutes long with gaps between them. Days are
+// filled one after another from FIRST_MONDAY, so larger schedules span more weeks rather than
+// packing the same week tighter. The same seed always gives the same schedule.
+final class ScheduleData {
+    static final LocalDate FIRST_MONDAY = LocalDate.of(2024, 1, 1);
+    static final long SEED = 42;
+
+    private static final int[] DURATIONS = {15, 30, 30, 30, 45, 60, 60, 60, 90, 120}; // Minutes
+    private static final int[] GAPS = {0, 0, 15, 15, 30, 60, 120}; // Minutes between events
+    private static final String[] NAMES = {"Board meeting", "1:1", "Stand-up", "Budget review", "Client call", "Interview", "Lunch"};
+    private static final String[] LOCATIONS = {"Boardroom", "Office", "Room 2.14", "Online", "Cafeteria", ""};
+
+    private ScheduleData() {
+    }
+
+    // Events sorted by start
+    static List<WeeklySchedulerApp.Event> events(int count) {
+        Random random = new Random(SEED);
+        List<WeeklySchedulerApp.Event> events = new ArrayList<>(count);
+        LocalDate date = FIRST_MONDAY;
+        while (events.size() < count) {
+            if (date.getDayOfWeek() != DayOfWeek.SUNDAY) {
+                LocalDateTime close = date.atTime(date.getDayOfWeek() == DayOfWeek.SATURDAY ? 15 : 20, 0);
+                LocalDateTime start = date.atTime(8, 0).plusMinutes(GAPS[random.nextInt(GAPS.length)]);
+                while (events.size() < count) {
+                    LocalDateTime end = start.plusMinutes(DURATIONS[random.nextInt(DURATIONS.length)]);
+                    if (end.isAfter(close)) {
+                        break;
+                    }
+                    events.add(new WeeklySchedulerApp.Event(NAMES[random.nextInt(NAMES.length)], LOCATIONS[random.nextInt(LOCATIONS.length)],
+                            start, end, WeeklySchedulerApp.COLORS[random.nextInt(WeeklySchedulerApp.COLORS.length)]));
+                    start = end.plusMinutes(GAPS[random.nextInt(GAPS.length)]);
+                }
+            }
+            date = date.plusDays(1);
+        }
+        return events;
+    }
+
+    // Events of the week starting on FIRST_MONDAY placed at random bookable times, so that busy
+    // weeks also have overlapping events side by side (as schedules from before the overlap
+    // check can)
+    static List<WeeklySchedulerApp.Event> week(int count) {
+        Random random = new Random(SEED);
+        List<WeeklySchedulerApp.Event> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LocalDateTime[] slot = slot(random, FIRST_MONDAY, FIRST_MONDAY.plusDays(5));
+            events.add(new WeeklySchedulerApp.Event(NAMES[random.nextInt(NAMES.length)], LOCATIONS[random.nextInt(LOCATIONS.length)],
+                    slot[0], slot[1], WeeklySchedulerApp.COLORS[random.nextInt(WeeklySchedulerApp.COLORS.length)]));
+        }
+        return events;
+    }
+
+    // Start and end of a random bookable slot from first to last (inclusive), with a realistic duration
+    static LocalDateTime[] slot(Random random, LocalDate first, LocalDate last) {
+        LocalDate date;
+        do {
+            date = first.plusDays(random.nextInt((int) (last.toEpochDay() - first.toEpochDay()) + 1));
+        } while (date.getDayOfWeek() == DayOfWeek.SUNDAY);
+        int closeHour = date.getDayOfWeek() == DayOfWeek.SATURDAY ? 15 : 20;
+        int duration = DURATIONS[random.nextInt(DURATIONS.length)];
+        int latestStart = (closeHour - 8) * 60 - duration;
+        LocalDateTime start = date.atTime(8, 0).plusMinutes(15L * random.nextInt(latestStart / 15 + 1));
+        return new LocalDateTime[]{start, start.plusMinutes(duration)};
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Load test of the booking API (WeeklySchedulerApp --server): keeps the given number of
+// requests in flight until the total is sent and prints throughput, latency percentiles and
+// the count of every status. Eight in ten requests read a week, one searches free slots and
+// one books a random slot, which is often rejected with 409 as the weeks fill up.
+//
+//   java -cp benchmarks.jar benchmarks.BookingLoadTest [base URL] [requests] [concurrency]
+public class BookingLoadTest {
+    private static final LocalDate FIRST_MONDAY = LocalDate.of(2030, 1, 7);
+    private static final int WEEKS = 52;
+
+    public static void main(String[] args) throws Exception {
+        String base = args.length > 0 ? args[0] : "http://127.0.0.1:8765/api";
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newFixedThreadPool(16)).build();
+        Semaphore inFlight = new Semaphore(concurrency);
+        long[] latencies = new long[requests];
+        Map<String, AtomicInteger> statuses = new ConcurrentHashMap<>();
+        Random random = new Random(42);
+        CompletableFuture<?>[] all = new CompletableFuture<?>[requests];
+        long started = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            HttpRequest request = request(base, random);
+            inFlight.acquire();
+            long sent = System.nanoTime();
+            int index = i;
+            all[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                latencies[index] = System.nanoTime() - sent;
+                String status = error != null ? String.valueOf(error.getCause() != null ? error.getCause() : error) : String.valueOf(response.statusCode());
+                statuses.computeIfAbsent(status, s -> new AtomicInteger()).incrementAndGet();
+                inFlight.release();
+            });
+        }
+        CompletableFuture.allOf(all).exceptionally(e -> null).join();
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("%d requests, %d in flight: %.0f requests/s%n", requests, concurrency, requests / seconds);
+        System.out.printf("latency ms: p50 %.2f  p90 %.2f  p99 %.2f  max %.2f%n", latencies[requests / 2] / 1e6,
+                latencies[(int) (requests * 0.9)] / 1e6, latencies[(int) (requests * 0.99)] / 1e6, latencies[requests - 1] / 1e6);
+        System.out.println("statuses: " + new TreeMap<>(statuses));
+        System.exit(0);
+    }
+
+    private static HttpRequest request(String base, Random random) {
+        LocalDate monday = FIRST_MONDAY.plusWeeks(random.nextInt(WEEKS));
+        int kind = random.nextInt(10);
+        if (kind < 8) {
+            return HttpRequest.newBuilder(URI.create(base + "/weeks/" + monday)).GET().build();
+        } else if (kind == 8) {
+            return HttpRequest.newBuilder(URI.create(base + "/free-slots?after=" + monday.atTime(8, 0) + "&minutes=60&count=5")).GET().build();
+        }
+        LocalDateTime start = monday.plusDays(random.nextInt(5)).atTime(8 + random.nextInt(11), 15 * random.nextInt(4));
+        String body = "{\"name\":\"Load test\",\"location\":\"Online\",\"start\":\"" + start + "\",\"end\":\"" + start.plusMinutes(45)
+                + "\",\"color\":\"Blue\"}";
+        return HttpRequest.newBuilder(URI.create(base + "/events")).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+}
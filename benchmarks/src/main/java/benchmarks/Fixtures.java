@@ -0,0 +1,71 @@
+package benchmarks;
+
+// The scheduler's classes are in the unnamed package, which code in a named package (as JMH
+// requires for benchmarks) cannot refer to. Each benchmark therefore works through a small
+// fixture interface declared here and implemented next to the scheduler in the unnamed
+// package; the implementation is looked up by name once per trial, and the calls through the
+// interface are monomorphic, so the JIT inlines them.
+public final class Fixtures {
+    private Fixtures() {
+    }
+
+    static <T> T create(Class<T> type, String implementation) {
+        try {
+            return type.cast(Class.forName(implementation).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create benchmark fixture " + implementation, e);
+        }
+    }
+
+    // Overlap check behind creating an event
+    public interface Overlap {
+        int PROBES = 1024; // Power of two, cycled through with a mask
+
+        void setUp(int eventCount) throws Exception;
+
+        Object indexFindOverlap(int probe);
+
+        String engineCreateRejected(int probe) throws Exception;
+
+        void tearDown() throws Exception;
+    }
+
+    // Displayed week
+    public interface Grid {
+        int CLICKS = 1024; // Power of two, cycled through with a mask
+
+        void setUp(int eventsPerWeek);
+
+        Object buildModel();
+
+        Object clickLookup(int click);
+
+        Object paintWeek();
+    }
+
+    // Saving and loading schedule.dat
+    public interface Persistence {
+        int WEEKS = 1024; // Power of two, cycled through with a mask
+
+        void setUp(int eventCount) throws Exception;
+
+        long save() throws Exception;
+
+        Object load() throws Exception;
+
+        Object saveAndLoad() throws Exception;
+
+        Object loadWeek(int week) throws Exception;
+
+        void tearDown() throws Exception;
+    }
+
+    // Scanning a whole history held as Event objects or packed into PackedEvents
+    public interface History {
+        void setUp(int eventCount);
+
+        int scanObjects();
+
+        int scanPacked();
+    }
+}
@@ -0,0 +1,44 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// The displayed week, headless: preparing the model of a freshly loaded week (what showWeek
+// does after the engine returns the week), hit-testing a click on the grid (what precedes
+// handleTimeSlotClick) and painting the whole grid. The grid only ever holds one week, so the
+// size parameter is the number of events in that week. See GridSetup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GridBenchmark {
+    @Param({"10", "40", "160"})
+    public int eventsPerWeek;
+
+    private Fixtures.Grid fixture;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = Fixtures.create(Fixtures.Grid.class, "GridSetup");
+        fixture.setUp(eventsPerWeek);
+    }
+
+    @Benchmark
+    public Object buildModel() {
+        return fixture.buildModel();
+    }
+
+    @Benchmark
+    public Object clickLookup() {
+        return fixture.clickLookup(next++ & (Fixtures.Grid.CLICKS - 1));
+    }
+
+    @Benchmark
+    public Object paintWeek() {
+        return fixture.paintWeek();
+    }
+}
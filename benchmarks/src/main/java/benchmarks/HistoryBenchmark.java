@@ -0,0 +1,36 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// A full scan of a long history, held as Event objects and packed into PackedEvents (as the
+// search index holds it). See HistorySetup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class HistoryBenchmark {
+    @Param({"10000", "1000000"})
+    public int eventCount;
+
+    private Fixtures.History fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = Fixtures.create(Fixtures.History.class, "HistorySetup");
+        fixture.setUp(eventCount);
+    }
+
+    @Benchmark
+    public int scanObjects() {
+        return fixture.scanObjects();
+    }
+
+    @Benchmark
+    public int scanPacked() {
+        return fixture.scanPacked();
+    }
+}
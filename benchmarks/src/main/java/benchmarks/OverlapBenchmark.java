@@ -0,0 +1,44 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// The overlap check behind creating an event: the index lookup on its own over the whole
+// schedule, and a booking through the engine that is rejected for overlapping (the common
+// case when a user clicks around for a free time; accepted bookings are dominated by the
+// journal's fsync). See OverlapSetup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class OverlapBenchmark {
+    @Param({"100", "10000", "1000000", "10000000"})
+    public int eventCount;
+
+    private Fixtures.Overlap fixture;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = Fixtures.create(Fixtures.Overlap.class, "OverlapSetup");
+        fixture.setUp(eventCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.tearDown();
+    }
+
+    @Benchmark
+    public Object indexFindOverlap() {
+        return fixture.indexFindOverlap(next++ & (Fixtures.Overlap.PROBES - 1));
+    }
+
+    @Benchmark
+    public String engineCreateRejected() throws Exception {
+        return fixture.engineCreateRejected(next++ & (Fixtures.Overlap.PROBES - 1));
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Saving and loading schedule.dat: writing the whole schedule as a snapshot, reading all of it
+// back, both in a row, and reading one week's segment the way the engine loads a week. See
+// PersistenceSetup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PersistenceBenchmark {
+    @Param({"100", "10000", "1000000", "10000000"})
+    public int eventCount;
+
+    private Fixtures.Persistence fixture;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = Fixtures.create(Fixtures.Persistence.class, "PersistenceSetup");
+        fixture.setUp(eventCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.tearDown();
+    }
+
+    @Benchmark
+    public long save() throws Exception {
+        return fixture.save();
+    }
+
+    @Benchmark
+    public Object load() throws Exception {
+        return fixture.load();
+    }
+
+    @Benchmark
+    public Object saveAndLoad() throws Exception {
+        return fixture.saveAndLoad();
+    }
+
+    @Benchmark
+    public Object loadWeek() throws Exception {
+        return fixture.loadWeek(next++ & (Fixtures.Persistence.WEEKS - 1));
+    }
+}